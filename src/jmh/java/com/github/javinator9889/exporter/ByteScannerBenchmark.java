@@ -0,0 +1,115 @@
+package com.github.javinator9889.exporter;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * <p>Compares scanning lines at the raw bytes ({@link ByteScanner}) against the char based
+ * approaches, over {@link #SIZE} bytes of text with {@code "\r\n"} terminators.
+ * <p>
+ * Scores are operations per second, so the throughput is {@code score * SIZE} bytes per second.
+ * The Vector API implementation is only selected when the Java 17 classes of the multi-release
+ * jar are loaded and the JVM runs with {@code --add-modules jdk.incubator.vector}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ByteScannerBenchmark {
+    /**
+     * Size of the scanned text.
+     */
+    public static final int SIZE = 16 * 1024 * 1024;
+    private byte[] mData;
+
+    @Setup
+    public void setup() {
+        Random random = new Random(0);
+        StringBuilder text = new StringBuilder(SIZE);
+        while (text.length() < SIZE) {
+            int length = 20 + random.nextInt(100);
+            for (int i = 0; i < length; ++i)
+                text.append((char) ('a' + random.nextInt(26)));
+            text.append("\r\n");
+        }
+        mData = text.substring(0, SIZE).getBytes(StandardCharsets.UTF_8);
+    }
+
+    @Benchmark
+    public String normalizeChars() {
+        return SourceReader.normalizeLines(new String(mData, StandardCharsets.UTF_8));
+    }
+
+    @Benchmark
+    public String normalizeBytes() {
+        return new String(ByteScanner.normalizeLines(mData), StandardCharsets.UTF_8);
+    }
+
+    @Benchmark
+    public int readLinesChars() throws IOException {
+        int lines = 0;
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(
+                new ByteArrayInputStream(mData), StandardCharsets.UTF_8))) {
+            while (reader.readLine() != null)
+                ++lines;
+        }
+        return lines;
+    }
+
+    @Benchmark
+    public int readLinesBytes() throws IOException {
+        int lines = 0;
+        try (LineReader reader = new LineReader(new ByteArrayInputStream(mData),
+                StandardCharsets.UTF_8)) {
+            while (reader.readLine() != null)
+                ++lines;
+        }
+        return lines;
+    }
+
+    @Benchmark
+    public int countLoop() {
+        int count = 0;
+        for (byte b : mData) {
+            if (b == '\n')
+                ++count;
+        }
+        return count;
+    }
+
+    @Benchmark
+    public int countScanner() {
+        return ByteScanner.get().count(mData, 0, mData.length, (byte) '\n');
+    }
+
+    @Benchmark
+    public int indexOfLoop() {
+        int found = 0;
+        for (int i = 0; i < mData.length; ++i) {
+            if (mData[i] == '\r' || mData[i] == '\n')
+                ++found;
+        }
+        return found;
+    }
+
+    @Benchmark
+    public int indexOfScanner() {
+        ByteScanner scanner = ByteScanner.get();
+        int found = 0;
+        int position = 0;
+        while ((position = scanner.indexOfLineEnd(mData, position, mData.length)) != -1) {
+            ++found;
+            ++position;
+        }
+        return found;
+    }
+}
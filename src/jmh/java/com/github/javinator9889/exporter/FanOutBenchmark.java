@@ -0,0 +1,82 @@
+package com.github.javinator9889.exporter;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+/**
+ * <p>Compares writing {@link #FILES} small files (as {@link ContainerExtractor} does) from the
+ * common pool against {@link Platform#forEach(List, Platform.IOConsumer)}.
+ * <p>
+ * On Java 21+, {@code Platform} runs every write at its own virtual thread, so blocking calls (the
+ * file being forced to the disk when {@code sync} is set) do not limit the concurrent writes to
+ * the number of cores. On older JVMs both benchmarks are expected to be equal.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class FanOutBenchmark {
+    /**
+     * Number of written files.
+     */
+    public static final int FILES = 512;
+    @Param({"false", "true"})
+    public boolean sync;
+    private File mDirectory;
+    private List<Integer> mFiles;
+    private byte[] mData;
+
+    @Setup
+    public void setup() throws IOException {
+        mDirectory = Files.createTempDirectory("fan-out").toFile();
+        mFiles = IntStream.range(0, FILES).boxed().collect(Collectors.toList());
+        mData = new byte[4096];
+        new Random(0).nextBytes(mData);
+    }
+
+    @TearDown
+    public void tearDown() {
+        File[] files = mDirectory.listFiles();
+        if (files != null) {
+            for (File file : files)
+                file.delete();
+        }
+        mDirectory.delete();
+    }
+
+    @Benchmark
+    public void commonPool() {
+        mFiles.parallelStream().forEach(i -> {
+            try {
+                write(i);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        });
+    }
+
+    @Benchmark
+    public void platform() throws IOException {
+        Platform.forEach(mFiles, this::write);
+    }
+
+    private void write(int index) throws IOException {
+        try (FileOutputStream output = new FileOutputStream(new File(mDirectory, "f" + index))) {
+            output.write(mData);
+            if (sync)
+                output.getFD().sync();
+        }
+    }
+}
@@ -0,0 +1,221 @@
+package com.github.javinator9889.exporter;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * <p>Runs complete export cycles over a {@link TreeFixture generated tree}, from some threads at
+ * once, and prints the throughput, the latency percentiles of a cycle and the peak heap used.
+ * Every cycle discovers and reads all the sources, writes them as a bytes file and reads it back,
+ * then exports them as a container and reads back every entry, checking that nothing was lost.
+ * JMH is not used, as what is measured is the behaviour of the whole pipeline under load instead
+ * of a single operation.
+ * <p>
+ * Run it with {@code ./gradlew loadTest -PloadTestArgs="--depth=5 --concurrency=8"}. Arguments,
+ * all optional: {@code --root}, {@code --cycles}, {@code --concurrency}, {@code --followLinks}
+ * and the settings of the fixture - {@code --depth}, {@code --fanOut}, {@code --files},
+ * {@code --medianSize}, {@code --sizeSpread}, {@code --maxSize}, {@code --duplicates},
+ * {@code --symlinks}, {@code --cycleLinks} and {@code --seed}.
+ */
+public class LoadTest {
+    public static void main(String[] args) throws Exception {
+        Map<String, String> options = parse(args);
+        File root = new File(option(options, "root", "build/loadtest"));
+        int cycles = Integer.parseInt(option(options, "cycles", "20"));
+        int concurrency = Integer.parseInt(option(options, "concurrency", "4"));
+        boolean followLinks = Boolean.parseBoolean(option(options, "followLinks", "false"));
+        File tree = new File(root, "tree");
+        File output = new File(root, "output");
+        delete(root);
+        if (!output.mkdirs())
+            throw new IOException(String.format("Cannot create \"%s\"", output.toString()));
+
+        TreeFixture fixture = new TreeFixture();
+        fixture.setDepth(Integer.parseInt(option(options, "depth", "3")));
+        fixture.setFanOut(Integer.parseInt(option(options, "fanOut", "4")));
+        fixture.setFilesPerDirectory(Integer.parseInt(option(options, "files", "8")));
+        fixture.setFileSizes(Long.parseLong(option(options, "medianSize", "4096")),
+                Double.parseDouble(option(options, "sizeSpread", "1.0")),
+                Long.parseLong(option(options, "maxSize", "16777216")));
+        fixture.setDuplicateRatio(Double.parseDouble(option(options, "duplicates", "0.1")));
+        fixture.setSymlinkRatio(Double.parseDouble(option(options, "symlinks", "0.02")));
+        fixture.setLinkCycles(Boolean.parseBoolean(option(options, "cycleLinks", "false")));
+        fixture.setSeed(Long.parseLong(option(options, "seed", "0")));
+        TreeFixture.Summary summary = fixture.generate(tree);
+        System.out.printf("Fixture: %s%n", summary);
+
+        // A first cycle warms up the JVM and gives the expected number of files
+        final int expected = new Cycle(tree, new File(output, "warmup"), followLinks, -1).call();
+        System.out.printf("Each cycle exports %d files%n", expected);
+
+        resetPeakUsage();
+        ExecutorService executor = Executors.newFixedThreadPool(concurrency);
+        List<Future<Integer>> results = new ArrayList<>(cycles);
+        final long[] nanos = new long[cycles];
+        long start = System.nanoTime();
+        try {
+            for (int i = 0; i < cycles; ++i) {
+                final Cycle cycle = new Cycle(tree, new File(output, "c" + i), followLinks,
+                        expected);
+                final int index = i;
+                results.add(executor.submit(new Callable<Integer>() {
+                    @Override
+                    public Integer call() throws Exception {
+                        long cycleStart = System.nanoTime();
+                        int files = cycle.call();
+                        nanos[index] = System.nanoTime() - cycleStart;
+                        return files;
+                    }
+                }));
+            }
+            for (Future<Integer> result : results) {
+                try {
+                    result.get();
+                } catch (ExecutionException e) {
+                    throw new IllegalStateException("Load test cycle failed", e.getCause());
+                }
+            }
+        } finally {
+            executor.shutdown();
+        }
+        long elapsed = System.nanoTime() - start;
+        report(summary, cycles, concurrency, elapsed, nanos);
+        delete(output);
+    }
+
+    private static void report(TreeFixture.Summary summary, int cycles, int concurrency,
+                               long elapsed, long[] nanos) {
+        double seconds = elapsed / 1e9;
+        Arrays.sort(nanos);
+        System.out.printf("%d cycles, %d threads, %.2f s%n", cycles, concurrency, seconds);
+        System.out.printf("throughput: %.2f cycles/s, %.2f MB/s read%n", cycles / seconds,
+                summary.getBytes() * (double) cycles / seconds / (1024 * 1024));
+        System.out.printf("latency:    p50: %d ms, p90: %d ms, p99: %d ms, max: %d ms%n",
+                percentile(nanos, 0.5), percentile(nanos, 0.9), percentile(nanos, 0.99),
+                TimeUnit.NANOSECONDS.toMillis(nanos[nanos.length - 1]));
+        System.out.printf("peak heap:  %.1f MB%n", peakUsage() / (1024.0 * 1024));
+    }
+
+    private static long percentile(long[] sorted, double percentile) {
+        int index = Math.max(0, (int) Math.ceil(sorted.length * percentile) - 1);
+        return TimeUnit.NANOSECONDS.toMillis(sorted[index]);
+    }
+
+    private static void resetPeakUsage() {
+        System.gc();
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            if (pool.getType() == MemoryType.HEAP)
+                pool.resetPeakUsage();
+        }
+    }
+
+    private static long peakUsage() {
+        long peak = 0;
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            if (pool.getType() == MemoryType.HEAP)
+                peak += pool.getPeakUsage().getUsed();
+        }
+        return peak;
+    }
+
+    private static Map<String, String> parse(String[] args) {
+        Map<String, String> options = new HashMap<>();
+        for (String arg : args) {
+            int separator = arg.indexOf('=');
+            if (!arg.startsWith("--") || separator == -1)
+                throw new IllegalArgumentException(String.format("Invalid argument \"%s\", " +
+                        "expected --key=value", arg));
+            options.put(arg.substring(2, separator), arg.substring(separator + 1));
+        }
+        return options;
+    }
+
+    private static String option(Map<String, String> options, String key, String defaultValue) {
+        String value = options.get(key);
+        return value == null ? defaultValue : value;
+    }
+
+    private static void delete(File file) {
+        File[] children = file.isDirectory() && !isLink(file) ? file.listFiles() : null;
+        if (children != null) {
+            for (File child : children)
+                delete(child);
+        }
+        file.delete();
+    }
+
+    private static boolean isLink(File file) {
+        return Files.isSymbolicLink(file.toPath());
+    }
+
+    /**
+     * One export cycle, returning the number of exported files.
+     */
+    private static final class Cycle implements Callable<Integer> {
+        private final File mTree;
+        private final File mOutput;
+        private final boolean mFollowLinks;
+        private final int mExpected;
+
+        private Cycle(File tree, File output, boolean followLinks, int expected) {
+            mTree = tree;
+            mOutput = output;
+            mFollowLinks = followLinks;
+            mExpected = expected;
+        }
+
+        @Override
+        public Integer call() throws IOException {
+            if (!mOutput.isDirectory() && !mOutput.mkdirs())
+                throw new IOException(String.format("Cannot create \"%s\"", mOutput.toString()));
+            FileToBytesExporter exporter = new FileToBytesExporter("*.txt", mTree.toString());
+            DiscoveryOptions discovery = new DiscoveryOptions();
+            discovery.setFollowLinks(mFollowLinks);
+            exporter.setDiscoveryOptions(discovery);
+
+            exporter.readSource(true);
+            String data = exporter.getReadData();
+            File bytes = new File(mOutput, "export.bin");
+            exporter.writeObject(bytes);
+            FileToBytesExporter reader = new FileToBytesExporter();
+            reader.readObject(bytes);
+            if (!data.equals(reader.getReadData()))
+                throw new IllegalStateException(String.format("\"%s\" was not read back",
+                        bytes.toString()));
+
+            File container = new File(mOutput, "export.container");
+            List<ContainerEntry> written = exporter.exportContainer(container, true);
+            long size = 0;
+            try (ContainerReader containerReader = new ContainerReader(container)) {
+                for (ContainerEntry entry : containerReader.getEntries())
+                    size += containerReader.read(entry).length;
+                if (containerReader.getEntries().size() != written.size())
+                    throw new IllegalStateException(String.format("\"%s\" has %d entries, " +
+                            "expected %d", container.toString(),
+                            containerReader.getEntries().size(), written.size()));
+            }
+            if (mExpected != -1 && written.size() != mExpected)
+                throw new IllegalStateException(String.format("Found %d files, expected %d",
+                        written.size(), mExpected));
+            if (size == 0 && !written.isEmpty())
+                throw new IllegalStateException("No data was read back");
+            delete(mOutput);
+            return written.size();
+        }
+    }
+}
@@ -0,0 +1,67 @@
+package com.github.javinator9889.exporter;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * <p>Measures the time-to-first-export of a new JVM: {@link StartupExport} is run as a new
+ * process some times without and with the class data sharing archive, and the median and 90th
+ * percentile of the wall time are printed. JMH is not used, as what is measured is the start of
+ * the JVM itself.
+ * <p>
+ * Run it with {@code ./gradlew startupBenchmark}, which produces the archive first. Arguments:
+ * the archive, the working directory and the number of runs.
+ */
+public class StartupBenchmark {
+    public static void main(String[] args) throws IOException, InterruptedException {
+        if (args.length != 3)
+            throw new IllegalArgumentException("Usage: StartupBenchmark <archive> <directory> " +
+                    "<runs>");
+        File archive = new File(args[0]);
+        File directory = new File(args[1]);
+        int runs = Integer.parseInt(args[2]);
+        // The sources are generated by a first run, which is not measured
+        run(directory, null);
+        report("default", measure(directory, null, runs));
+        if (archive.isFile())
+            report("cds", measure(directory, archive, runs));
+        else
+            System.out.printf("No archive found at \"%s\"%n", archive.toString());
+    }
+
+    private static long[] measure(File directory, File archive, int runs)
+            throws IOException, InterruptedException {
+        long[] millis = new long[runs];
+        for (int i = 0; i < runs; ++i) {
+            long start = System.nanoTime();
+            run(directory, archive);
+            millis[i] = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+        }
+        Arrays.sort(millis);
+        return millis;
+    }
+
+    private static void run(File directory, File archive) throws IOException,
+            InterruptedException {
+        List<String> command = new ArrayList<>();
+        command.add(new File(System.getProperty("java.home"), "bin/java").toString());
+        if (archive != null)
+            command.add("-XX:SharedArchiveFile=" + archive.toString());
+        command.addAll(Arrays.asList("-cp", System.getProperty("java.class.path"),
+                StartupExport.class.getName(), directory.toString()));
+        Process process = new ProcessBuilder(command).inheritIO().start();
+        if (process.waitFor() != 0)
+            throw new IOException(String.format("Export failed with code %d",
+                    process.exitValue()));
+    }
+
+    private static void report(String name, long[] millis) {
+        System.out.printf("%-8s median: %d ms, p90: %d ms (%d runs)%n", name,
+                millis[millis.length / 2], millis[(int) Math.ceil(millis.length * 0.9) - 1],
+                millis.length);
+    }
+}
@@ -0,0 +1,52 @@
+package com.github.javinator9889.exporter;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * <p>Short-lived export, as run by scripts: it reads the {@code *.txt} files of the given
+ * directory, writes them as a bytes file and as a container, and exits.
+ * <p>
+ * It is the application used for training the class data sharing archive ({@code ./gradlew
+ * cdsArchive}) and the one whose time-to-first-export is measured by {@link StartupBenchmark}.
+ * The sources are generated the first time.
+ */
+public class StartupExport {
+    /**
+     * Number of generated sources.
+     */
+    public static final int FILES = 16;
+
+    public static void main(String[] args) throws IOException {
+        if (args.length != 1)
+            throw new IllegalArgumentException("Usage: StartupExport <directory>");
+        File directory = new File(args[0]);
+        File sources = new File(directory, "sources");
+        if (!sources.isDirectory())
+            generate(sources);
+        File output = new File(directory, "output");
+        if (!output.isDirectory() && !output.mkdirs())
+            throw new IOException(String.format("Cannot create \"%s\"", output.toString()));
+        FileToBytesExporter exporter = new FileToBytesExporter("*.txt", sources.toString());
+        exporter.readSource(true);
+        exporter.writeObject(new File(output, "sources.bin"));
+        exporter.exportContainer(new File(output, "sources.ftbc"), true);
+    }
+
+    private static void generate(File sources) throws IOException {
+        if (!sources.mkdirs())
+            throw new IOException(String.format("Cannot create \"%s\"", sources.toString()));
+        StringBuilder line = new StringBuilder();
+        for (int i = 0; i < FILES; ++i) {
+            line.setLength(0);
+            for (int j = 0; j < 64; ++j)
+                line.append("source ").append(i).append(", line ").append(j).append('\n');
+            try (FileOutputStream output = new FileOutputStream(new File(sources,
+                    String.format("source-%02d.txt", i)))) {
+                output.write(line.toString().getBytes(StandardCharsets.UTF_8));
+            }
+        }
+    }
+}
@@ -0,0 +1,309 @@
+package com.github.javinator9889.exporter;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Random;
+
+/**
+ * <p>Generates source trees that look like production ones, for load tests: every directory has
+ * some text files and {@code fan-out} subdirectories, down to the given depth.
+ * <p>
+ * File sizes follow a log-normal distribution around the median size (most files are small, a
+ * few are much bigger), some files are copies of a previous one (duplicates) and some are
+ * symbolic links to a previous file. Optionally, some directories link back to the root, for
+ * exercising the detection of link cycles. The same settings and seed always generate the same
+ * tree.
+ * <pre>
+ * TreeFixture fixture = new TreeFixture();
+ * fixture.setDepth(4);
+ * fixture.setFanOut(6);
+ * TreeFixture.Summary summary = fixture.generate(new File("tree"));
+ * </pre>
+ */
+public class TreeFixture {
+    private static final String[] WORDS = {"export", "binary", "source", "stream", "container",
+            "entry", "digest", "shard", "block", "index", "header", "chunk", "path", "glob",
+            "lorem", "ipsum", "dolor", "sit", "amet", "2019-03-04T10:15:30Z", "INFO", "WARN",
+            "ERROR", "0x7f3a", "userId=42", "latency=17ms"};
+    private int mDepth = 3;
+    private int mFanOut = 4;
+    private int mFilesPerDirectory = 8;
+    private long mMedianFileSize = 4 * 1024;
+    private double mSizeSpread = 1.0;
+    private long mMaxFileSize = 16 * 1024 * 1024;
+    private double mDuplicateRatio = 0.1;
+    private double mSymlinkRatio = 0.02;
+    private boolean mLinkCycles;
+    private long mSeed;
+
+    /**
+     * Updates the number of directory levels below the root.
+     *
+     * @param depth levels - {@code 0} for generating only the root.
+     */
+    public void setDepth(int depth) {
+        mDepth = depth;
+    }
+
+    /**
+     * Updates the number of subdirectories of every directory.
+     *
+     * @param fanOut number of subdirectories.
+     */
+    public void setFanOut(int fanOut) {
+        mFanOut = fanOut;
+    }
+
+    /**
+     * Updates the number of files of every directory, including duplicates and links.
+     *
+     * @param filesPerDirectory number of files.
+     */
+    public void setFilesPerDirectory(int filesPerDirectory) {
+        mFilesPerDirectory = filesPerDirectory;
+    }
+
+    /**
+     * Updates the distribution of the file sizes.
+     *
+     * @param medianFileSize median size, in bytes.
+     * @param sizeSpread     standard deviation of the logarithm of the sizes - {@code 0} for
+     *                       files of the same size.
+     * @param maxFileSize    maximum size, in bytes.
+     */
+    public void setFileSizes(long medianFileSize, double sizeSpread, long maxFileSize) {
+        mMedianFileSize = medianFileSize;
+        mSizeSpread = sizeSpread;
+        mMaxFileSize = maxFileSize;
+    }
+
+    /**
+     * Updates the ratio of files that are copies of a previous file.
+     *
+     * @param duplicateRatio ratio, between {@code 0} and {@code 1}.
+     */
+    public void setDuplicateRatio(double duplicateRatio) {
+        mDuplicateRatio = duplicateRatio;
+    }
+
+    /**
+     * Updates the ratio of files that are symbolic links to a previous file.
+     *
+     * @param symlinkRatio ratio, between {@code 0} and {@code 1}.
+     */
+    public void setSymlinkRatio(double symlinkRatio) {
+        mSymlinkRatio = symlinkRatio;
+    }
+
+    /**
+     * Updates whether the deepest directories have a link to the root, making link cycles.
+     *
+     * @param linkCycles {@code true} for generating the cycles.
+     */
+    public void setLinkCycles(boolean linkCycles) {
+        mLinkCycles = linkCycles;
+    }
+
+    /**
+     * Updates the seed of the generated sizes, contents and kinds of files.
+     *
+     * @param seed the seed.
+     */
+    public void setSeed(long seed) {
+        mSeed = seed;
+    }
+
+    /**
+     * Generates the tree. Files are named {@code f<n>.txt}, so all of them (including the links)
+     * match {@code "*.txt"}.
+     *
+     * @param root directory where the tree is generated - created if it does not exist.
+     *
+     * @return the {@link Summary} of the generated tree.
+     *
+     * @throws IOException if any file cannot be written.
+     */
+    public Summary generate(File root) throws IOException {
+        if (!root.isDirectory() && !root.mkdirs())
+            throw new IOException(String.format("Cannot create \"%s\"", root.toString()));
+        Summary summary = new Summary();
+        generate(root, root, 0, new Random(mSeed), new ArrayList<>(), summary);
+        return summary;
+    }
+
+    /**
+     * Generates the files of the given directory and, recursively, its subdirectories.
+     *
+     * @param root      root of the tree.
+     * @param directory directory to fill.
+     * @param level     level of the directory.
+     * @param random    source of the sizes, contents and kinds of files.
+     * @param written   regular files written until now.
+     * @param summary   receives the counts.
+     *
+     * @throws IOException if any file cannot be written.
+     */
+    private void generate(File root, File directory, int level, Random random,
+                          ArrayList<File> written, Summary summary) throws IOException {
+        for (int i = 0; i < mFilesPerDirectory; ++i) {
+            File file = new File(directory, "f" + i + ".txt");
+            double kind = random.nextDouble();
+            if (!written.isEmpty() && kind < mSymlinkRatio) {
+                File target = written.get(random.nextInt(written.size()));
+                if (link(file, target)) {
+                    ++summary.mSymlinks;
+                    continue;
+                }
+            }
+            if (!written.isEmpty() && kind < mSymlinkRatio + mDuplicateRatio) {
+                File original = written.get(random.nextInt(written.size()));
+                Files.copy(original.toPath(), file.toPath());
+                ++summary.mDuplicates;
+                summary.mBytes += file.length();
+            } else {
+                summary.mBytes += write(file, size(random), random);
+            }
+            ++summary.mFiles;
+            written.add(file);
+        }
+        if (level == mDepth) {
+            if (mLinkCycles && link(new File(directory, "cycle"), root))
+                ++summary.mSymlinks;
+            return;
+        }
+        for (int i = 0; i < mFanOut; ++i) {
+            File child = new File(directory, "d" + i);
+            if (!child.isDirectory() && !child.mkdir())
+                throw new IOException(String.format("Cannot create \"%s\"", child.toString()));
+            ++summary.mDirectories;
+            generate(root, child, level + 1, random, written, summary);
+        }
+    }
+
+    /**
+     * Draws the size of a new file.
+     *
+     * @param random source of the size.
+     *
+     * @return {@code long} with the size, in bytes.
+     */
+    private long size(Random random) {
+        double size = mMedianFileSize * Math.exp(random.nextGaussian() * mSizeSpread);
+        return Math.max(1, Math.min(mMaxFileSize, Math.round(size)));
+    }
+
+    /**
+     * Writes a text file of random lines.
+     *
+     * @param file   file to write.
+     * @param size   size of the file.
+     * @param random source of the lines.
+     *
+     * @return {@code long} with the written bytes.
+     *
+     * @throws IOException if the file cannot be written.
+     */
+    private static long write(File file, long size, Random random) throws IOException {
+        StringBuilder line = new StringBuilder();
+        long written = 0;
+        try (OutputStream output = new BufferedOutputStream(new FileOutputStream(file))) {
+            while (written < size) {
+                line.setLength(0);
+                int words = 4 + random.nextInt(12);
+                for (int i = 0; i < words; ++i)
+                    line.append(WORDS[random.nextInt(WORDS.length)]).append(' ');
+                line.setCharAt(line.length() - 1, '\n');
+                byte[] bytes = line.toString().getBytes(StandardCharsets.UTF_8);
+                int length = (int) Math.min(bytes.length, size - written);
+                output.write(bytes, 0, length);
+                written += length;
+            }
+        }
+        return written;
+    }
+
+    /**
+     * Creates a symbolic link, if the platform allows it.
+     *
+     * @param link   link to create.
+     * @param target file or directory the link points to.
+     *
+     * @return {@code true} if the link was created.
+     */
+    private static boolean link(File link, File target) {
+        try {
+            Files.createSymbolicLink(link.toPath(), target.getAbsoluteFile().toPath());
+            return true;
+        } catch (IOException | UnsupportedOperationException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Counts of a generated tree.
+     */
+    public static final class Summary {
+        private int mDirectories;
+        private int mFiles;
+        private int mDuplicates;
+        private int mSymlinks;
+        private long mBytes;
+
+        /**
+         * Obtains the number of directories, without the root.
+         *
+         * @return {@code int} with the directories.
+         */
+        public int getDirectories() {
+            return mDirectories;
+        }
+
+        /**
+         * Obtains the number of regular files, including the duplicates.
+         *
+         * @return {@code int} with the files.
+         */
+        public int getFiles() {
+            return mFiles;
+        }
+
+        /**
+         * Obtains the number of files that are copies of a previous one.
+         *
+         * @return {@code int} with the duplicates.
+         */
+        public int getDuplicates() {
+            return mDuplicates;
+        }
+
+        /**
+         * Obtains the number of symbolic links, to files and to the root.
+         *
+         * @return {@code int} with the links.
+         */
+        public int getSymlinks() {
+            return mSymlinks;
+        }
+
+        /**
+         * Obtains the size of the regular files.
+         *
+         * @return {@code long} with the number of bytes.
+         */
+        public long getBytes() {
+            return mBytes;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%d directories, %d files (%d duplicates, %d bytes), %d links",
+                    mDirectories, mFiles, mDuplicates, mBytes, mSymlinks);
+        }
+    }
+}
@@ -0,0 +1,36 @@
+package com.github.javinator9889.error;
+
+import com.github.javinator9889.exporter.IngestionReport;
+
+import java.io.IOException;
+
+/**
+ * When some source files cannot be read and the ingestion error policy is to fail, this exception
+ * class is thrown once every other file was attempted - it contains the complete report
+ */
+public class IngestionException extends IOException {
+    private final transient IngestionReport mReport;
+
+    /**
+     * Constructs a new exception with the specified detail message, cause and report.
+     *
+     * @param message the detail message (which is saved for later retrieval by the {@link
+     *                #getMessage()} method).
+     * @param cause   the error of the first failed file.
+     * @param report  the report of the read, with all the failed files.
+     */
+    public IngestionException(String message, Throwable cause, IngestionReport report) {
+        super(message, cause);
+        mReport = report;
+    }
+
+    /**
+     * Obtains the report of the read that failed.
+     *
+     * @return the {@link IngestionReport}, {@code null} if it was not kept (e.g.: after being
+     * serialized).
+     */
+    public IngestionReport getReport() {
+        return mReport;
+    }
+}
@@ -0,0 +1,31 @@
+package com.github.javinator9889.error;
+
+/**
+ * If the read file is not a valid container (or manifest), or it is truncated, this exception
+ * class is called
+ */
+public class InvalidContainerException extends RuntimeException {
+    /**
+     * Constructs a new runtime exception with the specified detail message. The cause is not
+     * initialized, and may subsequently be initialized by a call to {@link #initCause}.
+     *
+     * @param message the detail message. The detail message is saved for later retrieval by the
+     *                {@link #getMessage()} method.
+     */
+    public InvalidContainerException(String message) {
+        super(message);
+    }
+
+    /**
+     * Constructs a new runtime exception with the specified detail message and cause.
+     *
+     * @param message the detail message (which is saved for later retrieval by the {@link
+     *                #getMessage()} method).
+     * @param cause   the cause (which is saved for later retrieval by the {@link #getCause()}
+     *                method).  (A {@code null} value is permitted, and indicates that the cause is
+     *                nonexistent or unknown.)
+     */
+    public InvalidContainerException(String message, Throwable cause) {
+        super(message, cause);
+    }
+}
@@ -0,0 +1,90 @@
+package com.github.javinator9889.exporter;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Helpers for writing files that are published atomically: data is written to a temporary file
+ * next to the destination that, once completed, replaces the destination with a single rename.
+ */
+final class AtomicFiles {
+    /**
+     * Do not let anyone instantiate this class.
+     */
+    private AtomicFiles() {
+    }
+
+    /**
+     * Obtains the temporary file used while writing the given destination.
+     *
+     * @param destination final file.
+     *
+     * @return {@code File} next to the destination, with the {@code ".partial"} suffix.
+     */
+    static File partial(File destination) {
+        return new File(destination.getAbsoluteFile().getParentFile(),
+                destination.getName() + ".partial");
+    }
+
+    /**
+     * Forces the data of the given stream to the storage device.
+     *
+     * @param output stream of the file.
+     *
+     * @throws IOException if the data cannot be forced.
+     */
+    static void sync(FileOutputStream output) throws IOException {
+        output.flush();
+        output.getFD().sync();
+    }
+
+    /**
+     * Replaces the destination with the completely written temporary file, atomically if the
+     * file system supports it, forcing the data first as defined by the policy.
+     *
+     * @param partial     completely written temporary file.
+     * @param destination final file.
+     * @param policy      when the data is forced to the storage device.
+     *
+     * @throws IOException if the file cannot be forced or renamed.
+     */
+    static void publish(File partial, File destination, SyncPolicy policy) throws IOException {
+        boolean mustSync = policy != SyncPolicy.NONE;
+        if (mustSync) {
+            try (FileChannel channel = FileChannel.open(partial.toPath(),
+                    StandardOpenOption.WRITE)) {
+                channel.force(true);
+            }
+        }
+        try {
+            Files.move(partial.toPath(), destination.toPath(), StandardCopyOption.ATOMIC_MOVE,
+                    StandardCopyOption.REPLACE_EXISTING);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(partial.toPath(), destination.toPath(),
+                    StandardCopyOption.REPLACE_EXISTING);
+        }
+        if (mustSync)
+            syncDirectory(destination.getAbsoluteFile().getParentFile());
+    }
+
+    /**
+     * Forces the entries of the given directory (e.g.: a rename) to the storage device. Not every
+     * platform supports it, so errors are ignored.
+     *
+     * @param directory directory to force.
+     */
+    private static void syncDirectory(File directory) {
+        try (FileChannel channel = FileChannel.open(directory.toPath(),
+                StandardOpenOption.READ)) {
+            channel.force(true);
+        } catch (IOException ignored) {
+            // Directories cannot be opened (or forced) at some platforms, such as Windows
+        }
+    }
+}
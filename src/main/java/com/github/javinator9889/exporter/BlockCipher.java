@@ -0,0 +1,293 @@
+package com.github.javinator9889.exporter;
+
+import com.github.javinator9889.error.FileError;
+
+import javax.crypto.AEADBadTagException;
+import javax.crypto.Cipher;
+import javax.crypto.Mac;
+import javax.crypto.SecretKey;
+import javax.crypto.spec.GCMParameterSpec;
+import javax.crypto.spec.SecretKeySpec;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.SecureRandom;
+import java.util.Arrays;
+
+/**
+ * <p>Encrypts and authenticates the blocks of the entries of a container with AES-GCM.
+ * <p>
+ * Every container has its own random salt, stored at its header, from which its block key is
+ * derived ({@code HMAC-SHA256(key, label | salt)}), so the same key can be used for any number
+ * of containers. Every block is sealed on its own, with a nonce made of a domain and the offset of
+ * the block at the container - unique within the container - and authenticating the entry name and
+ * whether it is the last block of the entry. Blocks can be decrypted and verified independently
+ * (and in parallel), and a block moved to another position or entry, or an entry truncated, fails
+ * the authentication.
+ */
+final class BlockCipher {
+    /**
+     * Size of the random salt of every container.
+     */
+    static final int SALT_SIZE = 16;
+    /**
+     * Size of the authentication tag appended to every sealed block.
+     */
+    static final int TAG_SIZE = 16;
+    /**
+     * Domain of the nonces of the entry blocks.
+     */
+    private static final int DOMAIN_BLOCK = 0;
+    /**
+     * Domain of the nonce of the key check value.
+     */
+    private static final int DOMAIN_KEY_CHECK = 1;
+    /**
+     * Domain of the nonce of the dictionary.
+     */
+    private static final int DOMAIN_DICTIONARY = 2;
+    private static final String TRANSFORMATION = "AES/GCM/NoPadding";
+    private static final byte[] LABEL = "FTBX AES-GCM".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] LAST = {1};
+    private static final byte[] NOT_LAST = {0};
+    private static final SecureRandom RANDOM = new SecureRandom();
+    private final SecretKeySpec mKey;
+    private final byte[] mSalt;
+
+    /**
+     * Generates a new cipher, deriving the block key of the container.
+     *
+     * @param key  AES key given by the user.
+     * @param salt salt of the container.
+     */
+    private BlockCipher(SecretKey key, byte[] salt) {
+        byte[] encoded = key.getEncoded();
+        try {
+            Mac mac = Mac.getInstance("HmacSHA256");
+            mac.init(new SecretKeySpec(encoded, "HmacSHA256"));
+            mac.update(LABEL);
+            byte[] derived = mac.doFinal(salt);
+            mKey = new SecretKeySpec(derived, 0, encoded.length, "AES");
+            Arrays.fill(derived, (byte) 0);
+        } catch (GeneralSecurityException e) {
+            // Every Java platform is required to support HmacSHA256
+            throw new IllegalStateException(e);
+        }
+        mSalt = salt.clone();
+    }
+
+    /**
+     * Generates the cipher for a new container, with a random salt.
+     *
+     * @param key AES key - see {@link #checkKey(SecretKey)}.
+     *
+     * @return the {@code BlockCipher}.
+     */
+    static BlockCipher create(SecretKey key) {
+        byte[] salt = new byte[SALT_SIZE];
+        RANDOM.nextBytes(salt);
+        return new BlockCipher(key, salt);
+    }
+
+    /**
+     * Generates the cipher of an existing container.
+     *
+     * @param key  AES key - see {@link #checkKey(SecretKey)}.
+     * @param salt salt stored at the container header.
+     *
+     * @return the {@code BlockCipher}.
+     */
+    static BlockCipher of(SecretKey key, byte[] salt) {
+        return new BlockCipher(key, salt);
+    }
+
+    /**
+     * Verifies that the given key can be used for encrypting containers: an AES key of 128, 192
+     * or 256 bits whose raw value is available.
+     *
+     * @param key key to check.
+     *
+     * @throws IllegalArgumentException if the key cannot be used.
+     */
+    static void checkKey(SecretKey key) {
+        byte[] encoded = key.getEncoded();
+        if (!"AES".equalsIgnoreCase(key.getAlgorithm()) || encoded == null ||
+                (encoded.length != 16 && encoded.length != 24 && encoded.length != 32))
+            throw new IllegalArgumentException("The encryption key must be a raw AES key of " +
+                    "128, 192 or 256 bits");
+    }
+
+    /**
+     * Obtains the salt of the container.
+     *
+     * @return a copy of the salt.
+     */
+    byte[] getSalt() {
+        return mSalt.clone();
+    }
+
+    /**
+     * Obtains the key check value of the container, stored at its header for detecting wrong keys
+     * before reading any entry.
+     *
+     * @return {@code byte[]} with the check value.
+     */
+    byte[] keyCheck() {
+        return seal(newCipher(), DOMAIN_KEY_CHECK, 0, new byte[0], new byte[0], 0, 0, true);
+    }
+
+    /**
+     * Encrypts the dictionary of the container, as it is made of pieces of the entries.
+     *
+     * @param dictionary plain dictionary.
+     *
+     * @return {@code byte[]} with the sealed dictionary.
+     */
+    byte[] sealDictionary(byte[] dictionary) {
+        return seal(newCipher(), DOMAIN_DICTIONARY, 0, new byte[0], dictionary, 0,
+                dictionary.length, true);
+    }
+
+    /**
+     * Decrypts the dictionary of the container.
+     *
+     * @param sealed sealed dictionary.
+     *
+     * @return {@code byte[]} with the plain dictionary.
+     *
+     * @throws AEADBadTagException if the dictionary cannot be authenticated.
+     */
+    byte[] openDictionary(byte[] sealed) throws AEADBadTagException {
+        return open(newCipher(), DOMAIN_DICTIONARY, 0, new byte[0], sealed, 0, sealed.length,
+                true);
+    }
+
+    /**
+     * Generates a new AES-GCM cipher - ciphers are not thread safe, so every stream uses its own.
+     *
+     * @return the {@code Cipher}.
+     */
+    Cipher newCipher() {
+        try {
+            return Cipher.getInstance(TRANSFORMATION);
+        } catch (GeneralSecurityException e) {
+            // Every Java platform is required to support AES/GCM/NoPadding
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Encrypts a block of an entry.
+     *
+     * @param cipher cipher of the stream.
+     * @param offset offset of the block at the container.
+     * @param name   UTF-8 name of the entry.
+     * @param data   buffer with the block.
+     * @param off    offset of the block at the buffer.
+     * @param len    length of the block.
+     * @param isLast whether it is the last block of the entry.
+     *
+     * @return {@code byte[]} with the encrypted block followed by its tag.
+     */
+    byte[] sealBlock(Cipher cipher, long offset, byte[] name, byte[] data, int off, int len,
+                     boolean isLast) {
+        return seal(cipher, DOMAIN_BLOCK, offset, name, data, off, len, isLast);
+    }
+
+    /**
+     * Decrypts and verifies a block of an entry.
+     *
+     * @param cipher    cipher of the stream.
+     * @param offset    offset of the block at the container.
+     * @param name      UTF-8 name of the entry.
+     * @param sealed    buffer with the encrypted block followed by its tag.
+     * @param off       offset of the block at the buffer.
+     * @param len       length of the block, including the tag.
+     * @param isLast    whether it is the last block of the entry.
+     * @param entryName name of the entry, for the error messages.
+     *
+     * @return {@code byte[]} with the plain block.
+     *
+     * @throws FileError if the block cannot be authenticated.
+     */
+    byte[] openBlock(Cipher cipher, long offset, byte[] name, byte[] sealed, int off, int len,
+                     boolean isLast, String entryName) {
+        try {
+            return open(cipher, DOMAIN_BLOCK, offset, name, sealed, off, len, isLast);
+        } catch (AEADBadTagException e) {
+            throw new FileError(String.format("Block at %d of entry \"%s\" cannot be " +
+                    "authenticated - the container probably has been modified.", offset,
+                    entryName), e);
+        }
+    }
+
+    /**
+     * Encrypts the given data.
+     *
+     * @param cipher cipher to use.
+     * @param domain domain of the nonce.
+     * @param offset offset of the nonce.
+     * @param name   additional data authenticated with the data.
+     * @param data   buffer with the data.
+     * @param off    offset of the data at the buffer.
+     * @param len    length of the data.
+     * @param isLast whether it is the last block of an entry.
+     *
+     * @return {@code byte[]} with the encrypted data followed by its tag.
+     */
+    private byte[] seal(Cipher cipher, int domain, long offset, byte[] name, byte[] data, int off,
+                        int len, boolean isLast) {
+        try {
+            cipher.init(Cipher.ENCRYPT_MODE, mKey, nonce(domain, offset));
+            cipher.updateAAD(name);
+            cipher.updateAAD(isLast ? LAST : NOT_LAST);
+            return cipher.doFinal(data, off, len);
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Decrypts and verifies the given data.
+     *
+     * @param cipher cipher to use.
+     * @param domain domain of the nonce.
+     * @param offset offset of the nonce.
+     * @param name   additional data authenticated with the data.
+     * @param sealed buffer with the encrypted data followed by its tag.
+     * @param off    offset of the data at the buffer.
+     * @param len    length of the data, including the tag.
+     * @param isLast whether it is the last block of an entry.
+     *
+     * @return {@code byte[]} with the plain data.
+     *
+     * @throws AEADBadTagException if the data cannot be authenticated.
+     */
+    private byte[] open(Cipher cipher, int domain, long offset, byte[] name, byte[] sealed,
+                        int off, int len, boolean isLast) throws AEADBadTagException {
+        try {
+            cipher.init(Cipher.DECRYPT_MODE, mKey, nonce(domain, offset));
+            cipher.updateAAD(name);
+            cipher.updateAAD(isLast ? LAST : NOT_LAST);
+            return cipher.doFinal(sealed, off, len);
+        } catch (AEADBadTagException e) {
+            throw e;
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Generates the nonce for the given domain and offset.
+     *
+     * @param domain domain of the nonce.
+     * @param offset offset of the sealed data at the container.
+     *
+     * @return the {@code GCMParameterSpec}.
+     */
+    private static GCMParameterSpec nonce(int domain, long offset) {
+        byte[] nonce = ByteBuffer.allocate(Integer.BYTES + Long.BYTES).putInt(domain)
+                .putLong(offset).array();
+        return new GCMParameterSpec(TAG_SIZE * Byte.SIZE, nonce);
+    }
+}
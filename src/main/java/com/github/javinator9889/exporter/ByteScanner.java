@@ -0,0 +1,189 @@
+package com.github.javinator9889.exporter;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * <p>Locates bytes (line terminators, separators...) at raw data <b>eight bytes at a time</b>,
+ * instead of decoding it and inspecting it char by char.
+ * <p>
+ * Every step reads a {@code long} and checks all its bytes at once with the "SWAR" (SIMD within a
+ * register) zero-byte trick: after XOR-ing the word with the searched byte repeated eight times,
+ * the matching bytes become zero and {@code (x - 0x01..01) & ~x & 0x80..80} sets the high bit of
+ * the lowest of them. Newer JDKs may provide a faster implementation (see {@link #get()}).
+ * <p>
+ * Scanning bytes instead of chars is only valid for charsets where line terminators are always
+ * encoded as the single bytes {@code '\r'} and {@code '\n'} - see {@link
+ * #supportsLines(Charset)}.
+ */
+class ByteScanner {
+    private static final long ONES = 0x0101010101010101L;
+    private static final long HIGHS = 0x8080808080808080L;
+    private static final long LOWS = 0x7F7F7F7F7F7F7F7FL;
+    private static final long LF = ONES * '\n';
+    private static final long CR = ONES * '\r';
+    private static final ByteScanner INSTANCE = ByteScanners.create();
+
+    /**
+     * Package-private constructor - use {@link #get()}.
+     */
+    ByteScanner() {
+    }
+
+    /**
+     * Obtains the fastest scanner supported by the running JVM.
+     *
+     * @return the shared {@code ByteScanner}.
+     */
+    static ByteScanner get() {
+        return INSTANCE;
+    }
+
+    /**
+     * Checks whether line terminators can be located at the raw data encoded with the given
+     * charset, which happens for UTF-8 and for single-byte charsets compatible with ASCII.
+     *
+     * @param charset charset of the data.
+     *
+     * @return {@code true} if lines can be scanned at the bytes.
+     */
+    static boolean supportsLines(Charset charset) {
+        if (charset.equals(StandardCharsets.UTF_8))
+            return true;
+        return charset.canEncode() && charset.newEncoder().maxBytesPerChar() == 1 &&
+                Arrays.equals("\r\n".getBytes(charset), new byte[]{'\r', '\n'});
+    }
+
+    /**
+     * Normalizes the line terminators of the given data: {@code "\r\n"} and {@code "\r"} are
+     * converted to {@code "\n"} and, if the data is not empty, it always ends with {@code "\n"}.
+     *
+     * @param data data to normalize, whose charset {@link #supportsLines(Charset) supports
+     *             lines}.
+     *
+     * @return {@code byte[]} with the normalized data - {@code data} itself if it was already
+     * normalized.
+     */
+    static byte[] normalizeLines(byte[] data) {
+        ByteScanner scanner = get();
+        int length = data.length;
+        int cr = scanner.indexOf(data, 0, length, (byte) '\r');
+        if (cr == -1) {
+            if (length == 0 || data[length - 1] == '\n')
+                return data;
+            byte[] normalized = Arrays.copyOf(data, length + 1);
+            normalized[length] = '\n';
+            return normalized;
+        }
+        byte[] normalized = new byte[length + 1];
+        int position = 0;
+        int start = 0;
+        while (cr != -1) {
+            System.arraycopy(data, start, normalized, position, cr - start);
+            position += cr - start;
+            normalized[position++] = '\n';
+            start = cr + 1;
+            if (start < length && data[start] == '\n')
+                ++start;
+            cr = scanner.indexOf(data, start, length, (byte) '\r');
+        }
+        System.arraycopy(data, start, normalized, position, length - start);
+        position += length - start;
+        if (normalized[position - 1] != '\n')
+            normalized[position++] = '\n';
+        return position == normalized.length ? normalized : Arrays.copyOf(normalized, position);
+    }
+
+    /**
+     * Obtains the index of the first occurrence of a byte.
+     *
+     * @param data  data to scan.
+     * @param from  first index to scan (inclusive).
+     * @param to    last index to scan (exclusive).
+     * @param value byte to look for.
+     *
+     * @return {@code int} with the index, {@code -1} if it was not found.
+     */
+    int indexOf(byte[] data, int from, int to, byte value) {
+        ByteBuffer words = ByteBuffer.wrap(data).order(ByteOrder.LITTLE_ENDIAN);
+        long pattern = ONES * (value & 0xFF);
+        int i = from;
+        for (; i + Long.BYTES <= to; i += Long.BYTES) {
+            long found = firstZero(words.getLong(i) ^ pattern);
+            if (found != 0)
+                return i + (Long.numberOfTrailingZeros(found) >>> 3);
+        }
+        for (; i < to; ++i) {
+            if (data[i] == value)
+                return i;
+        }
+        return -1;
+    }
+
+    /**
+     * Obtains the index of the first line terminator ({@code '\n'} or {@code '\r'}).
+     *
+     * @param data data to scan.
+     * @param from first index to scan (inclusive).
+     * @param to   last index to scan (exclusive).
+     *
+     * @return {@code int} with the index, {@code -1} if there is no terminator.
+     */
+    int indexOfLineEnd(byte[] data, int from, int to) {
+        ByteBuffer words = ByteBuffer.wrap(data).order(ByteOrder.LITTLE_ENDIAN);
+        int i = from;
+        for (; i + Long.BYTES <= to; i += Long.BYTES) {
+            long word = words.getLong(i);
+            long found = firstZero(word ^ LF) | firstZero(word ^ CR);
+            if (found != 0)
+                return i + (Long.numberOfTrailingZeros(found) >>> 3);
+        }
+        for (; i < to; ++i) {
+            if (data[i] == '\n' || data[i] == '\r')
+                return i;
+        }
+        return -1;
+    }
+
+    /**
+     * Counts the occurrences of a byte.
+     *
+     * @param data  data to scan.
+     * @param from  first index to scan (inclusive).
+     * @param to    last index to scan (exclusive).
+     * @param value byte to count.
+     *
+     * @return {@code int} with the number of occurrences.
+     */
+    int count(byte[] data, int from, int to, byte value) {
+        ByteBuffer words = ByteBuffer.wrap(data).order(ByteOrder.LITTLE_ENDIAN);
+        long pattern = ONES * (value & 0xFF);
+        int count = 0;
+        int i = from;
+        for (; i + Long.BYTES <= to; i += Long.BYTES) {
+            long word = words.getLong(i) ^ pattern;
+            count += Long.bitCount(~(((word & LOWS) + LOWS) | word | LOWS));
+        }
+        for (; i < to; ++i) {
+            if (data[i] == value)
+                ++count;
+        }
+        return count;
+    }
+
+    /**
+     * Marks the zero bytes of a word. The lowest marked byte is always a zero byte, but the ones
+     * above it may be false positives (borrows of the subtraction) - enough for locating the
+     * first match.
+     *
+     * @param word word to check.
+     *
+     * @return {@code long} with the high bit set at the zero bytes, {@code 0} if there is none.
+     */
+    private static long firstZero(long word) {
+        return (word - ONES) & ~word & HIGHS;
+    }
+}
@@ -0,0 +1,23 @@
+package com.github.javinator9889.exporter;
+
+/**
+ * Selects the {@link ByteScanner} implementation for the running JVM. This is the Java 8 version,
+ * which always uses the portable one - newer JDKs load their own version of this class from the
+ * multi-release jar.
+ */
+final class ByteScanners {
+    /**
+     * Do not let anyone instantiate this class.
+     */
+    private ByteScanners() {
+    }
+
+    /**
+     * Creates the scanner for the running JVM.
+     *
+     * @return the {@code ByteScanner}.
+     */
+    static ByteScanner create() {
+        return new ByteScanner();
+    }
+}
@@ -0,0 +1,317 @@
+package com.github.javinator9889.exporter;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.Objects;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * <p>Publishes the data of a sequence of entries (source files or container entries) as {@link
+ * EntryChunk chunks} of, at most, {@link Container#BLOCK_SIZE} bytes, <b>honoring the demand</b>
+ * of its subscribers.
+ * <p>
+ * A chunk is only read when the subscriber has requested it, so slow consumers (uploaders,
+ * indexers...) never make the publisher buffer the data: the memory used is bounded by the
+ * requested chunks. Subscribers that process the chunks asynchronously (e.g.: every entry at a
+ * different thread) can request several chunks at once and keep requesting more as they finish:
+ * <pre>
+ * reader.publish(reader.getEntries()).subscribe(new ChunkPublisher.Subscriber() {
+ *     public void onSubscribe(ChunkPublisher.Subscription subscription) {
+ *         subscription.request(8); // at most 8 chunks in flight
+ *     }
+ *     public void onNext(EntryChunk chunk) {
+ *         pool.execute(() -&gt; { upload(chunk); subscription.request(1); });
+ *     }
+ *     ...
+ * });
+ * </pre>
+ *
+ * The subscriber and subscription interfaces have the same contract as the reactive streams ones
+ * ({@code java.util.concurrent.Flow} since Java 9): signals to a subscriber are never concurrent,
+ * {@code onError} or {@code onComplete} is the last signal, requesting a non-positive number of
+ * chunks fails the subscription and a subscriber that throws at {@code onNext} is considered
+ * cancelled. Every subscription reads the entries again from the start, at the publisher
+ * executor.
+ *
+ * @see FileToBytesExporter#publishSources(boolean)
+ * @see ContainerReader#publish(java.util.List)
+ */
+public class ChunkPublisher {
+    private final Source mSource;
+    private final Executor mExecutor;
+
+    /**
+     * Generates a new publisher.
+     *
+     * @param source   entries to publish.
+     * @param executor executor where the entries are read and the signals are emitted.
+     */
+    ChunkPublisher(Source source, Executor executor) {
+        mSource = source;
+        mExecutor = Objects.requireNonNull(executor, "Executor cannot be null");
+    }
+
+    /**
+     * Subscribes to the chunks of all the entries - {@link Subscriber#onSubscribe(Subscription)}
+     * is called before returning, and no chunk is read until the subscriber requests it.
+     *
+     * @param subscriber subscriber that receives the chunks.
+     *
+     * @throws NullPointerException if {@code subscriber} is {@code null}.
+     */
+    public void subscribe(Subscriber subscriber) {
+        Objects.requireNonNull(subscriber, "Subscriber cannot be null");
+        subscriber.onSubscribe(new ChunkSubscription(subscriber));
+    }
+
+    /**
+     * Receiver of the chunks published by a {@link ChunkPublisher}.
+     */
+    public interface Subscriber {
+        /**
+         * Called once, before any other signal, with the subscription used for requesting chunks.
+         *
+         * @param subscription subscription of this subscriber.
+         */
+        void onSubscribe(Subscription subscription);
+
+        /**
+         * Called with the next chunk, only if it was requested.
+         *
+         * @param chunk next chunk of the entries.
+         */
+        void onNext(EntryChunk chunk);
+
+        /**
+         * Called once if the entries cannot be read - no more signals are received after it.
+         *
+         * @param throwable cause of the error.
+         */
+        void onError(Throwable throwable);
+
+        /**
+         * Called once after the last chunk of the last entry - no more signals are received after
+         * it.
+         */
+        void onComplete();
+    }
+
+    /**
+     * Link between a {@link ChunkPublisher} and one of its subscribers.
+     */
+    public interface Subscription {
+        /**
+         * Adds the given number of chunks to the demand of the subscriber.
+         *
+         * @param n number of chunks - if it is not positive, the subscriber receives an {@link
+         *          IllegalArgumentException} at {@code onError}.
+         */
+        void request(long n);
+
+        /**
+         * Stops publishing chunks to the subscriber and releases the open entry, if any.
+         */
+        void cancel();
+    }
+
+    /**
+     * Entries published by a {@link ChunkPublisher}.
+     */
+    interface Source {
+        /**
+         * Obtains the number of entries.
+         *
+         * @return {@code int} with the number of entries.
+         */
+        int size();
+
+        /**
+         * Obtains the name of an entry.
+         *
+         * @param index index of the entry.
+         *
+         * @return {@code String} with the name.
+         */
+        String name(int index);
+
+        /**
+         * Opens the data of an entry.
+         *
+         * @param index index of the entry.
+         *
+         * @return {@code InputStream} with the data - closed by the publisher.
+         *
+         * @throws IOException if the entry cannot be opened.
+         */
+        InputStream open(int index) throws IOException;
+    }
+
+    /**
+     * Subscription that reads the entries, chunk by chunk, while there is demand. All the signals
+     * are emitted from a single drain loop at a time, scheduled at the executor whenever the demand
+     * changes.
+     */
+    private final class ChunkSubscription implements Subscription, Runnable {
+        private final Subscriber mSubscriber;
+        private final AtomicLong mDemand;
+        private final AtomicInteger mPendingDrains;
+        private final byte[] mBuffer;
+        private volatile boolean mIsCancelled;
+        private volatile IllegalArgumentException mInvalidRequest;
+        private boolean mIsDone;
+        private int mEntry;
+        private InputStream mInput;
+        private long mOffset;
+        private int mNextByte;
+
+        /**
+         * Generates a new subscription.
+         *
+         * @param subscriber subscriber that receives the chunks.
+         */
+        ChunkSubscription(Subscriber subscriber) {
+            mSubscriber = subscriber;
+            mDemand = new AtomicLong();
+            mPendingDrains = new AtomicInteger();
+            mBuffer = new byte[Container.BLOCK_SIZE];
+            mNextByte = -1;
+        }
+
+        @Override
+        public void request(long n) {
+            if (n <= 0) {
+                mInvalidRequest = new IllegalArgumentException(String.format("The number of " +
+                        "requested chunks must be positive: %d", n));
+            } else {
+                long current;
+                long demand;
+                do {
+                    current = mDemand.get();
+                    demand = current + n < 0 ? Long.MAX_VALUE : current + n;
+                } while (!mDemand.compareAndSet(current, demand));
+            }
+            schedule();
+        }
+
+        @Override
+        public void cancel() {
+            mIsCancelled = true;
+            schedule();
+        }
+
+        /**
+         * Schedules the drain loop, unless it is already running - in that case, it runs again.
+         */
+        private void schedule() {
+            if (mPendingDrains.getAndIncrement() == 0)
+                mExecutor.execute(this);
+        }
+
+        @Override
+        public void run() {
+            int pending = 1;
+            do {
+                drain();
+                pending = mPendingDrains.addAndGet(-pending);
+            } while (pending != 0);
+        }
+
+        /**
+         * Emits chunks while there is demand, until the subscription is cancelled or finished.
+         */
+        private void drain() {
+            while (!mIsDone) {
+                if (mIsCancelled) {
+                    finish(null, false);
+                } else if (mInvalidRequest != null) {
+                    finish(mInvalidRequest, true);
+                } else if (mDemand.get() > 0) {
+                    EntryChunk chunk;
+                    try {
+                        chunk = next();
+                    } catch (IOException | RuntimeException e) {
+                        finish(e, true);
+                        return;
+                    }
+                    if (chunk == null) {
+                        finish(null, true);
+                        return;
+                    }
+                    if (mDemand.get() != Long.MAX_VALUE)
+                        mDemand.decrementAndGet();
+                    try {
+                        mSubscriber.onNext(chunk);
+                    } catch (RuntimeException e) {
+                        // A subscriber that fails is considered cancelled
+                        finish(null, false);
+                    }
+                } else {
+                    return;
+                }
+            }
+        }
+
+        /**
+         * Reads the next chunk.
+         *
+         * @return the next {@link EntryChunk}, {@code null} after the last entry.
+         *
+         * @throws IOException if the entry cannot be read.
+         */
+        private EntryChunk next() throws IOException {
+            if (mEntry == mSource.size())
+                return null;
+            if (mInput == null) {
+                mInput = mSource.open(mEntry);
+                mOffset = 0;
+            }
+            int length = 0;
+            if (mNextByte != -1) {
+                mBuffer[length++] = (byte) mNextByte;
+                mNextByte = -1;
+            }
+            int read;
+            while (length < mBuffer.length &&
+                    (read = mInput.read(mBuffer, length, mBuffer.length - length)) != -1)
+                length += read;
+            // Look ahead one byte for knowing whether this is the last chunk of the entry
+            boolean isLast = length < mBuffer.length || (mNextByte = mInput.read()) == -1;
+            EntryChunk chunk = new EntryChunk(mEntry, mSource.name(mEntry), mOffset,
+                    Arrays.copyOf(mBuffer, length), isLast);
+            mOffset += length;
+            if (isLast) {
+                mInput.close();
+                mInput = null;
+                ++mEntry;
+            }
+            return chunk;
+        }
+
+        /**
+         * Finishes the subscription, releasing the open entry.
+         *
+         * @param error  cause of the error, {@code null} if it finished successfully.
+         * @param signal whether the subscriber must be notified.
+         */
+        private void finish(Throwable error, boolean signal) {
+            mIsDone = true;
+            if (mInput != null) {
+                try {
+                    mInput.close();
+                } catch (IOException ignored) {
+                    // The entry is not going to be read anymore
+                }
+                mInput = null;
+            }
+            if (!signal)
+                return;
+            if (error == null)
+                mSubscriber.onComplete();
+            else
+                mSubscriber.onError(error);
+        }
+    }
+}
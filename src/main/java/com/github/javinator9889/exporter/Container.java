@@ -0,0 +1,159 @@
+package com.github.javinator9889.exporter;
+
+import java.io.File;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.List;
+
+/**
+ * <p>Constants and helpers shared by the container writers and readers.
+ * <p>
+ * A container stores every source file as an independent <b>entry</b>, so entries can be found,
+ * read or extracted without decoding the others. Its layout is:
+ * <pre>
+ * header   int magic ("FTBX") | short version | short flags | int extra length | extra bytes
+ * entries  byte ENTRY | UTF name | blocks...     (repeated for every entry)
+ * index    byte INDEX | int count | (UTF name | long offset | long stored length | long size |
+ *          byte[32] SHA-256 digest)...
+ * trailer  long index offset | int magic ("FTBI")
+ * </pre>
+ * The data of every entry is split into blocks of, at most, {@link #BLOCK_SIZE} bytes, each one
+ * preceded by its {@code int} length, and finished with an empty block. Entries can be read
+ * sequentially from a stream or randomly by using the index at the end of the file.
+ */
+final class Container {
+    /**
+     * Magic number at the start of every container: "FTBX".
+     */
+    static final int MAGIC = 0x46544258;
+    /**
+     * Magic number at the end of every container: "FTBI".
+     */
+    static final int INDEX_MAGIC = 0x46544249;
+    /**
+     * Magic number at the start of every shards manifest: "FTBM".
+     */
+    static final int MANIFEST_MAGIC = 0x4654424D;
+    /**
+     * Current version of the container format.
+     */
+    static final short VERSION = 1;
+    /**
+     * Marker that precedes every entry.
+     */
+    static final byte ENTRY = 1;
+    /**
+     * Marker that precedes the index.
+     */
+    static final byte INDEX = 0;
+    /**
+     * Maximum number of bytes of a block.
+     */
+    static final int BLOCK_SIZE = 64 * 1024;
+    /**
+     * Size of the trailer: the index offset and the magic.
+     */
+    static final int TRAILER_SIZE = Long.BYTES + Integer.BYTES;
+    /**
+     * Size of the SHA-256 digest of every entry.
+     */
+    static final int DIGEST_SIZE = 32;
+
+    /**
+     * Do not let anyone instantiate this class.
+     */
+    private Container() {
+    }
+
+    /**
+     * Generates a new SHA-256 digest for the entries, by cloning a shared, never updated one - far
+     * cheaper than looking up the provider for every digest.
+     *
+     * @return {@link MessageDigest} instance.
+     */
+    static MessageDigest newDigest() {
+        try {
+            return (MessageDigest) DigestPrototype.SHA_256.clone();
+        } catch (CloneNotSupportedException e) {
+            return DigestPrototype.newInstance();
+        }
+    }
+
+    /**
+     * Obtains the root the entries of an export are named against: the deepest directory that
+     * contains all the inspected roots - the only root itself if there is just one. Every source
+     * file therefore has a single name, however its path was written.
+     *
+     * @param roots directories where the sources are looked for - cannot be empty.
+     *
+     * @return the absolute, normalized root {@code File}.
+     *
+     * @throws IllegalArgumentException if the roots do not share any directory (e.g.: they are at
+     *                                  different drives).
+     */
+    static File namingRoot(List<File> roots) {
+        Path common = null;
+        for (File root : roots) {
+            Path path = root.toPath().toAbsolutePath().normalize();
+            if (common == null) {
+                common = path;
+                continue;
+            }
+            while (common != null && !path.startsWith(common))
+                common = common.getParent();
+            if (common == null)
+                throw new IllegalArgumentException(String.format("Root \"%s\" does not share " +
+                        "any directory with the other roots", root.toString()));
+        }
+        return common.toFile();
+    }
+
+    /**
+     * Obtains the name of the entry for the given file: its normalized path, relative to the
+     * given root, using {@code '/'} as separator - so it can be safely resolved against any
+     * directory.
+     *
+     * @param root directory the name is relative to.
+     * @param file source file, inside {@code root}.
+     *
+     * @return {@code String} with the entry name.
+     *
+     * @throws IllegalArgumentException if the file is not inside the root.
+     */
+    static String entryName(File root, File file) {
+        Path rootPath = root.toPath().toAbsolutePath().normalize();
+        Path path = file.toPath().toAbsolutePath().normalize();
+        if (!path.startsWith(rootPath) || path.equals(rootPath))
+            throw new IllegalArgumentException(String.format("File \"%s\" is not inside \"%s\"",
+                    file.toString(), root.toString()));
+        StringBuilder name = new StringBuilder();
+        for (Path element : rootPath.relativize(path)) {
+            if (name.length() > 0)
+                name.append('/');
+            name.append(element.toString());
+        }
+        return name.toString();
+    }
+
+    /**
+     * Holder of the digest cloned by {@link #newDigest()}, initialized on its first use.
+     */
+    private static final class DigestPrototype {
+        private static final MessageDigest SHA_256 = newInstance();
+
+        /**
+         * Looks up a new SHA-256 digest.
+         *
+         * @return {@link MessageDigest} instance.
+         */
+        static MessageDigest newInstance() {
+            try {
+                return MessageDigest.getInstance("SHA-256");
+            } catch (NoSuchAlgorithmException e) {
+                // Every Java platform is required to support SHA-256
+                throw new IllegalStateException(e);
+            }
+        }
+    }
+}
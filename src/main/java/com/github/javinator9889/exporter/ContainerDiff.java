@@ -0,0 +1,244 @@
+package com.github.javinator9889.exporter;
+
+import com.github.javinator9889.error.InvalidContainerException;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+
+/**
+ * <p>Differences between two containers, computed from their indexes only: entries are matched by
+ * name and compared by their SHA-256 digest, so no entry is decoded - and entries stored with
+ * different compression are still equal when their contents are.
+ * <p>
+ * The entries that were added or changed can be written to a <b>delta container</b>, which
+ * copies their stored data as it is and lists the removed entries at its header. A delta is a
+ * regular container too, and {@link #apply(File, File, File) applying} it to the old container
+ * produces the new one:
+ * <pre>
+ * ContainerDiff diff = ContainerDiff.compare(new File("old.ftbx"), new File("new.ftbx"));
+ * if (!diff.isEmpty())
+ *     diff.writeDelta(new File("update.ftbx"));
+ * ...
+ * ContainerDiff.apply(new File("old.ftbx"), new File("update.ftbx"), new File("new.ftbx"));
+ * </pre>
+ *
+ * The digests of encrypted containers are computed from the authentication tags of their blocks,
+ * which differ at every export, so they cannot be compared.
+ */
+public final class ContainerDiff {
+    private final File mNewContainer;
+    private final List<ContainerEntry> mAdded;
+    private final List<ContainerEntry> mRemoved;
+    private final List<ContainerEntry> mChanged;
+    private final int mUnchanged;
+
+    /**
+     * Private constructor for generating a new instance - only visible for this class.
+     *
+     * @param newContainer container the differences lead to.
+     * @param added        entries of the new container that are not at the old one.
+     * @param removed      entries of the old container that are not at the new one.
+     * @param changed      entries of the new container whose contents changed.
+     * @param unchanged    number of entries that are equal at both containers.
+     */
+    private ContainerDiff(File newContainer, List<ContainerEntry> added,
+                          List<ContainerEntry> removed, List<ContainerEntry> changed,
+                          int unchanged) {
+        mNewContainer = newContainer;
+        mAdded = Collections.unmodifiableList(added);
+        mRemoved = Collections.unmodifiableList(removed);
+        mChanged = Collections.unmodifiableList(changed);
+        mUnchanged = unchanged;
+    }
+
+    /**
+     * Compares the indexes of the given containers.
+     *
+     * @param oldContainer container taken as the base.
+     * @param newContainer container compared against the base.
+     *
+     * @return the {@code ContainerDiff} from {@code oldContainer} to {@code newContainer}.
+     *
+     * @throws IOException               if any container cannot be read.
+     * @throws InvalidContainerException if any file is not a valid container or it is encrypted.
+     */
+    public static ContainerDiff compare(File oldContainer, File newContainer)
+            throws IOException {
+        try (ContainerReader oldReader = new ContainerReader(oldContainer);
+             ContainerReader newReader = new ContainerReader(newContainer)) {
+            ArrayList<ContainerEntry> added = new ArrayList<>();
+            ArrayList<ContainerEntry> removed = new ArrayList<>();
+            ArrayList<ContainerEntry> changed = new ArrayList<>();
+            int unchanged = 0;
+            for (ContainerEntry entry : newReader.getEntries()) {
+                ContainerEntry previous = oldReader.getEntry(entry.getName());
+                if (previous == null)
+                    added.add(entry);
+                else if (previous.getSize() != entry.getSize() ||
+                        !Arrays.equals(previous.getDigest(), entry.getDigest()))
+                    changed.add(entry);
+                else
+                    ++unchanged;
+            }
+            for (ContainerEntry entry : oldReader.getEntries()) {
+                if (newReader.getEntry(entry.getName()) == null)
+                    removed.add(entry);
+            }
+            return new ContainerDiff(newContainer, added, removed, changed, unchanged);
+        }
+    }
+
+    /**
+     * Applies a delta container to the container it was computed from, writing the resulting
+     * container: the entries of the base that were not removed nor changed, in their order, with
+     * the changed ones replaced by the delta ones, followed by the added entries. The stored data
+     * of the entries is copied as it is. The destination is written to a temporary file that
+     * atomically replaces it once completed.
+     *
+     * @param base        container the delta was computed from.
+     * @param delta       delta container, written by {@link #writeDelta(File)}.
+     * @param destination resulting container - it is created (or replaced if it exists).
+     *
+     * @return {@code List} with the entries of the resulting container.
+     *
+     * @throws IOException               if any container cannot be read or the destination cannot
+     *                                   be written.
+     * @throws InvalidContainerException if any file is not a valid container, it is encrypted or
+     *                                   both store their entries with a different encoding.
+     */
+    public static List<ContainerEntry> apply(File base, File delta, File destination)
+            throws IOException {
+        try (ContainerReader baseReader = new ContainerReader(base);
+             ContainerReader deltaReader = new ContainerReader(delta)) {
+            if (!baseReader.getHeader().isCompatible(deltaReader.getHeader()))
+                throw new InvalidContainerException(String.format("Delta \"%s\" stores its " +
+                        "entries with a different encoding than \"%s\"", delta.toString(),
+                        base.toString()));
+            HashSet<String> removed = new HashSet<>(deltaReader.getRemovedNames());
+            List<ContainerEntry> entries;
+            File partial = AtomicFiles.partial(destination);
+            try (ContainerWriter writer = new ContainerWriter(new FileOutputStream(partial),
+                    baseReader.getHeader().withRemoved(Collections.<String>emptyList()))) {
+                for (ContainerEntry entry : baseReader.getEntries()) {
+                    if (removed.contains(entry.getName()))
+                        continue;
+                    ContainerEntry changed = deltaReader.getEntry(entry.getName());
+                    if (changed != null)
+                        writer.copy(deltaReader, changed);
+                    else
+                        writer.copy(baseReader, entry);
+                }
+                for (ContainerEntry entry : deltaReader.getEntries()) {
+                    if (baseReader.getEntry(entry.getName()) == null)
+                        writer.copy(deltaReader, entry);
+                }
+                entries = new ArrayList<>(writer.getEntries());
+            }
+            AtomicFiles.publish(partial, destination, SyncPolicy.ON_PUBLISH);
+            return entries;
+        }
+    }
+
+    /**
+     * Writes the delta container: the added and changed entries, copied as they are stored at the
+     * new container, and the names of the removed entries at its header. The destination is
+     * written to a temporary file that atomically replaces it once completed.
+     *
+     * @param destination delta container - it is created (or replaced if it exists).
+     *
+     * @return {@code List} with the entries of the delta.
+     *
+     * @throws IOException               if the new container cannot be read or the delta cannot
+     *                                   be written.
+     * @throws InvalidContainerException if the new container was modified after being compared.
+     */
+    public List<ContainerEntry> writeDelta(File destination) throws IOException {
+        ArrayList<String> removed = new ArrayList<>(mRemoved.size());
+        for (ContainerEntry entry : mRemoved)
+            removed.add(entry.getName());
+        HashSet<ContainerEntry> written = new HashSet<>(mAdded);
+        written.addAll(mChanged);
+        try (ContainerReader reader = new ContainerReader(mNewContainer)) {
+            List<ContainerEntry> entries;
+            File partial = AtomicFiles.partial(destination);
+            try (ContainerWriter writer = new ContainerWriter(new FileOutputStream(partial),
+                    reader.getHeader().withRemoved(removed))) {
+                // Entries are written in the order of the new container
+                for (ContainerEntry entry : reader.getEntries()) {
+                    if (written.contains(entry))
+                        writer.copy(reader, entry);
+                }
+                entries = new ArrayList<>(writer.getEntries());
+            }
+            if (entries.size() != written.size()) {
+                partial.delete();
+                throw new InvalidContainerException(String.format("Container \"%s\" was " +
+                        "modified after being compared", mNewContainer.toString()));
+            }
+            AtomicFiles.publish(partial, destination, SyncPolicy.ON_PUBLISH);
+            return entries;
+        }
+    }
+
+    /**
+     * Obtains the entries of the new container that are not at the old one.
+     *
+     * @return unmodifiable {@code List} with the entries, in the order of the new container.
+     */
+    public List<ContainerEntry> getAdded() {
+        return mAdded;
+    }
+
+    /**
+     * Obtains the entries of the old container that are not at the new one.
+     *
+     * @return unmodifiable {@code List} with the entries, in the order of the old container.
+     */
+    public List<ContainerEntry> getRemoved() {
+        return mRemoved;
+    }
+
+    /**
+     * Obtains the entries of the new container whose contents are not the same as at the old one.
+     *
+     * @return unmodifiable {@code List} with the entries, in the order of the new container.
+     */
+    public List<ContainerEntry> getChanged() {
+        return mChanged;
+    }
+
+    /**
+     * Obtains the number of entries whose contents are the same at both containers.
+     *
+     * @return {@code int} with the number of entries.
+     */
+    public int getUnchanged() {
+        return mUnchanged;
+    }
+
+    /**
+     * Checks whether both containers have the same entries with the same contents.
+     *
+     * @return {@code true} if nothing was added, removed nor changed.
+     */
+    public boolean isEmpty() {
+        return mAdded.isEmpty() && mRemoved.isEmpty() && mChanged.isEmpty();
+    }
+
+    /**
+     * Returns a summary of the differences.
+     *
+     * @return a string representation of the differences.
+     */
+    @Override
+    public String toString() {
+        return String.format("%d added, %d removed, %d changed, %d unchanged", mAdded.size(),
+                mRemoved.size(), mChanged.size(), mUnchanged);
+    }
+}
@@ -0,0 +1,105 @@
+package com.github.javinator9889.exporter;
+
+import java.util.Arrays;
+import java.util.Objects;
+
+/**
+ * Entry of a container, as stored at its index: the name of the source file, where its data is
+ * and the SHA-256 digest of its original contents.
+ *
+ * @see ContainerReader#getEntries()
+ */
+public final class ContainerEntry {
+    private final String mName;
+    private final long mOffset;
+    private final long mStoredLength;
+    private final long mSize;
+    private final byte[] mDigest;
+
+    /**
+     * Generates a new entry - only visible for this package.
+     *
+     * @param name         name of the entry (relative path of the source file).
+     * @param offset       position of the first block of the entry at the container.
+     * @param storedLength number of bytes used by the blocks of the entry at the container.
+     * @param size         original size of the entry.
+     * @param digest       SHA-256 digest of the original contents.
+     */
+    ContainerEntry(String name, long offset, long storedLength, long size, byte[] digest) {
+        mName = name;
+        mOffset = offset;
+        mStoredLength = storedLength;
+        mSize = size;
+        mDigest = digest;
+    }
+
+    /**
+     * Obtains the name of the entry: the relative path of the source file, using {@code '/'} as
+     * separator.
+     *
+     * @return {@code String} with the name.
+     */
+    public String getName() {
+        return mName;
+    }
+
+    /**
+     * Obtains the position of the first block of the entry at the container.
+     *
+     * @return {@code long} with the offset.
+     */
+    public long getOffset() {
+        return mOffset;
+    }
+
+    /**
+     * Obtains the number of bytes used by the entry at the container, including the blocks
+     * headers.
+     *
+     * @return {@code long} with the stored length.
+     */
+    public long getStoredLength() {
+        return mStoredLength;
+    }
+
+    /**
+     * Obtains the original size of the entry.
+     *
+     * @return {@code long} with the size, in bytes.
+     */
+    public long getSize() {
+        return mSize;
+    }
+
+    /**
+     * Obtains the SHA-256 digest of the original contents of the entry - or, on encrypted
+     * containers, of the authentication tags of its blocks.
+     *
+     * @return a copy of the digest.
+     */
+    public byte[] getDigest() {
+        return mDigest.clone();
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+        ContainerEntry entry = (ContainerEntry) o;
+        return mOffset == entry.mOffset &&
+                mStoredLength == entry.mStoredLength &&
+                mSize == entry.mSize &&
+                Objects.equals(mName, entry.mName) &&
+                Arrays.equals(mDigest, entry.mDigest);
+    }
+
+    @Override
+    public int hashCode() {
+        return 31 * Objects.hash(mName, mOffset, mStoredLength, mSize) + Arrays.hashCode(mDigest);
+    }
+
+    @Override
+    public String toString() {
+        return String.format("ContainerEntry{name=%s, size=%d}", mName, mSize);
+    }
+}
@@ -0,0 +1,457 @@
+package com.github.javinator9889.exporter;
+
+import com.github.javinator9889.error.FileError;
+import com.github.javinator9889.error.InvalidContainerException;
+
+import javax.crypto.Cipher;
+import javax.crypto.SecretKey;
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+
+/**
+ * <p>Reconstructs the original files of a container at a directory, preserving their relative
+ * paths - the inverse of {@link FileToBytesExporter#exportContainer(File, boolean)}.
+ * <p>
+ * Entries are never loaded completely into memory: their blocks are written to the destination
+ * files, one block at a time, by using positional writes. When extracting a container file, its
+ * index is used for extracting all the entries in parallel (biggest first, so the longest ones
+ * are not left at the tail) - when several entries have the same name, only the last one is
+ * written. Containers can also be extracted from any {@link InputStream} (e.g.:
+ * while being downloaded), sequentially. Encrypted containers are decrypted and verified block by
+ * block in both cases.
+ */
+public final class ContainerExtractor {
+    /**
+     * Do not let anyone instantiate this class.
+     */
+    private ContainerExtractor() {
+    }
+
+    /**
+     * Extracts all the entries of the given container file, in parallel.
+     *
+     * @param container container file.
+     * @param directory destination directory - it is created if it does not exist.
+     *
+     * @return {@code List} with the written files, in the order of the entries.
+     *
+     * @throws IOException               if the container cannot be read or any file cannot be
+     *                                   written.
+     * @throws InvalidContainerException if the container is not valid or any entry name points
+     *                                   outside the {@code directory}.
+     * @throws FileError                 if the digest of any entry is not valid.
+     */
+    public static List<File> extract(File container, File directory) throws IOException {
+        return extract(container, directory, null);
+    }
+
+    /**
+     * Extracts all the entries of the given container file, that may be encrypted, in parallel.
+     *
+     * @param container container file.
+     * @param directory destination directory - it is created if it does not exist.
+     * @param key       key the container was encrypted with - not used if it is not encrypted.
+     *
+     * @return {@code List} with the written files, in the order of the entries.
+     *
+     * @throws IOException               if the container cannot be read or any file cannot be
+     *                                   written.
+     * @throws InvalidContainerException if the container is not valid, {@code key} is not its key
+     *                                   or any entry name points outside the {@code directory}.
+     * @throws FileError                 if the digest of any entry (or any encrypted block) is not
+     *                                   valid.
+     */
+    public static List<File> extract(File container, File directory, SecretKey key)
+            throws IOException {
+        try (ContainerReader reader = new ContainerReader(container, key)) {
+            return extract(reader, directory);
+        }
+    }
+
+    /**
+     * Extracts all the entries of the given container, in parallel.
+     *
+     * @param reader    opened container.
+     * @param directory destination directory - it is created if it does not exist.
+     *
+     * @return {@code List} with the written files, in the order of the entries.
+     *
+     * @throws IOException               if the container cannot be read or any file cannot be
+     *                                   written.
+     * @throws InvalidContainerException if any entry name points outside the {@code directory}.
+     * @throws FileError                 if the digest of any entry is not valid.
+     */
+    public static List<File> extract(final ContainerReader reader, File directory)
+            throws IOException {
+        final Path root = createDirectory(directory);
+        final List<ContainerEntry> entries = reader.getEntries();
+        final ArrayList<File> files = new ArrayList<>(entries.size());
+        // Entries with the same path (e.g.: copied from several containers) are written once: the
+        // last one wins, as when extracting sequentially, instead of being written concurrently
+        HashMap<Path, Integer> lastEntries = new HashMap<>(entries.size());
+        for (int i = 0; i < entries.size(); ++i) {
+            Path file = resolve(root, entries.get(i).getName());
+            files.add(file.toFile());
+            lastEntries.put(file, i);
+        }
+        ArrayList<Integer> bySize = new ArrayList<>(lastEntries.values());
+        bySize.sort(Comparator.comparingLong((Integer i) -> entries.get(i).getSize())
+                .reversed());
+        Platform.forEach(bySize, i -> {
+            try (InputStream input = reader.openStream(entries.get(i))) {
+                write(input, files.get(i).toPath());
+            }
+        });
+        return files;
+    }
+
+    /**
+     * Extracts all the entries of the container read from the given stream, sequentially. The
+     * stream is read until the end of the container but it is not closed.
+     *
+     * @param container stream with the container.
+     * @param directory destination directory - it is created if it does not exist.
+     *
+     * @return {@code List} with the written files, in the order of the entries.
+     *
+     * @throws IOException               if the container cannot be read or any file cannot be
+     *                                   written.
+     * @throws InvalidContainerException if the container is not valid or any entry name points
+     *                                   outside the {@code directory}.
+     * @throws FileError                 if the digest of any entry is not valid.
+     */
+    public static List<File> extract(InputStream container, File directory) throws IOException {
+        return extract(container, directory, null);
+    }
+
+    /**
+     * Extracts all the entries of the container, that may be encrypted, read from the given
+     * stream, sequentially. The stream is read until the end of the container but it is not
+     * closed.
+     *
+     * @param container stream with the container.
+     * @param directory destination directory - it is created if it does not exist.
+     * @param key       key the container was encrypted with - not used if it is not encrypted.
+     *
+     * @return {@code List} with the written files, in the order of the entries.
+     *
+     * @throws IOException               if the container cannot be read or any file cannot be
+     *                                   written.
+     * @throws InvalidContainerException if the container is not valid, {@code key} is not its key
+     *                                   or any entry name points outside the {@code directory}.
+     * @throws FileError                 if the digest of any entry (or any encrypted block) is not
+     *                                   valid.
+     */
+    public static List<File> extract(InputStream container, File directory, SecretKey key)
+            throws IOException {
+        Path root = createDirectory(directory);
+        CountingInputStream counter = new CountingInputStream(new BufferedInputStream(container,
+                Container.BLOCK_SIZE));
+        DataInputStream input = new DataInputStream(counter);
+        ArrayList<File> files = new ArrayList<>();
+        ArrayList<byte[]> digests = new ArrayList<>();
+        try {
+            ContainerHeader header = ContainerHeader.read(input, "stream").unlock(key, "stream");
+            Cipher cipher = header.isEncrypted() ? header.getCipher().newCipher() : null;
+            byte marker;
+            while ((marker = input.readByte()) == Container.ENTRY) {
+                String name = input.readUTF();
+                Path file = resolve(root, name);
+                MessageDigest digest = Container.newDigest();
+                BlockInputStream blocks = cipher == null ? new BlockInputStream(input, name) :
+                        new BlockInputStream(counter, name, header, cipher, digest);
+                try (InputStream entry = cipher == null ?
+                        new DigestInputStream(header.decode(blocks), digest) :
+                        header.decode(blocks)) {
+                    write(entry, file);
+                    blocks.skipToEnd();
+                }
+                files.add(file.toFile());
+                digests.add(digest.digest());
+            }
+            if (marker != Container.INDEX || input.readInt() != files.size())
+                throw new InvalidContainerException("The container has an invalid index");
+            for (int i = 0; i < files.size(); ++i) {
+                String name = input.readUTF();
+                input.skipBytes(Long.BYTES * 3);
+                byte[] digest = new byte[Container.DIGEST_SIZE];
+                input.readFully(digest);
+                if (!MessageDigest.isEqual(digest, digests.get(i)))
+                    throw new FileError(String.format("Digests are not equal! - entry \"%s\" " +
+                            "probably has been modified.", name));
+            }
+            input.readLong();
+            if (input.readInt() != Container.INDEX_MAGIC)
+                throw new InvalidContainerException("The container has an invalid trailer");
+        } catch (EOFException e) {
+            throw new InvalidContainerException("The container is truncated", e);
+        }
+        return files;
+    }
+
+    /**
+     * Writes all the data of the given stream to a file, creating its parent directories, by using
+     * positional writes.
+     *
+     * @param input stream with the data.
+     * @param file  destination file - truncated if it exists.
+     *
+     * @throws IOException if the file cannot be written.
+     */
+    private static void write(InputStream input, Path file) throws IOException {
+        Files.createDirectories(file.getParent());
+        byte[] buffer = new byte[Container.BLOCK_SIZE];
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            long position = 0;
+            int read;
+            while ((read = input.read(buffer)) != -1) {
+                ByteBuffer block = ByteBuffer.wrap(buffer, 0, read);
+                while (block.hasRemaining())
+                    position += channel.write(block, position);
+            }
+        }
+    }
+
+    /**
+     * Creates the destination directory if it does not exist.
+     *
+     * @param directory destination directory.
+     *
+     * @return the normalized, absolute {@code Path} of the directory.
+     *
+     * @throws IOException if the directory cannot be created.
+     */
+    private static Path createDirectory(File directory) throws IOException {
+        Path root = directory.toPath().toAbsolutePath().normalize();
+        Files.createDirectories(root);
+        return root;
+    }
+
+    /**
+     * Resolves the name of an entry against the destination directory.
+     *
+     * @param root destination directory.
+     * @param name name of the entry.
+     *
+     * @return the {@code Path} of the entry file.
+     *
+     * @throws InvalidContainerException if the name points outside the directory.
+     */
+    private static Path resolve(Path root, String name) {
+        Path file = root.resolve(name).normalize();
+        if (!file.startsWith(root) || file.equals(root))
+            throw new InvalidContainerException(String.format("Entry \"%s\" points outside the " +
+                    "destination directory", name));
+        return file;
+    }
+
+    /**
+     * Stream that reads the stored blocks of an entry from a sequential container stream. Blocks
+     * of encrypted containers are read whole, together with the length of the next one, and
+     * decrypted before returning any of their data.
+     */
+    private static final class BlockInputStream extends InputStream {
+        private final DataInputStream mInput;
+        private final String mName;
+        private final CountingInputStream mCounter;
+        private final ContainerHeader mHeader;
+        private final Cipher mCipher;
+        private final MessageDigest mTags;
+        private final byte[] mNameBytes;
+        private byte[] mBlock;
+        private int mBlockPosition;
+        private int mNextLength;
+        private int mRemaining;
+        private boolean mIsFinished;
+
+        /**
+         * Generates a new stream for the entry at the current position of {@code input}.
+         *
+         * @param input container stream, at the first block of the entry.
+         * @param name  name of the entry.
+         */
+        BlockInputStream(DataInputStream input, String name) {
+            mInput = input;
+            mName = name;
+            mCounter = null;
+            mHeader = null;
+            mCipher = null;
+            mTags = null;
+            mNameBytes = null;
+        }
+
+        /**
+         * Generates a new stream for the entry of an encrypted container at the current position
+         * of {@code counter}.
+         *
+         * @param counter container stream, at the first block of the entry.
+         * @param name    name of the entry.
+         * @param header  unlocked header of the container.
+         * @param cipher  cipher used for decrypting the blocks.
+         * @param tags    digest that receives the tags of the blocks.
+         */
+        BlockInputStream(CountingInputStream counter, String name, ContainerHeader header,
+                         Cipher cipher, MessageDigest tags) {
+            mInput = new DataInputStream(counter);
+            mName = name;
+            mCounter = counter;
+            mHeader = header;
+            mCipher = cipher;
+            mTags = tags;
+            mNameBytes = name.getBytes(StandardCharsets.UTF_8);
+            mBlock = new byte[0];
+            mNextLength = -1;
+        }
+
+        @Override
+        public int read() throws IOException {
+            byte[] single = new byte[1];
+            return read(single, 0, 1) == -1 ? -1 : single[0] & 0xFF;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (len == 0)
+                return 0;
+            if (mCipher != null)
+                return readSealed(b, off, len);
+            while (mRemaining == 0) {
+                if (mIsFinished)
+                    return -1;
+                mRemaining = mInput.readInt();
+                if (mRemaining < 0 || mRemaining > Container.BLOCK_SIZE)
+                    throw new InvalidContainerException(String.format("Entry \"%s\" has an " +
+                            "invalid block", mName));
+                mIsFinished = mRemaining == 0;
+            }
+            int read = mInput.read(b, off, Math.min(len, mRemaining));
+            if (read == -1)
+                throw new EOFException();
+            mRemaining -= read;
+            return read;
+        }
+
+        /**
+         * Reads the data of an encrypted entry, decrypting the next block when the current one
+         * was consumed.
+         *
+         * @param b   destination buffer.
+         * @param off offset at the buffer.
+         * @param len maximum number of bytes to read.
+         *
+         * @return number of read bytes, {@code -1} at the end of the entry.
+         *
+         * @throws IOException if the stream cannot be read.
+         */
+        private int readSealed(byte[] b, int off, int len) throws IOException {
+            while (mBlockPosition == mBlock.length) {
+                if (mIsFinished)
+                    return -1;
+                // Blocks are sealed with the offset of their length, that may be already read
+                long offset = mCounter.getCount();
+                int length = mNextLength;
+                if (length == -1)
+                    length = mInput.readInt();
+                else
+                    offset -= Integer.BYTES;
+                if (length == 0)
+                    throw new FileError(String.format("Entry \"%s\" has no blocks - the " +
+                            "container probably has been modified.", mName));
+                if (length < 0 || length > mHeader.getMaxBlockLength())
+                    throw new InvalidContainerException(String.format("Entry \"%s\" has an " +
+                            "invalid block", mName));
+                byte[] sealed = new byte[length];
+                mInput.readFully(sealed);
+                mNextLength = mInput.readInt();
+                mTags.update(sealed, length - BlockCipher.TAG_SIZE, BlockCipher.TAG_SIZE);
+                mBlock = mHeader.getCipher().openBlock(mCipher, offset, mNameBytes, sealed, 0,
+                        length, mNextLength == 0, mName);
+                mBlockPosition = 0;
+                mIsFinished = mNextLength == 0;
+            }
+            int read = Math.min(len, mBlock.length - mBlockPosition);
+            System.arraycopy(mBlock, mBlockPosition, b, off, read);
+            mBlockPosition += read;
+            return read;
+        }
+
+        /**
+         * Skips the remaining blocks of the entry (e.g.: the ones that were not needed by a
+         * decoder), so the container stream is at the next entry.
+         *
+         * @throws IOException if the stream cannot be read.
+         */
+        void skipToEnd() throws IOException {
+            byte[] buffer = new byte[Container.BLOCK_SIZE];
+            while (read(buffer, 0, buffer.length) != -1) {
+                // Consume the blocks
+            }
+        }
+    }
+
+    /**
+     * Input stream that keeps the count of the read bytes, for knowing the offsets of the blocks
+     * of encrypted containers.
+     */
+    private static final class CountingInputStream extends FilterInputStream {
+        private long mCount;
+
+        /**
+         * Generates a new counting stream.
+         *
+         * @param in underlying stream.
+         */
+        CountingInputStream(InputStream in) {
+            super(in);
+        }
+
+        @Override
+        public int read() throws IOException {
+            int read = in.read();
+            if (read != -1)
+                ++mCount;
+            return read;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            int read = in.read(b, off, len);
+            if (read != -1)
+                mCount += read;
+            return read;
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            long skipped = in.skip(n);
+            mCount += skipped;
+            return skipped;
+        }
+
+        @Override
+        public boolean markSupported() {
+            return false;
+        }
+
+        /**
+         * Obtains the number of bytes read until now.
+         *
+         * @return {@code long} with the count.
+         */
+        long getCount() {
+            return mCount;
+        }
+    }
+}
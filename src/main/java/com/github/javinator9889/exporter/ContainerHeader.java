@@ -0,0 +1,418 @@
+package com.github.javinator9889.exporter;
+
+import com.github.javinator9889.error.InvalidContainerException;
+
+import javax.crypto.AEADBadTagException;
+import javax.crypto.SecretKey;
+import java.io.*;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * <p>Flags and extra fields of a container header, which define how the entries are encoded.
+ * <p>
+ * The extra fields are stored as a sequence of {@code byte tag | int length | bytes}, so readers
+ * can skip the fields they do not know. Encrypted containers store the parameters of their {@link
+ * BlockCipher} at the {@link #FIELD_CIPHER cipher field}, and their dictionary is encrypted too.
+ * Delta containers list the entries they remove at the {@link #FIELD_REMOVED removed field}.
+ */
+final class ContainerHeader {
+    /**
+     * Flag set when the entries are compressed (raw deflate, one stream per entry).
+     */
+    static final short FLAG_DEFLATE = 1;
+    /**
+     * Extra field with the dictionary used for compressing the entries.
+     */
+    static final byte FIELD_DICTIONARY = 1;
+    /**
+     * Flag set when the blocks of the entries are encrypted with AES-GCM.
+     */
+    static final short FLAG_AES_GCM = 2;
+    /**
+     * Extra field with the salt and the key check value of an encrypted container.
+     */
+    static final byte FIELD_CIPHER = 2;
+    /**
+     * Extra field with the names of the entries removed by a delta container.
+     */
+    static final byte FIELD_REMOVED = 3;
+    private final short mFlags;
+    private final int mCompressionLevel;
+    private final byte[] mDictionary;
+    private final byte[] mCipherField;
+    private final BlockCipher mCipher;
+    private final List<String> mRemoved;
+
+    /**
+     * Generates a new header.
+     *
+     * @param flags            flags of the container.
+     * @param compressionLevel deflate compression level, only used when writing.
+     * @param dictionary       dictionary for compressing the entries, can be {@code null} - it is
+     *                         still encrypted if the container is encrypted and there is no
+     *                         cipher.
+     * @param cipherField      value of the cipher field, {@code null} if it is not encrypted.
+     * @param cipher           cipher of the blocks, {@code null} if it is not encrypted or the
+     *                         key is not known yet.
+     * @param removed          names of the entries removed by a delta container - empty
+     *                         otherwise.
+     */
+    private ContainerHeader(short flags, int compressionLevel, byte[] dictionary,
+                            byte[] cipherField, BlockCipher cipher, List<String> removed) {
+        mFlags = flags;
+        mCompressionLevel = compressionLevel;
+        mDictionary = dictionary;
+        mCipherField = cipherField;
+        mCipher = cipher;
+        mRemoved = removed;
+    }
+
+    /**
+     * Generates the header for writing a container with the given options.
+     *
+     * @param options container options.
+     *
+     * @return the {@code ContainerHeader}.
+     */
+    static ContainerHeader of(ContainerOptions options) {
+        short flags = options.isCompression() ? FLAG_DEFLATE : 0;
+        byte[] cipherField = null;
+        BlockCipher cipher = null;
+        if (options.getEncryptionKey() != null) {
+            flags |= FLAG_AES_GCM;
+            cipher = BlockCipher.create(options.getEncryptionKey());
+            cipherField = concat(cipher.getSalt(), cipher.keyCheck());
+        }
+        return new ContainerHeader(flags, options.getCompressionLevel(),
+                options.isCompression() ? options.getDictionary() : null, cipherField, cipher,
+                Collections.<String>emptyList());
+    }
+
+    /**
+     * Reads and verifies the header of a container.
+     *
+     * @param input  stream at the start of the container.
+     * @param source description of the container, for the error messages.
+     *
+     * @return the {@code ContainerHeader}.
+     *
+     * @throws IOException               if the stream cannot be read.
+     * @throws InvalidContainerException if it is not a container or its version is not supported.
+     */
+    static ContainerHeader read(DataInputStream input, String source) throws IOException {
+        if (input.readInt() != Container.MAGIC)
+            throw new InvalidContainerException(String.format("%s is not a container", source));
+        short version = input.readShort();
+        if (version > Container.VERSION)
+            throw new InvalidContainerException(String.format("Container %s has an " +
+                    "unsupported version: %d", source, version));
+        short flags = input.readShort();
+        int length = input.readInt();
+        if (length < 0)
+            throw new InvalidContainerException(String.format("Container %s has an invalid " +
+                    "header", source));
+        byte[] extra = new byte[length];
+        input.readFully(extra);
+        return parse(flags, extra, source);
+    }
+
+    /**
+     * Parses a header read from a container.
+     *
+     * @param flags  flags of the container.
+     * @param extra  extra fields of the container.
+     * @param source description of the container, for the error messages.
+     *
+     * @return the {@code ContainerHeader}.
+     *
+     * @throws InvalidContainerException if the extra fields are not valid.
+     */
+    static ContainerHeader parse(short flags, byte[] extra, String source) {
+        byte[] dictionary = null;
+        byte[] cipherField = null;
+        List<String> removed = Collections.emptyList();
+        try (DataInputStream input = new DataInputStream(new ByteArrayInputStream(extra))) {
+            while (input.available() > 0) {
+                byte tag = input.readByte();
+                byte[] value = new byte[input.readInt()];
+                input.readFully(value);
+                if (tag == FIELD_DICTIONARY)
+                    dictionary = value;
+                else if (tag == FIELD_CIPHER)
+                    cipherField = value;
+                else if (tag == FIELD_REMOVED)
+                    removed = parseNames(value);
+            }
+        } catch (IOException | NegativeArraySizeException e) {
+            throw new InvalidContainerException(String.format("Container %s has an invalid " +
+                    "header", source), e);
+        }
+        if ((flags & FLAG_AES_GCM) != 0 && (cipherField == null ||
+                cipherField.length != BlockCipher.SALT_SIZE + BlockCipher.TAG_SIZE))
+            throw new InvalidContainerException(String.format("Container %s has an invalid " +
+                    "header", source));
+        return new ContainerHeader(flags, Deflater.DEFAULT_COMPRESSION, dictionary,
+                (flags & FLAG_AES_GCM) != 0 ? cipherField : null, null, removed);
+    }
+
+    /**
+     * Parses the names stored at the {@link #FIELD_REMOVED removed field}.
+     *
+     * @param value value of the field: {@code int count | UTF name...}.
+     *
+     * @return unmodifiable {@code List} with the names.
+     *
+     * @throws IOException if the field is truncated.
+     */
+    private static List<String> parseNames(byte[] value) throws IOException {
+        try (DataInputStream input = new DataInputStream(new ByteArrayInputStream(value))) {
+            int count = input.readInt();
+            if (count < 0 || count > value.length)
+                throw new IOException("Invalid number of removed entries");
+            ArrayList<String> names = new ArrayList<>(count);
+            for (int i = 0; i < count; ++i)
+                names.add(input.readUTF());
+            return Collections.unmodifiableList(names);
+        }
+    }
+
+    /**
+     * Obtains a header with the same encoding as this one that lists the given removed entries,
+     * for writing a delta container. The entries of the delta are copied as they are stored, so
+     * the compression level is not used.
+     *
+     * @param removed names of the entries removed by the delta - can be empty.
+     *
+     * @return the {@code ContainerHeader}.
+     *
+     * @throws IllegalStateException if the container is encrypted.
+     */
+    ContainerHeader withRemoved(List<String> removed) {
+        if (isEncrypted())
+            throw new IllegalStateException("Encrypted containers cannot have deltas");
+        return new ContainerHeader(mFlags, mCompressionLevel, mDictionary, null, null,
+                Collections.unmodifiableList(new ArrayList<>(removed)));
+    }
+
+    /**
+     * Checks whether the entries of this container are stored with the same encoding as the
+     * entries of the given one, so their stored data can be copied from one to the other.
+     *
+     * @param other header of the other container.
+     *
+     * @return {@code true} if neither container is encrypted and both have the same compression
+     * and dictionary.
+     */
+    boolean isCompatible(ContainerHeader other) {
+        return !isEncrypted() && !other.isEncrypted() &&
+                isCompressed() == other.isCompressed() &&
+                (!isCompressed() || Arrays.equals(mDictionary, other.mDictionary));
+    }
+
+    /**
+     * Obtains the header for reading the entries with the given key, verifying it and decrypting
+     * the dictionary if the container is encrypted.
+     *
+     * @param key    key of the container, can be {@code null} if it is not encrypted.
+     * @param source description of the container, for the error messages.
+     *
+     * @return the {@code ContainerHeader} - this one if the container is not encrypted.
+     *
+     * @throws InvalidContainerException if the container is encrypted and the key is not given
+     *                                   or it is not the right one.
+     */
+    ContainerHeader unlock(SecretKey key, String source) {
+        if (!isEncrypted() || mCipher != null)
+            return this;
+        if (key == null)
+            throw new InvalidContainerException(String.format("Container %s is encrypted - a " +
+                    "key is required", source));
+        BlockCipher.checkKey(key);
+        BlockCipher cipher = BlockCipher.of(key, Arrays.copyOf(mCipherField,
+                BlockCipher.SALT_SIZE));
+        byte[] keyCheck = Arrays.copyOfRange(mCipherField, BlockCipher.SALT_SIZE,
+                mCipherField.length);
+        if (!MessageDigest.isEqual(cipher.keyCheck(), keyCheck))
+            throw new InvalidContainerException(String.format("Container %s was not encrypted " +
+                    "with the given key", source));
+        try {
+            byte[] dictionary = mDictionary == null ? null : cipher.openDictionary(mDictionary);
+            return new ContainerHeader(mFlags, mCompressionLevel, dictionary, mCipherField,
+                    cipher, mRemoved);
+        } catch (AEADBadTagException e) {
+            throw new InvalidContainerException(String.format("Container %s has an invalid " +
+                    "dictionary", source), e);
+        }
+    }
+
+    /**
+     * Writes the flags and the extra fields.
+     *
+     * @param output container stream, just after its version.
+     *
+     * @throws IOException if the header cannot be written.
+     */
+    void write(DataOutputStream output) throws IOException {
+        ByteArrayOutputStream extra = new ByteArrayOutputStream();
+        DataOutputStream fields = new DataOutputStream(extra);
+        if (mDictionary != null) {
+            byte[] dictionary = mCipher != null ? mCipher.sealDictionary(mDictionary) :
+                    mDictionary;
+            fields.writeByte(FIELD_DICTIONARY);
+            fields.writeInt(dictionary.length);
+            fields.write(dictionary);
+        }
+        if (mCipherField != null) {
+            fields.writeByte(FIELD_CIPHER);
+            fields.writeInt(mCipherField.length);
+            fields.write(mCipherField);
+        }
+        if (!mRemoved.isEmpty()) {
+            ByteArrayOutputStream removed = new ByteArrayOutputStream();
+            DataOutputStream names = new DataOutputStream(removed);
+            names.writeInt(mRemoved.size());
+            for (String name : mRemoved)
+                names.writeUTF(name);
+            fields.writeByte(FIELD_REMOVED);
+            fields.writeInt(removed.size());
+            removed.writeTo(fields);
+        }
+        output.writeShort(mFlags);
+        output.writeInt(extra.size());
+        extra.writeTo(output);
+    }
+
+    /**
+     * Obtains whether the entries are compressed.
+     *
+     * @return {@code true} if entries are compressed.
+     */
+    boolean isCompressed() {
+        return (mFlags & FLAG_DEFLATE) != 0;
+    }
+
+    /**
+     * Obtains whether the blocks of the entries are encrypted.
+     *
+     * @return {@code true} if entries are encrypted.
+     */
+    boolean isEncrypted() {
+        return (mFlags & FLAG_AES_GCM) != 0;
+    }
+
+    /**
+     * Obtains the names of the entries removed by a delta container.
+     *
+     * @return unmodifiable {@code List} with the names - empty if it is not a delta container.
+     */
+    List<String> getRemoved() {
+        return mRemoved;
+    }
+
+    /**
+     * Obtains the cipher of the blocks of the entries.
+     *
+     * @return the {@link BlockCipher}, {@code null} if the container is not encrypted.
+     *
+     * @throws IllegalStateException if the container is encrypted but it was not {@link
+     *                               #unlock(SecretKey, String) unlocked}.
+     */
+    BlockCipher getCipher() {
+        if (isEncrypted() && mCipher == null)
+            throw new IllegalStateException("The container header is locked");
+        return mCipher;
+    }
+
+    /**
+     * Obtains the maximum length of a stored block.
+     *
+     * @return {@code int} with the length, including the tag of encrypted blocks.
+     */
+    int getMaxBlockLength() {
+        return isEncrypted() ? Container.BLOCK_SIZE + BlockCipher.TAG_SIZE : Container.BLOCK_SIZE;
+    }
+
+    /**
+     * Obtains the dictionary used for compressing the entries.
+     *
+     * @return a copy of the dictionary, {@code null} if there is no dictionary. It is encrypted
+     * if the container is encrypted and it was not {@link #unlock(SecretKey, String) unlocked}.
+     */
+    byte[] getDictionary() {
+        return mDictionary == null ? null : mDictionary.clone();
+    }
+
+    /**
+     * Wraps the stream where the stored data of an entry is written with the encoding of this
+     * container. Closing the returned stream finishes the entry and closes {@code stored}.
+     *
+     * @param stored stream that receives the data as it is stored at the container.
+     *
+     * @return {@code OutputStream} where the original data of the entry is written.
+     */
+    OutputStream encode(final OutputStream stored) {
+        if (!isCompressed())
+            return stored;
+        Deflater deflater = new Deflater(mCompressionLevel, true);
+        if (mDictionary != null)
+            deflater.setDictionary(mDictionary);
+        return new DeflaterOutputStream(stored, deflater, Container.BLOCK_SIZE) {
+            @Override
+            public void close() throws IOException {
+                try {
+                    finish();
+                    out.close();
+                } finally {
+                    def.end();
+                }
+            }
+        };
+    }
+
+    /**
+     * Wraps the stream with the stored data of an entry with the decoding of this container.
+     *
+     * @param stored stream with the data as it is stored at the container.
+     *
+     * @return {@code InputStream} with the original data of the entry.
+     */
+    InputStream decode(InputStream stored) {
+        if (!isCompressed())
+            return stored;
+        Inflater inflater = new Inflater(true);
+        if (mDictionary != null)
+            inflater.setDictionary(mDictionary);
+        return new InflaterInputStream(stored, inflater, Container.BLOCK_SIZE) {
+            @Override
+            public void close() throws IOException {
+                try {
+                    super.close();
+                } finally {
+                    inf.end();
+                }
+            }
+        };
+    }
+
+    /**
+     * Concatenates two arrays.
+     *
+     * @param first  first array.
+     * @param second second array.
+     *
+     * @return {@code byte[]} with both arrays.
+     */
+    private static byte[] concat(byte[] first, byte[] second) {
+        byte[] result = Arrays.copyOf(first, first.length + second.length);
+        System.arraycopy(second, 0, result, first.length, second.length);
+        return result;
+    }
+}
@@ -0,0 +1,292 @@
+package com.github.javinator9889.exporter;
+
+import javax.crypto.SecretKey;
+import java.io.Serializable;
+import java.util.Arrays;
+import java.util.Objects;
+import java.util.zip.Deflater;
+
+/**
+ * <p>Options used when writing containers.
+ * <p>
+ * By default, entries are stored as they are. When <b>compression</b> is enabled, every entry is
+ * compressed independently (so any entry can still be read without reading the others) and,
+ * optionally, against a shared <b>dictionary</b> that is stored at the container header. Lots of
+ * small, similar files (configuration files, logs...) compress poorly on their own but share most
+ * of their vocabulary, so a dictionary improves a lot both the size and the write time.
+ * <p>
+ * The dictionary can be given or {@link #setTrainDictionary(boolean) trained} from a sample of
+ * the files that are going to be exported.
+ * <p>
+ * Exported containers are written to a temporary file that records a <b>checkpoint</b> every
+ * {@link #setCheckpointInterval(int) some entries}, so an interrupted export resumes after the
+ * last checkpoint instead of starting again.
+ * <p>
+ * When an {@link #setEncryptionKey(SecretKey) encryption key} is given, the data of the entries
+ * is <b>encrypted and authenticated</b> block by block with AES-GCM while it is streamed.
+ *
+ * @see FileToBytesExporter#setContainerOptions(ContainerOptions)
+ */
+public class ContainerOptions implements Cloneable, Serializable {
+    /**
+     * Maximum size of a dictionary - the window of the deflate algorithm.
+     */
+    public static final int MAX_DICTIONARY_SIZE = 32 * 1024;
+    /**
+     * Default number of entries between checkpoints.
+     */
+    public static final int DEFAULT_CHECKPOINT_INTERVAL = 64;
+    private boolean mCompression;
+    private int mCompressionLevel;
+    private byte[] mDictionary;
+    private boolean mTrainDictionary;
+    private int mDictionarySize;
+    private int mCheckpointInterval;
+    private transient SecretKey mEncryptionKey;
+
+    /**
+     * Public default constructor - no compression, no dictionary and no encryption.
+     */
+    public ContainerOptions() {
+        this(false, Deflater.DEFAULT_COMPRESSION, null, false, MAX_DICTIONARY_SIZE,
+                DEFAULT_CHECKPOINT_INTERVAL, null);
+    }
+
+    /**
+     * Private constructor for cloning or generating a new instance - only visible for this class.
+     *
+     * @param compression        whether entries are compressed.
+     * @param compressionLevel   deflate compression level.
+     * @param dictionary         dictionary for compressing the entries.
+     * @param trainDictionary    whether the dictionary is trained from the sources.
+     * @param dictionarySize     size of the trained dictionaries.
+     * @param checkpointInterval number of entries between checkpoints.
+     * @param encryptionKey      key for encrypting the entries.
+     */
+    private ContainerOptions(boolean compression, int compressionLevel, byte[] dictionary,
+                             boolean trainDictionary, int dictionarySize,
+                             int checkpointInterval, SecretKey encryptionKey) {
+        mCompression = compression;
+        mCompressionLevel = compressionLevel;
+        mDictionary = dictionary;
+        mTrainDictionary = trainDictionary;
+        mDictionarySize = dictionarySize;
+        mCheckpointInterval = checkpointInterval;
+        mEncryptionKey = encryptionKey;
+    }
+
+    /**
+     * Updates whether the entries are compressed.
+     *
+     * @param compression {@code true} for compressing the entries.
+     */
+    public void setCompression(boolean compression) {
+        mCompression = compression;
+    }
+
+    /**
+     * Obtains whether the entries are compressed.
+     *
+     * @return {@code true} if entries are compressed.
+     */
+    public boolean isCompression() {
+        return mCompression;
+    }
+
+    /**
+     * Updates the compression level.
+     *
+     * @param compressionLevel level between {@link Deflater#BEST_SPEED} and {@link
+     *                         Deflater#BEST_COMPRESSION}, or {@link Deflater#DEFAULT_COMPRESSION}.
+     *
+     * @throws IllegalArgumentException if the level is not valid.
+     */
+    public void setCompressionLevel(int compressionLevel) {
+        if ((compressionLevel < Deflater.BEST_SPEED ||
+                compressionLevel > Deflater.BEST_COMPRESSION) &&
+                compressionLevel != Deflater.DEFAULT_COMPRESSION)
+            throw new IllegalArgumentException("Invalid compression level: " + compressionLevel);
+        mCompressionLevel = compressionLevel;
+    }
+
+    /**
+     * Obtains the compression level.
+     *
+     * @return {@code int} with the level.
+     */
+    public int getCompressionLevel() {
+        return mCompressionLevel;
+    }
+
+    /**
+     * Updates the dictionary used for compressing the entries - it also enables the compression.
+     *
+     * @param dictionary the dictionary, up to {@link #MAX_DICTIONARY_SIZE} bytes, or {@code null}
+     *                   for not using any.
+     *
+     * @throws IllegalArgumentException if the dictionary is empty or too big.
+     */
+    public void setDictionary(byte[] dictionary) {
+        if (dictionary != null) {
+            if (dictionary.length == 0 || dictionary.length > MAX_DICTIONARY_SIZE)
+                throw new IllegalArgumentException(String.format("The dictionary size must be " +
+                        "between 1 and %d bytes", MAX_DICTIONARY_SIZE));
+            mCompression = true;
+        }
+        mDictionary = dictionary == null ? null : dictionary.clone();
+    }
+
+    /**
+     * Obtains the dictionary used for compressing the entries.
+     *
+     * @return a copy of the dictionary, {@code null} if there is no dictionary.
+     */
+    public byte[] getDictionary() {
+        return mDictionary == null ? null : mDictionary.clone();
+    }
+
+    /**
+     * Updates whether a dictionary is trained from a sample of the sources before exporting them
+     * - it also enables the compression. A given {@link #setDictionary(byte[]) dictionary} takes
+     * precedence over training a new one.
+     *
+     * @param trainDictionary {@code true} for training a dictionary.
+     */
+    public void setTrainDictionary(boolean trainDictionary) {
+        mTrainDictionary = trainDictionary;
+        mCompression |= trainDictionary;
+    }
+
+    /**
+     * Obtains whether a dictionary is trained from the sources.
+     *
+     * @return {@code true} if a dictionary is trained.
+     */
+    public boolean isTrainDictionary() {
+        return mTrainDictionary;
+    }
+
+    /**
+     * Updates the maximum size of the trained dictionaries.
+     *
+     * @param dictionarySize size between 1 and {@link #MAX_DICTIONARY_SIZE} bytes.
+     *
+     * @throws IllegalArgumentException if the size is not valid.
+     */
+    public void setDictionarySize(int dictionarySize) {
+        if (dictionarySize < 1 || dictionarySize > MAX_DICTIONARY_SIZE)
+            throw new IllegalArgumentException(String.format("The dictionary size must be " +
+                    "between 1 and %d bytes", MAX_DICTIONARY_SIZE));
+        mDictionarySize = dictionarySize;
+    }
+
+    /**
+     * Obtains the maximum size of the trained dictionaries.
+     *
+     * @return {@code int} with the size.
+     */
+    public int getDictionarySize() {
+        return mDictionarySize;
+    }
+
+    /**
+     * Updates the number of entries written between checkpoints. Lower values lose less work when
+     * an export is interrupted, but record the progress more often.
+     *
+     * @param checkpointInterval number of entries, or {@code 0} for not recording checkpoints.
+     *
+     * @throws IllegalArgumentException if the interval is negative.
+     */
+    public void setCheckpointInterval(int checkpointInterval) {
+        if (checkpointInterval < 0)
+            throw new IllegalArgumentException("The checkpoint interval cannot be negative");
+        mCheckpointInterval = checkpointInterval;
+    }
+
+    /**
+     * Obtains the number of entries written between checkpoints.
+     *
+     * @return {@code int} with the interval, {@code 0} if checkpoints are not recorded.
+     */
+    public int getCheckpointInterval() {
+        return mCheckpointInterval;
+    }
+
+    /**
+     * <p>Updates the key used for encrypting the entries with AES-GCM. Every block of every entry
+     * is encrypted and authenticated on its own, replacing the SHA-256 verification of the plain
+     * data: readers verify every block while decrypting it, so a modified, moved or truncated
+     * block is detected without a separate pass. The dictionary, if any, is encrypted too, but the
+     * names and sizes of the entries at the index are not.
+     * <p>
+     * The same key can be used for any number of containers, as every container derives its own
+     * key from a random salt. Encrypted exports are never resumed from a checkpoint: they start
+     * again, as rewriting the data after the checkpoint would reuse the nonces of the torn blocks.
+     * The key is never serialized.
+     *
+     * @param encryptionKey raw AES key of 128, 192 or 256 bits (e.g.: a {@link
+     *                      javax.crypto.spec.SecretKeySpec} or a key generated by a {@link
+     *                      javax.crypto.KeyGenerator}), or {@code null} for not encrypting.
+     *
+     * @throws IllegalArgumentException if the key is not a raw AES key of a valid size.
+     * @see ContainerReader#ContainerReader(java.io.File, SecretKey)
+     */
+    public void setEncryptionKey(SecretKey encryptionKey) {
+        if (encryptionKey != null)
+            BlockCipher.checkKey(encryptionKey);
+        mEncryptionKey = encryptionKey;
+    }
+
+    /**
+     * Obtains the key used for encrypting the entries.
+     *
+     * @return the {@code SecretKey}, {@code null} if entries are not encrypted.
+     */
+    public SecretKey getEncryptionKey() {
+        return mEncryptionKey;
+    }
+
+    /**
+     * Indicates whether some other object is "equal to" this one.
+     *
+     * @param o the reference object with which to compare.
+     *
+     * @return {@code true} if this object is the same as the obj argument; {@code false} otherwise.
+     */
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+        ContainerOptions options = (ContainerOptions) o;
+        return mCompression == options.mCompression &&
+                mCompressionLevel == options.mCompressionLevel &&
+                mTrainDictionary == options.mTrainDictionary &&
+                mDictionarySize == options.mDictionarySize &&
+                mCheckpointInterval == options.mCheckpointInterval &&
+                Arrays.equals(mDictionary, options.mDictionary) &&
+                Objects.equals(mEncryptionKey, options.mEncryptionKey);
+    }
+
+    /**
+     * Returns a hash code value for the object.
+     *
+     * @return a hash code value for this object.
+     */
+    @Override
+    public int hashCode() {
+        return 31 * Objects.hash(mCompression, mCompressionLevel, mTrainDictionary,
+                mDictionarySize, mCheckpointInterval, mEncryptionKey) +
+                Arrays.hashCode(mDictionary);
+    }
+
+    /**
+     * Creates and returns a copy of this object.
+     *
+     * @return a clone of this instance.
+     */
+    @Override
+    protected Object clone() {
+        return new ContainerOptions(mCompression, mCompressionLevel, mDictionary,
+                mTrainDictionary, mDictionarySize, mCheckpointInterval, mEncryptionKey);
+    }
+}
@@ -0,0 +1,591 @@
+package com.github.javinator9889.exporter;
+
+import com.github.javinator9889.error.FileError;
+import com.github.javinator9889.error.InvalidContainerException;
+
+import javax.crypto.Cipher;
+import javax.crypto.SecretKey;
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.PathMatcher;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.function.Predicate;
+import java.util.stream.Collectors;
+
+/**
+ * <p>Reads a container by using its index, so any entry can be read without reading the others.
+ * <p>
+ * Entries are read with positional reads, so a single reader can be shared by multiple threads
+ * reading different entries concurrently. The SHA-256 digest of every entry is verified once all
+ * its data was read. The blocks of encrypted containers are instead decrypted and verified one
+ * by one, as they are read.
+ * <pre>
+ * try (ContainerReader reader = new ContainerReader(new File("export.ftbx"))) {
+ *     for (ContainerEntry entry : reader.getEntries())
+ *         System.out.println(entry.getName() + ": " + entry.getSize());
+ *     byte[] data = reader.read(reader.getEntry("dir/file.txt"));
+ *     // Only the entries that match the glob are read
+ *     List&lt;LineMatch&gt; errors = reader.filterLines(reader.find("logs/**.log"),
+ *             line -&gt; line.contains("ERROR"));
+ * }
+ * </pre>
+ *
+ * @see ContainerWriter
+ */
+public class ContainerReader implements Closeable {
+    private final File mSource;
+    private final FileChannel mChannel;
+    private final ContainerHeader mHeader;
+    private final List<ContainerEntry> mEntries;
+    private final HashMap<String, ContainerEntry> mEntriesByName;
+
+    /**
+     * Opens the given container and reads its index.
+     *
+     * @param source container file.
+     *
+     * @throws FileNotFoundException     if the file does not exist or it is a directory.
+     * @throws IOException               if the file cannot be read.
+     * @throws InvalidContainerException if the file is not a valid container or it is truncated.
+     */
+    public ContainerReader(File source) throws IOException {
+        this(source, null);
+    }
+
+    /**
+     * Opens the given container, that may be encrypted, and reads its index.
+     *
+     * @param source container file.
+     * @param key    key the container was encrypted with - not used if it is not encrypted.
+     *
+     * @throws FileNotFoundException     if the file does not exist or it is a directory.
+     * @throws IOException               if the file cannot be read.
+     * @throws InvalidContainerException if the file is not a valid container, it is truncated or
+     *                                   it is encrypted and {@code key} is not its key.
+     * @see ContainerOptions#setEncryptionKey(SecretKey)
+     */
+    public ContainerReader(File source, SecretKey key) throws IOException {
+        if (!source.isFile())
+            throw new FileNotFoundException(String.format("File \"%s\" does not exists.",
+                    source.toString()));
+        mSource = source;
+        mChannel = FileChannel.open(source.toPath(), StandardOpenOption.READ);
+        try {
+            mHeader = readHeader(key);
+            mEntries = Collections.unmodifiableList(readIndex());
+        } catch (IOException | RuntimeException e) {
+            mChannel.close();
+            throw e;
+        }
+        mEntriesByName = new HashMap<>(mEntries.size());
+        for (ContainerEntry entry : mEntries)
+            mEntriesByName.put(entry.getName(), entry);
+    }
+
+    /**
+     * Obtains all the entries of the container, in the order they were written.
+     *
+     * @return unmodifiable {@code List} with the entries.
+     */
+    public List<ContainerEntry> getEntries() {
+        return mEntries;
+    }
+
+    /**
+     * Obtains the entry with the given name.
+     *
+     * @param name name of the entry.
+     *
+     * @return the {@link ContainerEntry}, {@code null} if there is no entry with that name.
+     */
+    public ContainerEntry getEntry(String name) {
+        return mEntriesByName.get(name);
+    }
+
+    /**
+     * Obtains the entries whose name matches the given glob - only the index is used, no entry is
+     * read.
+     *
+     * @param glob <a href="https://en.wikipedia.org/wiki/Glob_(programming)">glob</a> matched
+     *             against the whole entry name (e.g.: {@code "**.properties"} or {@code
+     *             "conf/*.xml"}).
+     *
+     * @return {@code List} with the matching entries, in the order they were written.
+     *
+     * @throws IllegalArgumentException when the {@code glob} is {@code null} or an empty String
+     *                                  {@code ""}.
+     */
+    public List<ContainerEntry> find(String glob) {
+        if (glob == null || glob.equals(""))
+            throw new IllegalArgumentException("The provided glob is not valid!");
+        final PathMatcher matcher = GlobMatchers.get(glob);
+        return find(entry -> matcher.matches(Paths.get(entry.getName())));
+    }
+
+    /**
+     * Obtains the entries that fulfill the given predicate (e.g.: by name or by size) - only the
+     * index is used, no entry is read.
+     *
+     * @param predicate condition over the entries metadata.
+     *
+     * @return {@code List} with the matching entries, in the order they were written.
+     */
+    public List<ContainerEntry> find(Predicate<ContainerEntry> predicate) {
+        ArrayList<ContainerEntry> matches = new ArrayList<>();
+        for (ContainerEntry entry : mEntries) {
+            if (predicate.test(entry))
+                matches.add(entry);
+        }
+        return matches;
+    }
+
+    /**
+     * Obtains the lines of the given entries that fulfill the predicate, decoding them with the
+     * platform charset.
+     *
+     * @param entries   entries to scan (e.g.: obtained with {@link #find(String)}).
+     * @param predicate condition over every line, without its terminator.
+     *
+     * @return {@code List} with the matching lines, sorted by entry and line number.
+     *
+     * @throws IOException if any entry cannot be read.
+     * @throws FileError   if the digest of any entry is not valid.
+     * @see #filterLines(List, Predicate, Charset)
+     */
+    public List<LineMatch> filterLines(List<ContainerEntry> entries, Predicate<String> predicate)
+            throws IOException {
+        return filterLines(entries, predicate, Charset.defaultCharset());
+    }
+
+    /**
+     * Obtains the lines of the given entries that fulfill the predicate. Only the given entries
+     * are read, in parallel, and their contents are streamed line by line, so the memory used does
+     * not depend on the size of the entries. Line terminators are located at the raw bytes, so only
+     * the lines are decoded.
+     *
+     * @param entries   entries to scan (e.g.: obtained with {@link #find(String)}).
+     * @param predicate condition over every line, without its terminator.
+     * @param charset   charset used for decoding the entries.
+     *
+     * @return {@code List} with the matching lines, sorted by entry and line number.
+     *
+     * @throws IOException if any entry cannot be read.
+     * @throws FileError   if the digest of any entry is not valid.
+     */
+    public List<LineMatch> filterLines(List<ContainerEntry> entries,
+                                       final Predicate<String> predicate, final Charset charset)
+            throws IOException {
+        try {
+            return entries.parallelStream().flatMap(entry -> {
+                ArrayList<LineMatch> matches = new ArrayList<>();
+                try (LineReader reader = new LineReader(openStream(entry), charset)) {
+                    long lineNumber = 0;
+                    String line;
+                    while ((line = reader.readLine()) != null) {
+                        ++lineNumber;
+                        if (predicate.test(line))
+                            matches.add(new LineMatch(entry, lineNumber, line));
+                    }
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+                return matches.stream();
+            }).collect(Collectors.toList());
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
+
+    /**
+     * Obtains a publisher of the data of the given entries, chunk by chunk, that only reads the
+     * chunks requested by its subscribers. Chunks are read at the shared executor for blocking
+     * I/O: virtual threads when the JVM supports them, the common pool otherwise.
+     *
+     * @param entries entries to publish, in order.
+     *
+     * @return the {@link ChunkPublisher}.
+     *
+     * @see #publish(List, Executor)
+     */
+    public ChunkPublisher publish(List<ContainerEntry> entries) {
+        return publish(entries, Platform.blockingExecutor());
+    }
+
+    /**
+     * Obtains a publisher of the data of the given entries, chunk by chunk, that only reads the
+     * chunks requested by its subscribers. The digest of every entry is verified once its last
+     * chunk is read - subscribers receive a {@link FileError} at {@code onError} if it is not
+     * valid. The reader must not be closed while there are active subscriptions.
+     *
+     * @param entries  entries to publish, in order.
+     * @param executor executor where the chunks are read and published.
+     *
+     * @return the {@link ChunkPublisher}.
+     */
+    public ChunkPublisher publish(final List<ContainerEntry> entries, Executor executor) {
+        final ArrayList<ContainerEntry> published = new ArrayList<>(entries);
+        return new ChunkPublisher(new ChunkPublisher.Source() {
+            @Override
+            public int size() {
+                return published.size();
+            }
+
+            @Override
+            public String name(int index) {
+                return published.get(index).getName();
+            }
+
+            @Override
+            public InputStream open(int index) {
+                return openStream(published.get(index));
+            }
+        }, executor);
+    }
+
+    /**
+     * Opens a stream for reading the data of the given entry. Once the whole entry was read, its
+     * digest is verified - or, if the container is encrypted, every block as it is read.
+     *
+     * @param entry entry of this container.
+     *
+     * @return {@code InputStream} with the entry data.
+     *
+     * @throws FileError if the digest of the read data is not the same as the stored one.
+     */
+    public InputStream openStream(ContainerEntry entry) {
+        InputStream data = mHeader.decode(new BlockInputStream(entry));
+        return mHeader.isEncrypted() ? data : new VerifyingInputStream(data, entry);
+    }
+
+    /**
+     * Reads all the data of the given entry.
+     *
+     * @param entry entry of this container.
+     *
+     * @return {@code byte[]} with the entry data.
+     *
+     * @throws IOException if the entry cannot be read or it is too big for an array.
+     * @throws FileError   if the digest of the read data is not the same as the stored one.
+     */
+    public byte[] read(ContainerEntry entry) throws IOException {
+        if (entry.getSize() > Integer.MAX_VALUE - 8)
+            throw new IOException(String.format("Entry \"%s\" is too big to be read (%d bytes)",
+                    entry.getName(), entry.getSize()));
+        byte[] data = new byte[(int) entry.getSize()];
+        try (DataInputStream input = new DataInputStream(openStream(entry))) {
+            input.readFully(data);
+            if (input.read() != -1)
+                throw new InvalidContainerException(String.format("Entry \"%s\" is bigger than " +
+                        "its stored size", entry.getName()));
+        }
+        return data;
+    }
+
+    /**
+     * Obtains the names of the entries removed by this container, when it is a delta container
+     * written by {@link ContainerDiff#writeDelta(File)}.
+     *
+     * @return unmodifiable {@code List} with the names - empty if it is not a delta container.
+     *
+     * @see ContainerDiff#apply(File, File, File)
+     */
+    public List<String> getRemovedNames() {
+        return mHeader.getRemoved();
+    }
+
+    /**
+     * Obtains the header of the container, already unlocked.
+     *
+     * @return the {@link ContainerHeader}.
+     */
+    ContainerHeader getHeader() {
+        return mHeader;
+    }
+
+    /**
+     * Copies the stored data of the given entry (its blocks, as they are at the container) to the
+     * given stream, without decoding nor verifying it.
+     *
+     * @param entry  entry of this container.
+     * @param output stream where the data is copied.
+     *
+     * @throws IOException               if the entry cannot be read or the stream cannot be
+     *                                   written.
+     * @throws InvalidContainerException if the entry is out of the container.
+     */
+    void copyStored(ContainerEntry entry, OutputStream output) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(Container.BLOCK_SIZE);
+        long position = entry.getOffset();
+        long end = position + entry.getStoredLength();
+        if (position < 0 || end > mChannel.size())
+            throw new InvalidContainerException(String.format("Container \"%s\" is truncated",
+                    mSource.toString()));
+        while (position < end) {
+            buffer.clear();
+            buffer.limit((int) Math.min(buffer.capacity(), end - position));
+            int read = mChannel.read(buffer, position);
+            if (read < 0)
+                throw new InvalidContainerException(String.format("Container \"%s\" is " +
+                        "truncated", mSource.toString()));
+            output.write(buffer.array(), 0, read);
+            position += read;
+        }
+    }
+
+    /**
+     * Closes the container.
+     *
+     * @throws IOException if the file cannot be closed.
+     */
+    @Override
+    public void close() throws IOException {
+        mChannel.close();
+    }
+
+    /**
+     * Verifies and reads the header of the container.
+     *
+     * @param key key of the container, can be {@code null} if it is not encrypted.
+     *
+     * @return the {@link ContainerHeader}.
+     *
+     * @throws IOException               if the file cannot be read.
+     * @throws InvalidContainerException if the file is not a valid container or the key is not
+     *                                   valid.
+     */
+    private ContainerHeader readHeader(SecretKey key) throws IOException {
+        ByteBuffer header = readFully(0, Integer.BYTES * 2 + Short.BYTES * 2);
+        if (header.getInt() != Container.MAGIC)
+            throw new InvalidContainerException(String.format("File \"%s\" is not a container",
+                    mSource.toString()));
+        short version = header.getShort();
+        if (version > Container.VERSION)
+            throw new InvalidContainerException(String.format("Container \"%s\" has an " +
+                    "unsupported version: %d", mSource.toString(), version));
+        short flags = header.getShort();
+        byte[] extra = readFully(header.capacity(), header.getInt()).array();
+        String source = "\"" + mSource.toString() + "\"";
+        return ContainerHeader.parse(flags, extra, source).unlock(key, source);
+    }
+
+    /**
+     * Verifies the trailer of the container and reads its index.
+     *
+     * @return {@code ArrayList} with the entries.
+     *
+     * @throws IOException               if the file cannot be read.
+     * @throws InvalidContainerException if the file is not a valid container.
+     */
+    private ArrayList<ContainerEntry> readIndex() throws IOException {
+        long size = mChannel.size();
+        ByteBuffer trailer = readFully(size - Container.TRAILER_SIZE, Container.TRAILER_SIZE);
+        long indexOffset = trailer.getLong();
+        if (trailer.getInt() != Container.INDEX_MAGIC || indexOffset < 0 ||
+                indexOffset > size - Container.TRAILER_SIZE)
+            throw new InvalidContainerException(String.format("Container \"%s\" is truncated",
+                    mSource.toString()));
+        ByteBuffer index = readFully(indexOffset, (int) (size - Container.TRAILER_SIZE -
+                indexOffset));
+        try (DataInputStream input = new DataInputStream(new ByteArrayInputStream(index.array()))) {
+            if (input.readByte() != Container.INDEX)
+                throw new InvalidContainerException(String.format("Container \"%s\" has an " +
+                        "invalid index", mSource.toString()));
+            int count = input.readInt();
+            ArrayList<ContainerEntry> entries = new ArrayList<>(count);
+            for (int i = 0; i < count; ++i) {
+                String name = input.readUTF();
+                long offset = input.readLong();
+                long storedLength = input.readLong();
+                long entrySize = input.readLong();
+                byte[] digest = new byte[Container.DIGEST_SIZE];
+                input.readFully(digest);
+                entries.add(new ContainerEntry(name, offset, storedLength, entrySize, digest));
+            }
+            return entries;
+        } catch (EOFException e) {
+            throw new InvalidContainerException(String.format("Container \"%s\" has an " +
+                    "invalid index", mSource.toString()), e);
+        }
+    }
+
+    /**
+     * Reads the given range of the container.
+     *
+     * @param position position of the first byte.
+     * @param length   number of bytes to read.
+     *
+     * @return {@code ByteBuffer}, backed by an array, with the data and ready to be read.
+     *
+     * @throws IOException               if the file cannot be read.
+     * @throws InvalidContainerException if the range is out of the file.
+     */
+    private ByteBuffer readFully(long position, int length) throws IOException {
+        if (position < 0 || length < 0)
+            throw new InvalidContainerException(String.format("Container \"%s\" is truncated",
+                    mSource.toString()));
+        ByteBuffer buffer = ByteBuffer.allocate(length);
+        while (buffer.hasRemaining()) {
+            int read = mChannel.read(buffer, position + buffer.position());
+            if (read < 0)
+                throw new InvalidContainerException(String.format("Container \"%s\" is " +
+                        "truncated", mSource.toString()));
+        }
+        buffer.flip();
+        return buffer;
+    }
+
+    /**
+     * Stream that reads the stored blocks of an entry by using positional reads. Blocks of
+     * encrypted containers are read together with the length of the next one, for knowing whether
+     * they are the last block of the entry.
+     */
+    private final class BlockInputStream extends InputStream {
+        private final ContainerEntry mEntry;
+        private final Cipher mCipher;
+        private final byte[] mName;
+        private long mPosition;
+        private ByteBuffer mBlock;
+        private int mNextLength;
+        private boolean mIsFinished;
+
+        /**
+         * Generates a new stream for the given entry.
+         *
+         * @param entry entry to read.
+         */
+        BlockInputStream(ContainerEntry entry) {
+            mEntry = entry;
+            mCipher = mHeader.isEncrypted() ? mHeader.getCipher().newCipher() : null;
+            mName = mHeader.isEncrypted() ? entry.getName().getBytes(StandardCharsets.UTF_8) :
+                    null;
+            mPosition = entry.getOffset();
+            mBlock = ByteBuffer.allocate(0);
+            mNextLength = -1;
+        }
+
+        @Override
+        public int read() throws IOException {
+            byte[] single = new byte[1];
+            return read(single, 0, 1) == -1 ? -1 : single[0] & 0xFF;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (len == 0)
+                return 0;
+            if (!mBlock.hasRemaining() && !nextBlock())
+                return -1;
+            int read = Math.min(len, mBlock.remaining());
+            mBlock.get(b, off, read);
+            return read;
+        }
+
+        @Override
+        public int available() {
+            return mBlock.remaining();
+        }
+
+        /**
+         * Reads the next block of the entry.
+         *
+         * @return {@code false} if there are no more blocks.
+         *
+         * @throws IOException               if the block cannot be read.
+         * @throws InvalidContainerException if the block is not valid.
+         */
+        private boolean nextBlock() throws IOException {
+            if (mIsFinished)
+                return false;
+            long blockOffset = mPosition;
+            int length = mNextLength != -1 ? mNextLength :
+                    readFully(mPosition, Integer.BYTES).getInt();
+            mPosition += Integer.BYTES;
+            if (length == 0) {
+                // Every encrypted entry ends with a block sealed as the last one
+                if (mCipher != null && mNextLength == -1)
+                    throw new FileError(String.format("Entry \"%s\" has no blocks - the " +
+                            "container probably has been modified.", mEntry.getName()));
+                mIsFinished = true;
+                return false;
+            }
+            if (length < 0 || length > mHeader.getMaxBlockLength())
+                throw new InvalidContainerException(String.format("Entry \"%s\" has an invalid " +
+                        "block", mEntry.getName()));
+            if (mCipher == null) {
+                mBlock = readFully(mPosition, length);
+                mPosition += length;
+                return true;
+            }
+            ByteBuffer sealed = readFully(mPosition, length + Integer.BYTES);
+            mPosition += length;
+            mNextLength = sealed.getInt(length);
+            mBlock = ByteBuffer.wrap(mHeader.getCipher().openBlock(mCipher, blockOffset, mName,
+                    sealed.array(), 0, length, mNextLength == 0, mEntry.getName()));
+            return true;
+        }
+    }
+
+    /**
+     * Stream that computes the digest of the original data of an entry, verifying it once the
+     * whole entry was read.
+     */
+    private static final class VerifyingInputStream extends FilterInputStream {
+        private final ContainerEntry mEntry;
+        private final MessageDigest mDigest;
+        private boolean mIsVerified;
+
+        /**
+         * Generates a new stream for the given entry.
+         *
+         * @param in    stream with the original data of the entry.
+         * @param entry entry that is read.
+         */
+        VerifyingInputStream(InputStream in, ContainerEntry entry) {
+            super(in);
+            mEntry = entry;
+            mDigest = Container.newDigest();
+        }
+
+        @Override
+        public int read() throws IOException {
+            byte[] single = new byte[1];
+            return read(single, 0, 1) == -1 ? -1 : single[0] & 0xFF;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            int read = in.read(b, off, len);
+            if (read > 0)
+                mDigest.update(b, off, read);
+            else if (read == -1 && !mIsVerified) {
+                mIsVerified = true;
+                if (!MessageDigest.isEqual(mDigest.digest(), mEntry.getDigest()))
+                    throw new FileError(String.format("Digests are not equal! - entry \"%s\" " +
+                            "probably has been modified.", mEntry.getName()));
+            }
+            return read;
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            byte[] skipped = new byte[(int) Math.min(n, Container.BLOCK_SIZE)];
+            int read = read(skipped, 0, skipped.length);
+            return Math.max(read, 0);
+        }
+
+        @Override
+        public boolean markSupported() {
+            return false;
+        }
+    }
+}
@@ -0,0 +1,516 @@
+package com.github.javinator9889.exporter;
+
+import com.github.javinator9889.error.InvalidContainerException;
+
+import javax.crypto.Cipher;
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.zip.CRC32;
+
+/**
+ * <p>Writes a container entry by entry, streaming the data of every source directly to the
+ * destination, so the memory used does not depend on the size of the sources.
+ * <p>
+ * The index is written when the writer is closed:
+ * <pre>
+ * try (ContainerWriter writer = new ContainerWriter(new File("export.ftbx"))) {
+ *     writer.write(new File("dir/file.txt"));
+ *     writer.write("other/name.txt", inputStream);
+ * }
+ * </pre>
+ *
+ * Entries are compressed (optionally against a shared dictionary) as configured at the given
+ * {@link ContainerOptions}, and then encrypted block by block if an {@link
+ * ContainerOptions#setEncryptionKey(javax.crypto.SecretKey) encryption key} is given - the digest
+ * at the index of encrypted entries is computed from the authentication tags of their blocks
+ * instead of from their plain data. Writers created by a {@link FileToBytesExporter} are limited
+ * by its {@link IoThrottle}.
+ *
+ * @see ContainerReader
+ */
+public class ContainerWriter implements Closeable {
+    private final DataOutputStream mOutput;
+    private final FileOutputStream mFileOutput;
+    private final CountingOutputStream mCounter;
+    private final ArrayList<ContainerEntry> mEntries;
+    private final ContainerHeader mHeader;
+    private final Cipher mCipher;
+    private final byte[] mBuffer;
+    private IoThrottle mThrottle;
+    private long mLastEntryCrc;
+    private boolean mIsClosed;
+
+    /**
+     * Generates a new writer for the given file, creating it (or truncating it if it exists).
+     *
+     * @param destination output file - cannot be a directory.
+     *
+     * @throws IOException if the file cannot be created or the header cannot be written.
+     */
+    public ContainerWriter(File destination) throws IOException {
+        this(destination, new ContainerOptions());
+    }
+
+    /**
+     * Generates a new writer for the given file, creating it (or truncating it if it exists).
+     *
+     * @param destination output file - cannot be a directory.
+     * @param options     how the entries are stored.
+     *
+     * @throws IOException if the file cannot be created or the header cannot be written.
+     */
+    public ContainerWriter(File destination, ContainerOptions options) throws IOException {
+        this(new FileOutputStream(destination), options);
+    }
+
+    /**
+     * Generates a new writer for the given stream - it is closed when the writer is closed.
+     *
+     * @param destination output stream.
+     *
+     * @throws IOException if the header cannot be written.
+     */
+    public ContainerWriter(OutputStream destination) throws IOException {
+        this(destination, new ContainerOptions());
+    }
+
+    /**
+     * Generates a new writer for the given stream - it is closed when the writer is closed.
+     *
+     * @param destination output stream.
+     * @param options     how the entries are stored.
+     *
+     * @throws IOException if the header cannot be written.
+     */
+    public ContainerWriter(OutputStream destination, ContainerOptions options)
+            throws IOException {
+        this(destination, ContainerHeader.of(options));
+    }
+
+    /**
+     * Generates a new writer for the given stream with the given header (e.g.: the header of a
+     * delta container) - the stream is closed when the writer is closed.
+     *
+     * @param destination output stream.
+     * @param header      header of the container.
+     *
+     * @throws IOException if the header cannot be written.
+     */
+    ContainerWriter(OutputStream destination, ContainerHeader header) throws IOException {
+        this(destination, header, Collections.emptyList(), 0);
+        mOutput.writeInt(Container.MAGIC);
+        mOutput.writeShort(Container.VERSION);
+        mHeader.write(mOutput);
+    }
+
+    /**
+     * Generates a new writer that continues a partially written container file, discarding
+     * everything written after {@code position} (e.g.: an entry that was being written when the
+     * process crashed). The header is not written again, so {@code options} must define the same
+     * encoding as the container header.
+     *
+     * @param partial  partially written container.
+     * @param options  how the entries are stored.
+     * @param entries  entries already written before {@code position}.
+     * @param position offset just after the last completed entry.
+     *
+     * @throws IOException if the file cannot be truncated or opened.
+     */
+    ContainerWriter(File partial, ContainerOptions options, List<ContainerEntry> entries,
+                    long position) throws IOException {
+        this(truncate(partial, position), ContainerHeader.of(options), entries, position);
+    }
+
+    /**
+     * Private constructor for generating a new instance - only visible for this class.
+     *
+     * @param destination output stream.
+     * @param header      header of the container, defining how the entries are stored.
+     * @param entries     entries already written at the destination.
+     * @param position    number of bytes already written at the destination.
+     */
+    private ContainerWriter(OutputStream destination, ContainerHeader header,
+                            List<ContainerEntry> entries, long position) {
+        mFileOutput = destination instanceof FileOutputStream ?
+                (FileOutputStream) destination : null;
+        mCounter = new CountingOutputStream(new BufferedOutputStream(destination,
+                Container.BLOCK_SIZE), position);
+        mOutput = new DataOutputStream(mCounter);
+        mEntries = new ArrayList<>(entries);
+        mHeader = header;
+        mCipher = mHeader.isEncrypted() ? mHeader.getCipher().newCipher() : null;
+        mBuffer = new byte[Container.BLOCK_SIZE];
+    }
+
+    /**
+     * Writes the given file as a new entry, named by its path relative to the working directory.
+     *
+     * @param source file to write, inside the working directory.
+     *
+     * @return the written {@link ContainerEntry}.
+     *
+     * @throws IOException              if the file cannot be read or the entry cannot be written.
+     * @throws IllegalArgumentException if the file is not inside the working directory.
+     * @see #write(File, File)
+     */
+    public ContainerEntry write(File source) throws IOException {
+        return write(source, new File(""));
+    }
+
+    /**
+     * Writes the given file as a new entry, named by its {@link Container#entryName(File, File)
+     * path relative to the given root}.
+     *
+     * @param source file to write.
+     * @param root   directory the entry name is relative to.
+     *
+     * @return the written {@link ContainerEntry}.
+     *
+     * @throws IOException              if the file cannot be read or the entry cannot be written.
+     * @throws IllegalArgumentException if the file is not inside the root.
+     */
+    public ContainerEntry write(File source, File root) throws IOException {
+        String name = Container.entryName(root, source);
+        try (InputStream input = IoThrottle.open(mThrottle, source)) {
+            return write(name, input);
+        }
+    }
+
+    /**
+     * Writes all the data of the given stream as a new entry - the stream is not closed.
+     *
+     * @param name   name of the entry.
+     * @param source stream with the entry data.
+     *
+     * @return the written {@link ContainerEntry}.
+     *
+     * @throws IOException if the stream cannot be read or the entry cannot be written.
+     */
+    public ContainerEntry write(String name, InputStream source) throws IOException {
+        if (mIsClosed)
+            throw new IOException("The container writer is closed");
+        mCounter.resetCrc();
+        mOutput.writeByte(Container.ENTRY);
+        mOutput.writeUTF(name);
+        long offset = mCounter.getCount();
+        long throttled = offset;
+        MessageDigest digest = Container.newDigest();
+        long size = 0;
+        int read;
+        try (OutputStream entry = mHeader.encode(new BlockOutputStream(name, digest))) {
+            while ((read = readBlock(source)) > 0) {
+                if (mCipher == null)
+                    digest.update(mBuffer, 0, read);
+                size += read;
+                entry.write(mBuffer, 0, read);
+                throttled = throttle(throttled);
+            }
+        }
+        mOutput.writeInt(0);
+        mLastEntryCrc = mCounter.getCrc();
+        throttle(throttled);
+        ContainerEntry entry = new ContainerEntry(name, offset, mCounter.getCount() - offset,
+                size, digest.digest());
+        mEntries.add(entry);
+        return entry;
+    }
+
+    /**
+     * Writes an entry of another container as a new entry, copying its stored data as it is -
+     * the entry is neither decoded nor verified, so both containers must store their entries
+     * with the same encoding.
+     *
+     * @param source container of the entry.
+     * @param entry  entry to copy.
+     *
+     * @return the written {@link ContainerEntry}, with the same size and digest.
+     *
+     * @throws IOException               if the entry cannot be read or written.
+     * @throws InvalidContainerException if the containers do not store their entries with the
+     *                                   same encoding.
+     */
+    ContainerEntry copy(ContainerReader source, ContainerEntry entry) throws IOException {
+        if (mIsClosed)
+            throw new IOException("The container writer is closed");
+        if (!mHeader.isCompatible(source.getHeader()))
+            throw new InvalidContainerException(String.format("Entry \"%s\" is stored with a " +
+                    "different encoding", entry.getName()));
+        mCounter.resetCrc();
+        mOutput.writeByte(Container.ENTRY);
+        mOutput.writeUTF(entry.getName());
+        long offset = mCounter.getCount();
+        source.copyStored(entry, mOutput);
+        mLastEntryCrc = mCounter.getCrc();
+        throttle(offset);
+        ContainerEntry copied = new ContainerEntry(entry.getName(), offset,
+                entry.getStoredLength(), entry.getSize(), entry.getDigest());
+        mEntries.add(copied);
+        return copied;
+    }
+
+    /**
+     * Limits the data written from now on (and the sources opened by {@link #write(File)}) with
+     * the given throttle.
+     *
+     * @param throttle throttle to use - {@code null} for no limit.
+     */
+    void setThrottle(IoThrottle throttle) {
+        mThrottle = throttle;
+    }
+
+    /**
+     * Obtains the entries written until now.
+     *
+     * @return unmodifiable {@code List} with the entries.
+     */
+    public List<ContainerEntry> getEntries() {
+        return Collections.unmodifiableList(mEntries);
+    }
+
+    /**
+     * Obtains the number of bytes written until now - the offset where the next entry starts.
+     *
+     * @return {@code long} with the position.
+     */
+    long getPosition() {
+        return mCounter.getCount();
+    }
+
+    /**
+     * Obtains the CRC-32 of all the bytes written for the last entry, from its marker to the end
+     * of its data - used for verifying that a partially written container was not modified.
+     *
+     * @return {@code long} with the CRC-32, {@code 0} if no entry was written.
+     */
+    long getLastEntryCrc() {
+        return mLastEntryCrc;
+    }
+
+    /**
+     * Flushes the written data to the destination and, optionally, forces it to the storage
+     * device (only when writing to a file).
+     *
+     * @param force {@code true} for forcing the data to the device.
+     *
+     * @throws IOException if the data cannot be flushed or forced.
+     */
+    void sync(boolean force) throws IOException {
+        mOutput.flush();
+        if (force && mFileOutput != null)
+            AtomicFiles.sync(mFileOutput);
+    }
+
+    /**
+     * Writes the index and the trailer, and closes the destination.
+     *
+     * @throws IOException if the index cannot be written.
+     */
+    @Override
+    public void close() throws IOException {
+        if (mIsClosed)
+            return;
+        mIsClosed = true;
+        try (DataOutputStream output = mOutput) {
+            long indexOffset = mCounter.getCount();
+            output.writeByte(Container.INDEX);
+            output.writeInt(mEntries.size());
+            for (ContainerEntry entry : mEntries) {
+                output.writeUTF(entry.getName());
+                output.writeLong(entry.getOffset());
+                output.writeLong(entry.getStoredLength());
+                output.writeLong(entry.getSize());
+                output.write(entry.getDigest());
+            }
+            output.writeLong(indexOffset);
+            output.writeInt(Container.INDEX_MAGIC);
+        }
+    }
+
+    /**
+     * Discards the data of the given file after {@code position} and opens it for appending.
+     *
+     * @param file     file to truncate.
+     * @param position new length of the file.
+     *
+     * @return {@code FileOutputStream} at the end of the file.
+     *
+     * @throws IOException if the file cannot be truncated or opened.
+     */
+    private static FileOutputStream truncate(File file, long position) throws IOException {
+        try (RandomAccessFile truncated = new RandomAccessFile(file, "rw")) {
+            truncated.setLength(position);
+        }
+        return new FileOutputStream(file, true);
+    }
+
+    /**
+     * Consumes the bytes written since the given count from the throttle budget, if any.
+     *
+     * @param count number of written bytes that were already consumed.
+     *
+     * @return {@code long} with the number of written bytes, all of them consumed.
+     *
+     * @throws IOException if the thread is interrupted while waiting for the budget.
+     */
+    private long throttle(long count) throws IOException {
+        long written = mCounter.getCount();
+        if (mThrottle != null)
+            mThrottle.acquire(written - count);
+        return written;
+    }
+
+    /**
+     * Fills the buffer with the data of the given stream.
+     *
+     * @param source stream to read.
+     *
+     * @return number of bytes read - lower than the buffer length only at the end of the stream.
+     *
+     * @throws IOException if the stream cannot be read.
+     */
+    private int readBlock(InputStream source) throws IOException {
+        int total = 0;
+        int read;
+        while (total < mBuffer.length &&
+                (read = source.read(mBuffer, total, mBuffer.length - total)) != -1)
+            total += read;
+        return total;
+    }
+
+    /**
+     * Output stream that splits the stored data of an entry into blocks of, at most, {@link
+     * Container#BLOCK_SIZE} bytes, each one preceded by its length. Closing it writes the pending
+     * block, but neither the final empty block nor closes the container stream.
+     * <p>
+     * On encrypted containers every block is sealed with the {@link BlockCipher} of the header -
+     * a full block is only written once more data arrives, so the last block of the entry is
+     * always known (and there is always one, even for empty entries).
+     */
+    private final class BlockOutputStream extends OutputStream {
+        private final byte[] mName;
+        private final MessageDigest mTags;
+        private final byte[] mBlock;
+        private int mLength;
+
+        /**
+         * Generates a new block stream.
+         *
+         * @param name name of the entry.
+         * @param tags digest that receives the tags of the blocks, only on encrypted containers.
+         */
+        BlockOutputStream(String name, MessageDigest tags) {
+            mName = mCipher != null ? name.getBytes(StandardCharsets.UTF_8) : null;
+            mTags = tags;
+            mBlock = new byte[Container.BLOCK_SIZE];
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            write(new byte[]{(byte) b}, 0, 1);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            while (len > 0) {
+                if (mLength == mBlock.length)
+                    writeBlock(false);
+                int copied = Math.min(len, mBlock.length - mLength);
+                System.arraycopy(b, off, mBlock, mLength, copied);
+                mLength += copied;
+                off += copied;
+                len -= copied;
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (mLength > 0 || mCipher != null)
+                writeBlock(true);
+        }
+
+        /**
+         * Writes the pending block.
+         *
+         * @param isLast whether it is the last block of the entry.
+         *
+         * @throws IOException if it cannot be written.
+         */
+        private void writeBlock(boolean isLast) throws IOException {
+            if (mCipher == null) {
+                mOutput.writeInt(mLength);
+                mOutput.write(mBlock, 0, mLength);
+            } else {
+                byte[] sealed = mHeader.getCipher().sealBlock(mCipher, mCounter.getCount(), mName,
+                        mBlock, 0, mLength, isLast);
+                mTags.update(sealed, sealed.length - BlockCipher.TAG_SIZE, BlockCipher.TAG_SIZE);
+                mOutput.writeInt(sealed.length);
+                mOutput.write(sealed);
+            }
+            mLength = 0;
+        }
+    }
+
+    /**
+     * Output stream that keeps the count of the written bytes, for knowing the offsets of the
+     * entries, and their CRC-32 since the last {@link #resetCrc() reset}.
+     */
+    private static final class CountingOutputStream extends FilterOutputStream {
+        private final CRC32 mCrc;
+        private long mCount;
+
+        /**
+         * Generates a new counting stream.
+         *
+         * @param out   underlying stream.
+         * @param count number of bytes already written at the underlying stream.
+         */
+        CountingOutputStream(OutputStream out, long count) {
+            super(out);
+            mCrc = new CRC32();
+            mCount = count;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            out.write(b);
+            mCrc.update(b);
+            ++mCount;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            out.write(b, off, len);
+            mCrc.update(b, off, len);
+            mCount += len;
+        }
+
+        /**
+         * Obtains the CRC-32 of the bytes written since the last reset.
+         *
+         * @return {@code long} with the CRC-32.
+         */
+        long getCrc() {
+            return mCrc.getValue();
+        }
+
+        /**
+         * Starts computing the CRC-32 again from the next written byte.
+         */
+        void resetCrc() {
+            mCrc.reset();
+        }
+
+        /**
+         * Obtains the number of written bytes.
+         *
+         * @return {@code long} with the count.
+         */
+        long getCount() {
+            return mCount;
+        }
+    }
+}
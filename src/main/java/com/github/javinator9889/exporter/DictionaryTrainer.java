@@ -0,0 +1,129 @@
+package com.github.javinator9889.exporter;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * <p>Trains a compression dictionary from a sample of the files that are going to be exported.
+ * <p>
+ * Similar files share lots of lines (keys, headers, boilerplate...), so the trainer counts, for
+ * every line of the sampled files, at how many files it appears. The lines that appear at more
+ * than one file are scored by the number of bytes they would save ({@code files * length}) and the
+ * best ones are concatenated until filling the dictionary, placing the best ones at the end as
+ * deflate finds the closest matches cheaper. If there are not enough shared lines, the rest of the
+ * dictionary is filled with the beginning of the sampled files.
+ */
+final class DictionaryTrainer {
+    /**
+     * Maximum number of files that are sampled.
+     */
+    static final int MAX_SAMPLES = 1024;
+    /**
+     * Maximum number of bytes read from every sampled file.
+     */
+    static final int SAMPLE_SIZE = 16 * 1024;
+    /**
+     * Lines shorter than this size are not worth being at the dictionary.
+     */
+    private static final int MIN_LINE_LENGTH = 4;
+
+    /**
+     * Do not let anyone instantiate this class.
+     */
+    private DictionaryTrainer() {
+    }
+
+    /**
+     * Trains a new dictionary from an evenly distributed sample of the given files.
+     *
+     * @param files    files that are going to be exported.
+     * @param size     maximum size of the dictionary.
+     * @param throttle throttle the samples are read through - {@code null} for no limit.
+     *
+     * @return {@code byte[]} with the dictionary, {@code null} if the files are empty.
+     *
+     * @throws IOException if any sampled file cannot be read.
+     */
+    static byte[] train(List<File> files, int size, IoThrottle throttle) throws IOException {
+        int samples = Math.min(files.size(), MAX_SAMPLES);
+        ArrayList<byte[]> sampled = new ArrayList<>(samples);
+        for (int i = 0; i < samples; ++i)
+            sampled.add(readSample(files.get((int) ((long) i * files.size() / samples)), throttle));
+        HashMap<ByteBuffer, Integer> occurrences = new HashMap<>();
+        for (byte[] sample : sampled) {
+            HashSet<ByteBuffer> lines = new HashSet<>();
+            int start = 0;
+            for (int i = 0; i <= sample.length; ++i) {
+                if (i == sample.length || sample[i] == '\n') {
+                    int end = Math.min(i + 1, sample.length);
+                    if (end - start >= MIN_LINE_LENGTH)
+                        lines.add(ByteBuffer.wrap(sample, start, end - start).slice());
+                    start = i + 1;
+                }
+            }
+            for (ByteBuffer line : lines)
+                occurrences.merge(line, 1, Integer::sum);
+        }
+        ArrayList<Map.Entry<ByteBuffer, Integer>> shared = new ArrayList<>();
+        for (Map.Entry<ByteBuffer, Integer> line : occurrences.entrySet()) {
+            if (line.getValue() > 1)
+                shared.add(line);
+        }
+        // Ties are sorted by their bytes, so the dictionary does not depend on the map order
+        shared.sort((a, b) -> {
+            int order = Long.compare((long) b.getValue() * b.getKey().remaining(),
+                    (long) a.getValue() * a.getKey().remaining());
+            return order != 0 ? order : a.getKey().compareTo(b.getKey());
+        });
+        ArrayList<ByteBuffer> selected = new ArrayList<>();
+        int length = 0;
+        for (Map.Entry<ByteBuffer, Integer> line : shared) {
+            if (length + line.getKey().remaining() > size)
+                continue;
+            selected.add(line.getKey());
+            length += line.getKey().remaining();
+        }
+        ByteArrayOutputStream dictionary = new ByteArrayOutputStream(size);
+        for (int i = 0; i < sampled.size() && length < size; ++i) {
+            int filling = Math.min(size - length, sampled.get(i).length);
+            dictionary.write(sampled.get(i), 0, filling);
+            length += filling;
+        }
+        for (int i = selected.size() - 1; i >= 0; --i) {
+            ByteBuffer line = selected.get(i);
+            dictionary.write(line.array(), line.arrayOffset(), line.remaining());
+        }
+        return dictionary.size() > 0 ? dictionary.toByteArray() : null;
+    }
+
+    /**
+     * Reads the beginning of the given file.
+     *
+     * @param file     file to sample.
+     * @param throttle throttle the file is read through - {@code null} for no limit.
+     *
+     * @return {@code byte[]} with, at most, {@link #SAMPLE_SIZE} bytes.
+     *
+     * @throws IOException if the file cannot be read.
+     */
+    private static byte[] readSample(File file, IoThrottle throttle) throws IOException {
+        byte[] sample = new byte[(int) Math.min(SAMPLE_SIZE, file.length())];
+        int total = 0;
+        try (InputStream input = IoThrottle.open(throttle, file)) {
+            int read;
+            while (total < sample.length &&
+                    (read = input.read(sample, total, sample.length - total)) != -1)
+                total += read;
+        }
+        return total == sample.length ? sample : Arrays.copyOf(sample, total);
+    }
+}
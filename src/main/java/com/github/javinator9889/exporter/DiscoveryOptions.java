@@ -0,0 +1,337 @@
+package com.github.javinator9889.exporter;
+
+import java.io.Serializable;
+import java.nio.file.Path;
+import java.nio.file.PathMatcher;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * <p>Options used when looking for the source files at the provided paths.
+ * <p>
+ * By default, discovery behaves exactly as it always has: it navigates through all the child
+ * directories (following symbolic links), without any limit on the number of files found, and the
+ * first file that cannot be visited aborts the whole search. For <b>huge trees</b>, the walk can
+ * be bounded by:
+ * <ul>
+ * <li>
+ * <b>Max depth</b>: how many directory levels below each path are inspected.
+ * </li>
+ * <li>
+ * <b>Max files</b>: once that number of files was found, the search stops.
+ * </li>
+ * <li>
+ * <b>Excludes</b>: globs that discard files and <b>prune entire directories</b>, so their
+ * contents are never listed.
+ * </li>
+ * <li>
+ * <b>Error policy</b>: whether a file that cannot be visited aborts the search or is just skipped.
+ * </li>
+ * </ul><p>
+ *
+ * Symbolic link cycles are always detected when following links: the looping directory is skipped
+ * instead of being walked again.
+ * <p>
+ * Files are found in the order the file system lists them, which changes between machines and
+ * even between runs. For <b>reproducible exports</b> (e.g.: for build caches), the files of every
+ * path can be {@link #setSorted(boolean) sorted} instead, so the same sources always produce the
+ * same bytes.
+ *
+ * @see FileToBytesExporter#setDiscoveryOptions(DiscoveryOptions)
+ */
+public class DiscoveryOptions implements Cloneable, Serializable {
+    private int mMaxDepth;
+    private int mMaxFiles;
+    private ArrayList<String> mExcludes;
+    private ErrorPolicy mErrorPolicy;
+    private boolean mFollowLinks;
+    private boolean mSorted;
+
+    /**
+     * Public default constructor - no depth nor files limit, no excludes, {@link ErrorPolicy#FAIL
+     * failing} on errors, following symbolic links and in file system order.
+     */
+    public DiscoveryOptions() {
+        this(Integer.MAX_VALUE, Integer.MAX_VALUE, new ArrayList<>(0), ErrorPolicy.FAIL, true,
+                false);
+    }
+
+    /**
+     * Private constructor for cloning or generating a new instance - only visible for this class.
+     *
+     * @param maxDepth    maximum number of directory levels to visit.
+     * @param maxFiles    maximum number of files to find.
+     * @param excludes    globs of the files and directories that will be ignored.
+     * @param errorPolicy what to do when a file cannot be visited.
+     * @param followLinks whether symbolic links are followed.
+     * @param sorted      whether the files are sorted by their path.
+     */
+    private DiscoveryOptions(int maxDepth, int maxFiles, ArrayList<String> excludes,
+                             ErrorPolicy errorPolicy, boolean followLinks, boolean sorted) {
+        mMaxDepth = maxDepth;
+        mMaxFiles = maxFiles;
+        mExcludes = excludes;
+        mErrorPolicy = errorPolicy;
+        mFollowLinks = followLinks;
+        mSorted = sorted;
+    }
+
+    /**
+     * Updates the maximum number of directory levels that will be visited below every path - only
+     * used when looking for files at all the subdirectories.
+     *
+     * @param maxDepth maximum depth - must be greater than zero.
+     *
+     * @throws IllegalArgumentException if {@code maxDepth} is lower than one.
+     */
+    public void setMaxDepth(int maxDepth) {
+        if (maxDepth < 1)
+            throw new IllegalArgumentException("Max depth must be greater than zero");
+        mMaxDepth = maxDepth;
+    }
+
+    /**
+     * Obtains the maximum number of directory levels that will be visited.
+     *
+     * @return {@code int} with the max depth.
+     */
+    public int getMaxDepth() {
+        return mMaxDepth;
+    }
+
+    /**
+     * Updates the maximum number of files that will be found, counting all the provided paths -
+     * once reached, the search stops.
+     *
+     * @param maxFiles maximum number of files - must be greater than zero.
+     *
+     * @throws IllegalArgumentException if {@code maxFiles} is lower than one.
+     */
+    public void setMaxFiles(int maxFiles) {
+        if (maxFiles < 1)
+            throw new IllegalArgumentException("Max files must be greater than zero");
+        mMaxFiles = maxFiles;
+    }
+
+    /**
+     * Obtains the maximum number of files that will be found.
+     *
+     * @return {@code int} with the max number of files.
+     */
+    public int getMaxFiles() {
+        return mMaxFiles;
+    }
+
+    /**
+     * Updates the globs of the files and directories that will be ignored. Every glob is matched
+     * against both the name and the path relative to the inspected path, so {@code "build"} ignores
+     * any directory called that way while {@code "src/generated/**"} only ignores that one. An
+     * excluded directory is not walked at all.
+     *
+     * @param excludes globs to ignore.
+     *
+     * @throws IllegalArgumentException when {@code excludes} or any of them is {@code null} or an
+     *                                  empty String {@code ""} - the stored excludes are not
+     *                                  modified then.
+     */
+    public void setExcludes(String... excludes) {
+        if (excludes == null)
+            throw new IllegalArgumentException("The provided exclude globs are not valid!");
+        for (String exclude : excludes)
+            checkExclude(exclude);
+        mExcludes = new ArrayList<>(Arrays.asList(excludes));
+    }
+
+    /**
+     * Includes a new glob inside the stored excludes.
+     *
+     * @param exclude new glob to ignore.
+     *
+     * @throws IllegalArgumentException when the {@code exclude} is {@code null} or an empty
+     *                                  String {@code ""}.
+     */
+    public void addExclude(String exclude) {
+        checkExclude(exclude);
+        mExcludes.add(exclude);
+    }
+
+    /**
+     * Checks that the given exclude glob is valid.
+     *
+     * @param exclude glob to check.
+     *
+     * @throws IllegalArgumentException when the {@code exclude} is {@code null} or an empty
+     *                                  String {@code ""}.
+     */
+    private static void checkExclude(String exclude) {
+        if (exclude == null || exclude.equals(""))
+            throw new IllegalArgumentException("The provided exclude glob is not valid!");
+    }
+
+    /**
+     * Obtains the globs of the files and directories that will be ignored.
+     *
+     * @return unmodifiable {@code List} with the excludes.
+     */
+    public List<String> getExcludes() {
+        return Collections.unmodifiableList(mExcludes);
+    }
+
+    /**
+     * Updates the policy applied when a file or directory cannot be visited (e.g.: it has not
+     * enough permissions).
+     *
+     * @param errorPolicy the new policy - cannot be {@code null}.
+     *
+     * @throws NullPointerException if {@code errorPolicy} is {@code null}.
+     */
+    public void setErrorPolicy(ErrorPolicy errorPolicy) {
+        mErrorPolicy = Objects.requireNonNull(errorPolicy, "Error policy cannot be null");
+    }
+
+    /**
+     * Obtains the policy applied when a file or directory cannot be visited.
+     *
+     * @return the {@link ErrorPolicy}.
+     */
+    public ErrorPolicy getErrorPolicy() {
+        return mErrorPolicy;
+    }
+
+    /**
+     * Updates whether symbolic links are followed while looking for files.
+     *
+     * @param followLinks {@code true} for following links.
+     */
+    public void setFollowLinks(boolean followLinks) {
+        mFollowLinks = followLinks;
+    }
+
+    /**
+     * Obtains whether symbolic links are followed while looking for files.
+     *
+     * @return {@code true} if links are followed.
+     */
+    public boolean isFollowLinks() {
+        return mFollowLinks;
+    }
+
+    /**
+     * Updates whether the files found at every path are sorted by their path relative to it,
+     * comparing the names of the directories and files one by one - so the order does not depend
+     * on the file system nor on the platform. The paths themselves keep the order they were
+     * provided in.
+     * <p>
+     * When {@link #setMaxFiles(int) max files} is set, the first files in that order are found,
+     * so every directory that may hold one of them is still listed - but not the ones sorted
+     * after the last found file once the limit is reached.
+     *
+     * @param sorted {@code true} for sorting the files.
+     */
+    public void setSorted(boolean sorted) {
+        mSorted = sorted;
+    }
+
+    /**
+     * Obtains whether the files found at every path are sorted by their path.
+     *
+     * @return {@code true} if files are sorted.
+     */
+    public boolean isSorted() {
+        return mSorted;
+    }
+
+    /**
+     * Compiles the globs of the excludes.
+     *
+     * @return {@code ArrayList} with the matchers, in the same order as the excludes.
+     */
+    ArrayList<PathMatcher> getExcludeMatchers() {
+        ArrayList<PathMatcher> matchers = new ArrayList<>(mExcludes.size());
+        for (String exclude : mExcludes)
+            matchers.add(GlobMatchers.get(exclude));
+        return matchers;
+    }
+
+    /**
+     * Checks whether the given path matches any of the excludes, either by its name or by its path
+     * relative to the inspected path.
+     *
+     * @param excludes matchers of the excludes - see {@link #getExcludeMatchers()}.
+     * @param root     inspected path the given one was found at.
+     * @param path     path to check.
+     *
+     * @return {@code true} if it must be ignored.
+     */
+    static boolean isExcluded(List<PathMatcher> excludes, Path root, Path path) {
+        if (excludes.isEmpty())
+            return false;
+        Path relative = root.relativize(path);
+        Path name = path.getFileName();
+        for (PathMatcher exclude : excludes) {
+            if (exclude.matches(relative) || (name != null && exclude.matches(name)))
+                return true;
+        }
+        return false;
+    }
+
+    /**
+     * Indicates whether some other object is "equal to" this one.
+     *
+     * @param o the reference object with which to compare.
+     *
+     * @return {@code true} if this object is the same as the obj argument; {@code false} otherwise.
+     */
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+        DiscoveryOptions options = (DiscoveryOptions) o;
+        return mMaxDepth == options.mMaxDepth &&
+                mMaxFiles == options.mMaxFiles &&
+                mFollowLinks == options.mFollowLinks &&
+                mSorted == options.mSorted &&
+                Objects.equals(mExcludes, options.mExcludes) &&
+                mErrorPolicy == options.mErrorPolicy;
+    }
+
+    /**
+     * Returns a hash code value for the object.
+     *
+     * @return a hash code value for this object.
+     */
+    @Override
+    public int hashCode() {
+        return Objects.hash(mMaxDepth, mMaxFiles, mExcludes, mErrorPolicy, mFollowLinks,
+                mSorted);
+    }
+
+    /**
+     * Creates and returns a copy of this object - the excludes are copied too, so both instances
+     * can be modified independently.
+     *
+     * @return a clone of this instance.
+     */
+    @Override
+    protected Object clone() {
+        return new DiscoveryOptions(mMaxDepth, mMaxFiles, new ArrayList<>(mExcludes),
+                mErrorPolicy, mFollowLinks, mSorted);
+    }
+
+    /**
+     * What to do when a file or directory cannot be visited while looking for files.
+     */
+    public enum ErrorPolicy {
+        /**
+         * The search is aborted by throwing a {@link com.github.javinator9889.error.FileError}.
+         */
+        FAIL,
+        /**
+         * The file (or the whole directory) is skipped and the search continues.
+         */
+        SKIP
+    }
+}
@@ -0,0 +1,112 @@
+package com.github.javinator9889.exporter;
+
+import java.util.Arrays;
+import java.util.Objects;
+
+/**
+ * Piece of the data of an entry (a source file or a container entry), as published by a {@link
+ * ChunkPublisher}. Every entry is published as one or more consecutive chunks - the last one is
+ * marked with {@link #isLast()}, and empty entries are published as a single empty chunk.
+ */
+public final class EntryChunk {
+    private final int mEntryIndex;
+    private final String mEntryName;
+    private final long mOffset;
+    private final byte[] mData;
+    private final boolean mIsLast;
+
+    /**
+     * Generates a new chunk.
+     *
+     * @param entryIndex index of the entry at the publisher.
+     * @param entryName  name of the entry.
+     * @param offset     offset of the chunk at the entry data.
+     * @param data       data of the chunk - owned by the chunk.
+     * @param isLast     whether it is the last chunk of the entry.
+     */
+    EntryChunk(int entryIndex, String entryName, long offset, byte[] data, boolean isLast) {
+        mEntryIndex = entryIndex;
+        mEntryName = entryName;
+        mOffset = offset;
+        mData = data;
+        mIsLast = isLast;
+    }
+
+    /**
+     * Obtains the index of the entry at the publisher.
+     *
+     * @return {@code int} with the index.
+     */
+    public int getEntryIndex() {
+        return mEntryIndex;
+    }
+
+    /**
+     * Obtains the name of the entry.
+     *
+     * @return {@code String} with the name.
+     */
+    public String getEntryName() {
+        return mEntryName;
+    }
+
+    /**
+     * Obtains the offset of this chunk at the entry data.
+     *
+     * @return {@code long} with the offset.
+     */
+    public long getOffset() {
+        return mOffset;
+    }
+
+    /**
+     * Obtains the data of this chunk.
+     *
+     * @return a copy of the data.
+     */
+    public byte[] getData() {
+        return mData.clone();
+    }
+
+    /**
+     * Obtains the length of the data of this chunk.
+     *
+     * @return {@code int} with the length.
+     */
+    public int getLength() {
+        return mData.length;
+    }
+
+    /**
+     * Obtains whether this is the last chunk of the entry.
+     *
+     * @return {@code true} if the entry has no more chunks.
+     */
+    public boolean isLast() {
+        return mIsLast;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+        EntryChunk chunk = (EntryChunk) o;
+        return mEntryIndex == chunk.mEntryIndex &&
+                mOffset == chunk.mOffset &&
+                mIsLast == chunk.mIsLast &&
+                Objects.equals(mEntryName, chunk.mEntryName) &&
+                Arrays.equals(mData, chunk.mData);
+    }
+
+    @Override
+    public int hashCode() {
+        return 31 * Objects.hash(mEntryIndex, mEntryName, mOffset, mIsLast) +
+                Arrays.hashCode(mData);
+    }
+
+    @Override
+    public String toString() {
+        return String.format("EntryChunk{name=%s, offset=%d, length=%d, last=%b}", mEntryName,
+                mOffset, mData.length, mIsLast);
+    }
+}
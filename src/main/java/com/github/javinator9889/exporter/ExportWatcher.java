@@ -0,0 +1,451 @@
+package com.github.javinator9889.exporter;
+
+import com.github.javinator9889.error.FileError;
+import com.github.javinator9889.error.IngestionException;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.file.*;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static java.nio.file.StandardWatchEventKinds.*;
+
+/**
+ * <p>Long-running exporter that keeps an output file up to date with its sources.
+ * <p>
+ * Instead of calling {@link FileToBytesExporter#readSource(boolean, String)} and {@link
+ * FileToBytesExporter#writeObject(File)} periodically, the watcher registers a {@link WatchService}
+ * over the exporter's paths and:
+ * <ul>
+ * <li>
+ * <b>Coalesces bursts</b>: all the events received are collected until there are no new ones
+ * during the {@code debounce} time (or the {@code maxDelay} time is reached since the first one),
+ * so a burst of writes produces just one export.
+ * </li>
+ * <li>
+ * <b>Re-reads only the affected files</b>: while the sources fit at the {@link
+ * IngestionOptions#setMemoryBudget(long) memory budget}, the contents of every source are kept,
+ * so only the modified or created files are read again. Bigger sources are read and spilled as a
+ * whole at every batch, as {@link FileToBytesExporter#readSource(boolean, String)} does.
+ * </li>
+ * <li>
+ * <b>Rewrites the destination</b> with the joined contents once per batch - an empty export if
+ * there are no sources left.
+ * </li>
+ * </ul><p>
+ *
+ * Sources are read as the exporter reads them: limited by its {@link IoThrottle} and retried or
+ * skipped as defined by its {@link IngestionOptions}. A batch that fails (e.g.: a file cannot be
+ * read and the error policy is to fail, or the destination cannot be written) does not stop the
+ * watcher: the destination keeps its previous export, the error is available at {@link
+ * #getLastError()} and the next batch of changes reads the sources again.
+ *
+ * The watcher runs at the thread that calls {@link #run()} until {@link #close()} is called:
+ * <pre>
+ * ExportWatcher watcher = new ExportWatcher(exporter, destination, true, "\n\n", 500);
+ * new Thread(watcher).start();
+ * // ...
+ * watcher.close();
+ * </pre>
+ * The given {@link FileToBytesExporter} must not be used by other threads while the watcher is
+ * running, as its read data is updated at every batch. The destination and its temporary files
+ * (e.g.: {@code "destination.partial"}) are never taken as sources, even if they match the glob,
+ * and the directories {@link DiscoveryOptions#setExcludes(String...) excluded} from discovery are
+ * not watched.
+ */
+public class ExportWatcher implements Runnable, Closeable {
+    private final FileToBytesExporter mExporter;
+    private final File mDestination;
+    private final boolean mMustOpenAllFiles;
+    private final String mFileSeparator;
+    private final long mDebounceMillis;
+    private final long mMaxDelayMillis;
+    private final PathMatcher mPathMatcher;
+    private final WatchService mWatchService;
+    private final HashMap<WatchKey, Path> mKeys;
+    private final HashMap<Path, Path> mRoots;
+    private final HashSet<Path> mOutputs;
+    private final HashMap<Path, String> mContents;
+    private ArrayList<File> mSources;
+    private List<IngestionReport.Failure> mDiscoverySkipped;
+    private volatile IngestionReport mIngestionReport;
+    private volatile Exception mLastError;
+    private volatile boolean mIsRunning;
+
+    /**
+     * Generates a new watcher whose maximum delay is ten times the {@code debounceMillis}.
+     *
+     * @param exporter         exporter with the filename (or glob) and the paths to watch.
+     * @param destination      output file that will be rewritten after every batch of changes.
+     * @param mustOpenAllFiles whether all the subdirectories are watched and all the files found
+     *                         are joined - see {@link FileToBytesExporter#readSource(boolean,
+     *                         String)}.
+     * @param fileSeparator    the {@code String} used between files.
+     * @param debounceMillis   quiet time, in milliseconds, after the last event before exporting.
+     *
+     * @throws IOException if the {@link WatchService} cannot be created or any directory cannot be
+     *                     registered.
+     */
+    public ExportWatcher(FileToBytesExporter exporter, File destination,
+                         boolean mustOpenAllFiles, String fileSeparator, long debounceMillis)
+            throws IOException {
+        this(exporter, destination, mustOpenAllFiles, fileSeparator, debounceMillis,
+                debounceMillis * 10);
+    }
+
+    /**
+     * Generates a new watcher.
+     *
+     * @param exporter         exporter with the filename (or glob) and the paths to watch.
+     * @param destination      output file that will be rewritten after every batch of changes.
+     * @param mustOpenAllFiles whether all the subdirectories are watched and all the files found
+     *                         are joined - see {@link FileToBytesExporter#readSource(boolean,
+     *                         String)}.
+     * @param fileSeparator    the {@code String} used between files.
+     * @param debounceMillis   quiet time, in milliseconds, after the last event before exporting.
+     * @param maxDelayMillis   maximum time, in milliseconds, a change waits before being exported
+     *                         when events keep arriving.
+     *
+     * @throws IOException              if the {@link WatchService} cannot be created or any
+     *                                  directory cannot be registered.
+     * @throws IllegalArgumentException if {@code debounceMillis} is negative or {@code
+     *                                  maxDelayMillis} is lower than it.
+     */
+    public ExportWatcher(FileToBytesExporter exporter, File destination,
+                         boolean mustOpenAllFiles, String fileSeparator, long debounceMillis,
+                         long maxDelayMillis) throws IOException {
+        if (debounceMillis < 0 || maxDelayMillis < debounceMillis)
+            throw new IllegalArgumentException("Debounce time must be positive and lower than " +
+                    "the max delay");
+        mExporter = exporter;
+        mDestination = destination;
+        mMustOpenAllFiles = mustOpenAllFiles;
+        mFileSeparator = fileSeparator;
+        mDebounceMillis = debounceMillis;
+        mMaxDelayMillis = maxDelayMillis;
+        mPathMatcher = GlobMatchers.get(exporter.getFilename());
+        mWatchService = FileSystems.getDefault().newWatchService();
+        mKeys = new HashMap<>();
+        mRoots = new HashMap<>();
+        mContents = new HashMap<>();
+        mDiscoverySkipped = Collections.emptyList();
+        mOutputs = new HashSet<>(4);
+        File checkpoint = ResumableExport.checkpointFile(destination);
+        for (File output : new File[]{destination, AtomicFiles.partial(destination), checkpoint,
+                AtomicFiles.partial(checkpoint)})
+            mOutputs.add(normalize(output.toPath()));
+        for (File root : exporter.getSourceRoots()) {
+            Path path = normalize(root.toPath());
+            register(path, path);
+        }
+    }
+
+    /**
+     * Exports all the sources and then waits for changes, exporting again after every batch,
+     * until {@link #close()} is called or the thread is interrupted. Batches that fail are
+     * recorded at {@link #getLastError()}.
+     */
+    @Override
+    public void run() {
+        mIsRunning = true;
+        HashSet<Path> changed = new HashSet<>();
+        boolean mustRescan = true;
+        long firstEvent = System.currentTimeMillis();
+        long lastEvent = 0;
+        try {
+            while (mIsRunning) {
+                long now = System.currentTimeMillis();
+                if (mustRescan || !changed.isEmpty()) {
+                    if (now - lastEvent >= mDebounceMillis || now - firstEvent >= mMaxDelayMillis) {
+                        try {
+                            export(changed, mustRescan);
+                            mLastError = null;
+                        } catch (InterruptedIOException e) {
+                            throw e;
+                        } catch (IOException | FileError e) {
+                            // The failed files were not kept, so the next batch reads them again
+                            mLastError = e;
+                            mSources = null;
+                        }
+                        changed.clear();
+                        mustRescan = false;
+                        continue;
+                    }
+                }
+                WatchKey key = (mustRescan || !changed.isEmpty()) ?
+                        mWatchService.poll(mDebounceMillis, TimeUnit.MILLISECONDS) :
+                        mWatchService.take();
+                if (key == null)
+                    continue;
+                if (!mustRescan && changed.isEmpty())
+                    firstEvent = System.currentTimeMillis();
+                lastEvent = System.currentTimeMillis();
+                mustRescan |= collect(key, changed);
+            }
+        } catch (ClosedWatchServiceException ignored) {
+            // The watcher was closed while waiting for events
+        } catch (InterruptedException | InterruptedIOException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            mIsRunning = false;
+        }
+    }
+
+    /**
+     * Stops watching for changes - if {@link #run()} is being executed, it returns as soon as
+     * possible.
+     *
+     * @throws IOException if the {@link WatchService} cannot be closed.
+     */
+    @Override
+    public void close() throws IOException {
+        mIsRunning = false;
+        mWatchService.close();
+    }
+
+    /**
+     * Obtains whether the watcher is running.
+     *
+     * @return {@code true} while {@link #run()} is being executed.
+     */
+    public boolean isRunning() {
+        return mIsRunning;
+    }
+
+    /**
+     * Obtains the report of the sources read by the last batch - only the files that were read
+     * again are counted.
+     *
+     * @return the {@link IngestionReport}, {@code null} if no batch was exported yet.
+     */
+    public IngestionReport getIngestionReport() {
+        return mIngestionReport;
+    }
+
+    /**
+     * Obtains the error of the last batch.
+     *
+     * @return the {@code Exception} (e.g.: an {@link IngestionException} with the files that could
+     * not be read), {@code null} if the last batch was exported.
+     */
+    public Exception getLastError() {
+        return mLastError;
+    }
+
+    /**
+     * Collects all the events of the given key into {@code changed}, registering the new
+     * directories if all of them are watched.
+     *
+     * @param key     signalled key.
+     * @param changed set where the changed source files are included.
+     *
+     * @return {@code true} if the list of sources must be looked for again (files were created or
+     * deleted, or some events were lost).
+     */
+    private boolean collect(WatchKey key, HashSet<Path> changed) {
+        boolean mustRescan = false;
+        Path directory = mKeys.get(key);
+        for (WatchEvent<?> event : key.pollEvents()) {
+            WatchEvent.Kind<?> kind = event.kind();
+            if (kind == OVERFLOW || directory == null) {
+                mustRescan = true;
+                continue;
+            }
+            Path path = normalize(directory.resolve((Path) event.context()));
+            Path root = mRoots.get(directory);
+            if (kind == ENTRY_CREATE && mMustOpenAllFiles && Files.isDirectory(path)) {
+                try {
+                    mustRescan |= register(path, root);
+                } catch (IOException e) {
+                    // Deleted or unreadable before being registered - discovery reports it
+                    mustRescan = true;
+                }
+            } else if (mPathMatcher.matches(path.getFileName()) && !mOutputs.contains(path) &&
+                    !DiscoveryOptions.isExcluded(
+                            mExporter.getDiscoveryOptions().getExcludeMatchers(), root, path)) {
+                changed.add(path);
+                mustRescan |= kind != ENTRY_MODIFY;
+            }
+        }
+        if (!key.reset()) {
+            mRoots.remove(mKeys.remove(key));
+            mustRescan = true;
+        }
+        return mustRescan;
+    }
+
+    /**
+     * Joins the contents of all the sources and writes them to the destination, reading again
+     * only the changed files if the sources fit at the memory budget.
+     *
+     * @param changed    source files that were modified since the last export.
+     * @param mustRescan whether the list of sources must be looked for again.
+     *
+     * @throws IngestionException if any source cannot be read and the error policy is to fail.
+     * @throws IOException        if the sources cannot be looked for, the data cannot be spilled
+     *                            or the destination cannot be written.
+     */
+    private void export(HashSet<Path> changed, boolean mustRescan) throws IOException {
+        long start = System.nanoTime();
+        if (mustRescan || mSources == null) {
+            ArrayList<IngestionReport.Failure> skipped = new ArrayList<>();
+            try {
+                mSources = mExporter.findSources(mMustOpenAllFiles, skipped);
+            } catch (FileNotFoundException ignored) {
+                // Every source was deleted
+                mSources = new ArrayList<>(0);
+            }
+            mSources.removeIf(source -> mOutputs.contains(normalize(source.toPath())));
+            mDiscoverySkipped = skipped;
+        }
+        long discoveryNanos = System.nanoTime() - start;
+        if (FileToBytesExporter.sizeOf(mSources) >
+                mExporter.getIngestionOptions().getMemoryBudget()) {
+            mContents.clear();
+            try {
+                mExporter.readSources(mSources, mFileSeparator,
+                        new ArrayList<>(mDiscoverySkipped), discoveryNanos);
+            } finally {
+                mIngestionReport = mExporter.getIngestionReport();
+            }
+        } else {
+            readChanged(changed, discoveryNanos);
+        }
+        mExporter.writeObject(mDestination);
+    }
+
+    /**
+     * Reads again the changed sources and the ones that were not kept, and joins the contents of
+     * all of them as the read data of the exporter.
+     *
+     * @param changed        source files that were modified since the last export.
+     * @param discoveryNanos time spent looking for the sources, for the report.
+     *
+     * @throws IngestionException if any source cannot be read and the error policy is to fail -
+     *                            the other ones are kept.
+     * @throws IOException        if the thread is interrupted while reading.
+     */
+    private void readChanged(HashSet<Path> changed, long discoveryNanos) throws IOException {
+        long start = System.nanoTime();
+        HashMap<Path, String> contents = new HashMap<>(mSources.size());
+        ArrayList<File> pending = new ArrayList<>();
+        for (File source : mSources) {
+            Path path = normalize(source.toPath());
+            String content = changed.contains(path) ? null : mContents.get(path);
+            if (content != null)
+                contents.put(path, content);
+            else
+                pending.add(source);
+        }
+        IngestionOptions options = mExporter.getIngestionOptions();
+        SourceReader reader = new SourceReader(mExporter.getThrottle(), options);
+        String[] read = reader.read(pending);
+        for (int i = 0; i < read.length; ++i) {
+            if (read[i] != null)
+                contents.put(normalize(pending.get(i).toPath()), read[i]);
+        }
+        mContents.clear();
+        mContents.putAll(contents);
+        List<IngestionReport.Failure> failures = reader.getFailures();
+        boolean mustFail = !failures.isEmpty() &&
+                options.getErrorPolicy() == DiscoveryOptions.ErrorPolicy.FAIL;
+        ArrayList<IngestionReport.Failure> skipped = new ArrayList<>(mDiscoverySkipped);
+        if (!mustFail)
+            skipped.addAll(failures);
+        IngestionReport report = new IngestionReport(read.length - failures.size(),
+                reader.getReadBytes(), 0, skipped,
+                mustFail ? failures : Collections.<IngestionReport.Failure>emptyList(),
+                discoveryNanos, System.nanoTime() - start);
+        mIngestionReport = report;
+        if (mustFail)
+            throw new IngestionException(String.format("%d of %d source files could not be " +
+                            "read - first one: %s", failures.size(), mSources.size(),
+                    failures.get(0).toString()), failures.get(0).getCause(), report);
+        int files = 0;
+        int length = 0;
+        for (File source : mSources) {
+            String content = mContents.get(normalize(source.toPath()));
+            if (content != null)
+                length += content.length() + (files++ > 0 ? mFileSeparator.length() : 0);
+        }
+        StringBuilder data = new StringBuilder(length);
+        boolean isFirst = true;
+        for (File source : mSources) {
+            String content = mContents.get(normalize(source.toPath()));
+            if (content == null)
+                continue;
+            if (!isFirst)
+                data.append(mFileSeparator);
+            data.append(content);
+            isFirst = false;
+        }
+        mExporter.setReadData(data.toString(), files > 1 ? mFileSeparator : null);
+    }
+
+    /**
+     * Registers the given directory at the {@link WatchService} - if all the subdirectories must
+     * be watched, they are registered too, as long as they are listed by discovery: up to the
+     * {@link DiscoveryOptions#getMaxDepth() max depth} below the root and not excluded.
+     *
+     * @param directory normalized directory to register.
+     * @param root      normalized path of the exporter the directory is found at.
+     *
+     * @return {@code true} if the directory was registered.
+     *
+     * @throws IOException if any directory cannot be registered.
+     */
+    private boolean register(final Path directory, final Path root) throws IOException {
+        DiscoveryOptions options = mExporter.getDiscoveryOptions();
+        final ArrayList<PathMatcher> excludes = options.getExcludeMatchers();
+        if (!directory.equals(root) && DiscoveryOptions.isExcluded(excludes, root, directory))
+            return false;
+        int depth = directory.equals(root) ? 0 : root.relativize(directory).getNameCount();
+        // Discovery lists the contents of the directories less than max depth levels below root
+        int maxDepth = (mMustOpenAllFiles ? options.getMaxDepth() : 1) - depth;
+        if (maxDepth <= 0)
+            return false;
+        EnumSet<FileVisitOption> visitOptions = options.isFollowLinks() ?
+                EnumSet.of(FileVisitOption.FOLLOW_LINKS) :
+                EnumSet.noneOf(FileVisitOption.class);
+        Files.walkFileTree(directory, visitOptions, maxDepth, new SimpleFileVisitor<Path>() {
+            @Override
+            public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs)
+                    throws IOException {
+                Path path = normalize(dir);
+                if (!path.equals(directory) && DiscoveryOptions.isExcluded(excludes, root, path))
+                    return FileVisitResult.SKIP_SUBTREE;
+                mKeys.put(dir.register(mWatchService, ENTRY_CREATE, ENTRY_DELETE, ENTRY_MODIFY),
+                        path);
+                mRoots.put(path, root);
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult visitFileFailed(Path file, IOException exc) {
+                return FileVisitResult.CONTINUE;
+            }
+        });
+        return true;
+    }
+
+    /**
+     * Obtains the absolute and normalized version of the given path, used as key for the contents.
+     *
+     * @param path path to normalize.
+     *
+     * @return the normalized {@code Path}.
+     */
+    private static Path normalize(Path path) {
+        return path.toAbsolutePath().normalize();
+    }
+}
@@ -1,6 +1,7 @@
 package com.github.javinator9889.exporter;
 
 import com.github.javinator9889.error.FileError;
+import com.github.javinator9889.error.IngestionException;
 import com.github.javinator9889.error.InvalidFileSeparatorException;
 import com.github.javinator9889.error.InvalidPathException;
 import com.github.javinator9889.error.MultipleFilesFoundError;
@@ -10,12 +11,16 @@ import java.nio.charset.StandardCharsets;
 import java.nio.file.*;
 import java.nio.file.attribute.BasicFileAttributes;
 import java.security.MessageDigest;
-import java.security.NoSuchAlgorithmException;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.EnumSet;
+import java.util.List;
 import java.util.Objects;
-import java.util.concurrent.atomic.AtomicInteger;
+import java.util.TreeMap;
+import java.util.concurrent.Executor;
+import java.util.stream.Collectors;
 import java.util.stream.IntStream;
 
 /**
@@ -59,8 +64,15 @@ public class FileToBytesExporter implements Cloneable, Serializable {
     private String mFilename;
     private ArrayList<String> mPath;
     private String mReadData;
+    private transient SpillSegments mSpilledData;
     private String mFileSeparator;
     private boolean mMustOpenSourcePath;
+    private DiscoveryOptions mDiscoveryOptions;
+    private ContainerOptions mContainerOptions;
+    private SyncPolicy mSyncPolicy;
+    private IoThrottle mThrottle;
+    private IngestionOptions mIngestionOptions;
+    private transient IngestionReport mIngestionReport;
     private final Object lock = new Lock();
 
     /**
@@ -107,7 +119,9 @@ public class FileToBytesExporter implements Cloneable, Serializable {
      * @param paths              list of paths where to search for the source file.
      */
     public FileToBytesExporter(String filename, boolean mustOpenSourcePath, String... paths) {
-        this(filename, new ArrayList<>(Arrays.asList(paths)), null, null, mustOpenSourcePath);
+        this(filename, new ArrayList<>(Arrays.asList(paths)), null, null, mustOpenSourcePath,
+                new DiscoveryOptions(), new ContainerOptions(), SyncPolicy.ON_PUBLISH,
+                new IoThrottle(), new IngestionOptions());
     }
 
     /**
@@ -118,14 +132,27 @@ public class FileToBytesExporter implements Cloneable, Serializable {
      * @param readData           current read data.
      * @param fileSeparator      current used file separator.
      * @param mustOpenSourcePath whether the source path should be used for searching files.
+     * @param discoveryOptions   options used when looking for the source files.
+     * @param containerOptions   options used when writing containers.
+     * @param syncPolicy         when the exports are forced to the storage device.
+     * @param throttle           limits of the I/O of discovery, reads and writes.
+     * @param ingestionOptions   how the source files that cannot be read are handled.
      */
     private FileToBytesExporter(String filename, ArrayList<String> paths, String readData,
-                                String fileSeparator, boolean mustOpenSourcePath) {
+                                String fileSeparator, boolean mustOpenSourcePath,
+                                DiscoveryOptions discoveryOptions,
+                                ContainerOptions containerOptions, SyncPolicy syncPolicy,
+                                IoThrottle throttle, IngestionOptions ingestionOptions) {
         mFilename = filename;
         mPath = paths;
         mReadData = readData;
         mFileSeparator = fileSeparator;
         mMustOpenSourcePath = mustOpenSourcePath;
+        mDiscoveryOptions = discoveryOptions;
+        mContainerOptions = containerOptions;
+        mSyncPolicy = syncPolicy;
+        mThrottle = throttle;
+        mIngestionOptions = ingestionOptions;
     }
 
     /**
@@ -137,6 +164,15 @@ public class FileToBytesExporter implements Cloneable, Serializable {
         mFilename = filename;
     }
 
+    /**
+     * Obtains the filename (or glob) of the source files.
+     *
+     * @return {@code String} with the filename.
+     */
+    public String getFilename() {
+        return mFilename;
+    }
+
     /**
      * Updates the paths once the {@link FileToBytesExporter class} is created
      *
@@ -155,6 +191,131 @@ public class FileToBytesExporter implements Cloneable, Serializable {
         mMustOpenSourcePath = mustOpenSourcePath;
     }
 
+    /**
+     * Updates the options used when looking for the source files (max depth, max files, excludes,
+     * error policy...).
+     *
+     * @param discoveryOptions new options - cannot be {@code null}.
+     *
+     * @throws NullPointerException if {@code discoveryOptions} is {@code null}.
+     * @see DiscoveryOptions
+     */
+    public void setDiscoveryOptions(DiscoveryOptions discoveryOptions) {
+        mDiscoveryOptions = Objects.requireNonNull(discoveryOptions,
+                "Discovery options cannot be null");
+    }
+
+    /**
+     * Obtains the options used when looking for the source files.
+     *
+     * @return the {@link DiscoveryOptions} in use.
+     */
+    public DiscoveryOptions getDiscoveryOptions() {
+        return mDiscoveryOptions;
+    }
+
+    /**
+     * Updates the options used when writing containers (compression, dictionary...).
+     *
+     * @param containerOptions new options - cannot be {@code null}.
+     *
+     * @throws NullPointerException if {@code containerOptions} is {@code null}.
+     * @see ContainerOptions
+     */
+    public void setContainerOptions(ContainerOptions containerOptions) {
+        mContainerOptions = Objects.requireNonNull(containerOptions,
+                "Container options cannot be null");
+    }
+
+    /**
+     * Obtains the options used when writing containers.
+     *
+     * @return the {@link ContainerOptions} in use.
+     */
+    public ContainerOptions getContainerOptions() {
+        return mContainerOptions;
+    }
+
+    /**
+     * Updates when the exported files are forced to the storage device. Exports are always
+     * written to a temporary file that is atomically renamed to the destination once completed.
+     *
+     * @param syncPolicy new policy - cannot be {@code null}.
+     *
+     * @throws NullPointerException if {@code syncPolicy} is {@code null}.
+     * @see SyncPolicy
+     */
+    public void setSyncPolicy(SyncPolicy syncPolicy) {
+        mSyncPolicy = Objects.requireNonNull(syncPolicy, "Sync policy cannot be null");
+    }
+
+    /**
+     * Obtains when the exported files are forced to the storage device.
+     *
+     * @return the {@link SyncPolicy} in use.
+     */
+    public SyncPolicy getSyncPolicy() {
+        return mSyncPolicy;
+    }
+
+    /**
+     * Updates the limits of the I/O (bytes per second and open files) used when discovering,
+     * reading and writing files. The throttle can be adjusted at any time, even while an export is
+     * running, and it can be shared by several exporters so all of them run under the same limits
+     * - clones of this exporter share it too.
+     *
+     * @param throttle new throttle - cannot be {@code null}.
+     *
+     * @throws NullPointerException if {@code throttle} is {@code null}.
+     * @see IoThrottle
+     */
+    public void setThrottle(IoThrottle throttle) {
+        mThrottle = Objects.requireNonNull(throttle, "Throttle cannot be null");
+    }
+
+    /**
+     * Obtains the limits of the I/O used when discovering, reading and writing files.
+     *
+     * @return the {@link IoThrottle} in use - without limits unless it was updated.
+     */
+    public IoThrottle getThrottle() {
+        return mThrottle;
+    }
+
+    /**
+     * Updates how the source files that cannot be read are handled: how many times their read is
+     * retried and whether they are skipped or make the read fail.
+     *
+     * @param ingestionOptions new options - cannot be {@code null}.
+     *
+     * @throws NullPointerException if {@code ingestionOptions} is {@code null}.
+     * @see IngestionOptions
+     */
+    public void setIngestionOptions(IngestionOptions ingestionOptions) {
+        mIngestionOptions = Objects.requireNonNull(ingestionOptions,
+                "Ingestion options cannot be null");
+    }
+
+    /**
+     * Obtains how the source files that cannot be read are handled.
+     *
+     * @return the {@link IngestionOptions} in use.
+     */
+    public IngestionOptions getIngestionOptions() {
+        return mIngestionOptions;
+    }
+
+    /**
+     * Obtains the report of the last {@link #readSource(boolean, String) read of the sources}:
+     * the read files and bytes, the time it took and the skipped or failed files. When the read
+     * fails, the same report is available at the thrown {@link IngestionException}.
+     *
+     * @return the {@link IngestionReport}, {@code null} if the sources were not read yet.
+     */
+    public IngestionReport getIngestionReport() {
+        return mIngestionReport;
+    }
+
     /**
      * Includes a new path inside the stored paths - if {@link #mPath path} is not created, it
      * generates a new instance by using {@link #setPaths(String...)} method.
@@ -203,6 +364,10 @@ public class FileToBytesExporter implements Cloneable, Serializable {
      * Reads all the sources file that were found at the current paths and inside all the provided
      * paths if {@code mustOpenAllFiles} is {@code true}, appending every file at the end the value
      * passed at {@code fileSeparator}.
+     * <p>
+     * When the found files are bigger than the {@link IngestionOptions#getMemoryBudget() memory
+     * budget}, they are read in groups that fit at it and spilled to temporary segment files,
+     * which {@link #writeObject(File)} streams to the destination.
      *
      * @param mustOpenAllFiles whether if more than one source file was found it must be also read
      *                         and appended at the end of the current file. In addition, if is set
@@ -221,18 +386,230 @@ public class FileToBytesExporter implements Cloneable, Serializable {
      *                                       permissions).
      * @throws FileNotFoundException         when the filename is not found at any of the
      *                                       directories.
+     * @throws IngestionException           when any file cannot be read (even after retrying
+     *                                       it) and the {@link IngestionOptions#getErrorPolicy()
+     *                                       error policy} is to fail - every other file is read
+     *                                       before.
      * @throws IOException                   when looking for a file using glob and any error
      *                                       occurred
-     * @see Glob#match(File, String, boolean)
+     * @see Glob#match(File, String, boolean, DiscoveryOptions, int, IoThrottle, List)
+     * @see #setDiscoveryOptions(DiscoveryOptions)
+     * @see #setIngestionOptions(IngestionOptions)
+     * @see #getIngestionReport()
      */
     public void readSource(boolean mustOpenAllFiles, final String fileSeparator)
             throws IOException {
+        long start = System.nanoTime();
+        ArrayList<IngestionReport.Failure> skipped = new ArrayList<>();
+        ArrayList<File> allFoundFiles = findSources(mustOpenAllFiles, skipped);
+        readSources(allFoundFiles, fileSeparator, skipped, System.nanoTime() - start);
+    }
+
+    /**
+     * Reads the given source files as {@link #readSource(boolean, String)} does once they are
+     * found - retrying, skipping or spilling them as defined by the {@link IngestionOptions} - and
+     * replaces the read data with them.
+     *
+     * @param allFoundFiles  files to read, in order.
+     * @param fileSeparator  the {@code String} used between files.
+     * @param skipped        files and directories skipped while looking for the sources - the
+     *                       files that cannot be read are added if they are skipped too.
+     * @param discoveryNanos time spent looking for the sources, for the report.
+     *
+     * @throws IngestionException when any file cannot be read (even after retrying it) and the
+     *                            {@link IngestionOptions#getErrorPolicy() error policy} is to
+     *                            fail.
+     * @throws IOException        when the read data cannot be spilled.
+     * @see #getIngestionReport()
+     */
+    void readSources(List<File> allFoundFiles, String fileSeparator,
+                     List<IngestionReport.Failure> skipped, long discoveryNanos)
+            throws IOException {
+        long readStart = System.nanoTime();
+        SourceReader reader = new SourceReader(mThrottle, mIngestionOptions);
+        long memoryBudget = mIngestionOptions.getMemoryBudget();
+        SpillSegments spilledData = null;
+        String[] contents = null;
+        List<IngestionReport.Failure> failures;
+        int readFiles;
+        long readBytes;
+        if (sizeOf(allFoundFiles) <= memoryBudget) {
+            contents = reader.read(allFoundFiles);
+            failures = reader.getFailures();
+            readFiles = contents.length - failures.size();
+            readBytes = reader.getReadBytes();
+        } else {
+            // Every group of files that fits at the budget is read and spilled before the next one
+            spilledData = new SpillSegments(mIngestionOptions.getSpillDirectory());
+            failures = new ArrayList<>();
+            readFiles = 0;
+            readBytes = 0;
+            try {
+                for (List<File> group : groupBySize(allFoundFiles, memoryBudget)) {
+                    String[] groupContents = reader.read(group);
+                    failures.addAll(reader.getFailures());
+                    readBytes += reader.getReadBytes();
+                    ArrayList<String> parts = new ArrayList<>(groupContents.length * 2);
+                    for (String content : groupContents) {
+                        if (content == null)
+                            continue;
+                        if (readFiles++ > 0)
+                            parts.add(fileSeparator);
+                        parts.add(content);
+                    }
+                    spilledData.append(parts);
+                }
+            } catch (IOException | RuntimeException e) {
+                spilledData.release();
+                throw e;
+            }
+        }
+        boolean mustFail = !failures.isEmpty() &&
+                mIngestionOptions.getErrorPolicy() == DiscoveryOptions.ErrorPolicy.FAIL;
+        if (!mustFail)
+            skipped.addAll(failures);
+        IngestionReport report = new IngestionReport(readFiles, readBytes,
+                spilledData != null ? spilledData.getUtfLength() : 0, skipped,
+                mustFail ? failures : Collections.<IngestionReport.Failure>emptyList(),
+                discoveryNanos, System.nanoTime() - readStart);
+        mIngestionReport = report;
+        if (mustFail) {
+            if (spilledData != null)
+                spilledData.release();
+            throw new IngestionException(String.format("%d of %d source files could not be " +
+                            "read - first one: %s", failures.size(), allFoundFiles.size(),
+                    failures.get(0).toString()), failures.get(0).getCause(), report);
+        }
+        String separator = readFiles > 1 ? fileSeparator : null;
+        if (spilledData != null) {
+            replaceData(null, spilledData, separator);
+            return;
+        }
+        int length = fileSeparator.length() * Math.max(readFiles - 1, 0);
+        for (String content : contents)
+            length += content != null ? content.length() : 0;
+        final StringBuilder results = new StringBuilder(length);
+        boolean isFirst = true;
+        // Every content is released once appended, so the heap holds about one copy of the data
+        for (int i = 0; i < contents.length; ++i) {
+            if (contents[i] == null)
+                continue;
+            if (!isFirst)
+                results.append(fileSeparator);
+            results.append(contents[i]);
+            contents[i] = null;
+            isFirst = false;
+        }
+        replaceData(results.toString(), null, separator);
+    }
+
+    /**
+     * Obtains the total size of the given files.
+     *
+     * @param files files to measure.
+     *
+     * @return {@code long} with the number of bytes - files that cannot be accessed count as
+     * empty.
+     */
+    static long sizeOf(List<File> files) {
+        long size = 0;
+        for (File file : files)
+            size += file.length();
+        return size;
+    }
+
+    /**
+     * Splits the given files, keeping their order, into groups whose size does not exceed the
+     * given budget - a file bigger than the budget is a group by itself.
+     *
+     * @param files  files to split.
+     * @param budget maximum size of a group, in bytes.
+     *
+     * @return {@code List} with the groups.
+     */
+    private static List<List<File>> groupBySize(List<File> files, long budget) {
+        List<List<File>> groups = new ArrayList<>();
+        List<File> group = new ArrayList<>();
+        long groupSize = 0;
+        for (File file : files) {
+            long size = file.length();
+            if (!group.isEmpty() && groupSize + size > budget) {
+                groups.add(group);
+                group = new ArrayList<>();
+                groupSize = 0;
+            }
+            group.add(file);
+            groupSize += size;
+        }
+        if (!group.isEmpty())
+            groups.add(group);
+        return groups;
+    }
+
+    /**
+     * Replaces the read data, releasing the spilled segments of the previous one (if any).
+     *
+     * @param readData      the new data - {@code null} if it was spilled.
+     * @param spilledData   the segments of the new data - {@code null} if it is kept in memory.
+     * @param fileSeparator the separator used between files - {@code null} if only one file was
+     *                      read.
+     */
+    private void replaceData(String readData, SpillSegments spilledData, String fileSeparator) {
+        if (mSpilledData != null)
+            mSpilledData.release();
+        mReadData = readData;
+        mSpilledData = spilledData;
+        mFileSeparator = fileSeparator;
+    }
+
+    /**
+     * Looks for all the source files at the current paths (and at the source directory if it was
+     * requested), in the same order they will be read and appended.
+     *
+     * @param mustOpenAllFiles whether more than one source file can be found - if set to {@code
+     *                         true}, it will navigate through all the child directories too.
+     *
+     * @return {@code ArrayList} with the found files - never empty.
+     *
+     * @throws MultipleFilesFoundError if multiple files were found and {@code mustOpenAllFiles} is
+     *                                 {@code false}.
+     * @throws InvalidPathException    when one of the provided paths does not exists or any other
+     *                                 error happened (like having not enough permissions).
+     * @throws FileNotFoundException   when the filename is not found at any of the directories.
+     * @throws IOException             when looking for a file using glob and any error occurred
+     */
+    ArrayList<File> findSources(boolean mustOpenAllFiles) throws IOException {
+        return findSources(mustOpenAllFiles, null);
+    }
+
+    /**
+     * Looks for all the source files at the current paths (and at the source directory if it was
+     * requested), in the same order they will be read and appended, collecting the files and
+     * directories skipped by the {@link DiscoveryOptions#getErrorPolicy() error policy}.
+     *
+     * @param mustOpenAllFiles whether more than one source file can be found - if set to {@code
+     *                         true}, it will navigate through all the child directories too.
+     * @param skipped          receives the files and directories that could not be visited and
+     *                         were skipped - {@code null} for not collecting them.
+     *
+     * @return {@code ArrayList} with the found files - never empty.
+     *
+     * @throws MultipleFilesFoundError if multiple files were found and {@code mustOpenAllFiles} is
+     *                                 {@code false}.
+     * @throws InvalidPathException    when one of the provided paths does not exists or any other
+     *                                 error happened (like having not enough permissions).
+     * @throws FileNotFoundException   when the filename is not found at any of the directories.
+     * @throws IOException             when looking for a file using glob and any error occurred
+     */
+    ArrayList<File> findSources(boolean mustOpenAllFiles, List<IngestionReport.Failure> skipped)
+            throws IOException {
         boolean isAnyPathProvided = mPath.size() > 0;
         int foundFilesInSrc = 0;
         ArrayList<File> filesInSrcDir = new ArrayList<>(0);
         if (mMustOpenSourcePath) {
             File srcDir = Paths.get(".").toFile();
-            filesInSrcDir = Glob.match(srcDir, mFilename, mustOpenAllFiles);
+            filesInSrcDir = Glob.match(srcDir, mFilename, mustOpenAllFiles, mDiscoveryOptions,
+                    mDiscoveryOptions.getMaxFiles(), mThrottle, skipped);
             foundFilesInSrc = filesInSrcDir != null ? filesInSrcDir.size() : 0;
             if (foundFilesInSrc == 0 && !isAnyPathProvided)
                 throw new FileNotFoundException(String.format("The file (or glob) \"%s\" was not " +
@@ -253,7 +630,11 @@ public class FileToBytesExporter implements Cloneable, Serializable {
                 if (!currentPath.exists())
                     throw new InvalidPathException(String.format("Path \"%s\" does not exist",
                             path));
-                ArrayList<File> filesFound = Glob.match(currentPath, mFilename, mustOpenAllFiles);
+                int remainingFiles = mDiscoveryOptions.getMaxFiles() - allFoundFiles.size();
+                if (remainingFiles <= 0)
+                    break;
+                ArrayList<File> filesFound = Glob.match(currentPath, mFilename, mustOpenAllFiles,
+                        mDiscoveryOptions, remainingFiles, mThrottle, skipped);
                 int foundFiles = filesFound != null ? filesFound.size() : 0;
                 if (foundFiles > 0 && !mustOpenAllFiles)
                     throw new MultipleFilesFoundError(String.format("Multiple files with the same" +
@@ -267,35 +648,44 @@ public class FileToBytesExporter implements Cloneable, Serializable {
         if (allFoundFiles.size() == 0)
             throw new FileNotFoundException(String.format("No file with name \"%s\" was found at " +
                     "any of the provided directories", mFilename));
-        final StringBuilder results = new StringBuilder(allFoundFiles.size());
-        final AtomicInteger currentAddedString = new AtomicInteger(0);
-        IntStream.range(0, allFoundFiles.size()).parallel().forEachOrdered(i -> {
-            File currentFile = allFoundFiles.get(i);
-            try {
-                BufferedReader reader = new BufferedReader(new FileReader(currentFile));
-                String line;
-                while ((line = reader.readLine()) != null) {
-                    while (i != currentAddedString.get()) {
-                        synchronized (lock) { // for adding files at the found order
-                            lock.wait();
-                        }
-                    }
-                    results.append(line).append("\n");
-                }
-            } catch (IOException ignored) {
-                // This will never happen as we have ensured that all files exists
-            } catch (InterruptedException e) {
-                System.err.println("Interruption while executing! - Thread #" + i);
-            }
-            if (i < (allFoundFiles.size() - 1))
-                results.append(fileSeparator);
-            currentAddedString.incrementAndGet();
-            synchronized (lock) {
-                lock.notifyAll();
-            }
-        });
-        mReadData = results.toString();
-        mFileSeparator = allFoundFiles.size() > 1 ? fileSeparator : null;
+        return allFoundFiles;
+    }
+
+    /**
+     * Obtains the directories where the source files are looked for: the source directory (if it
+     * must be opened) followed by all the provided paths.
+     *
+     * @return {@code ArrayList} with the roots, in the same order they are inspected.
+     */
+    ArrayList<File> getSourceRoots() {
+        ArrayList<File> roots = new ArrayList<>(mPath.size() + 1);
+        if (mMustOpenSourcePath)
+            roots.add(Paths.get(".").toFile());
+        for (String path : mPath)
+            roots.add(new File(path));
+        return roots;
+    }
+
+    /**
+     * Obtains the directory the container entries are named against - see {@link
+     * Container#namingRoot(List)}.
+     *
+     * @return the absolute root {@code File}.
+     */
+    File getEntryRoot() {
+        return Container.namingRoot(getSourceRoots());
+    }
+
+    /**
+     * Updates the read data and the file separator used for joining it - used by the classes of
+     * this package that produce the data by themselves (e.g.: {@link ExportWatcher}).
+     *
+     * @param readData      the new data.
+     * @param fileSeparator the separator used between files - {@code null} if only one file was
+     *                      read.
+     */
+    void setReadData(String readData, String fileSeparator) {
+        replaceData(readData, null, fileSeparator);
     }
 
     /**
@@ -308,23 +698,33 @@ public class FileToBytesExporter implements Cloneable, Serializable {
      * @throws IOException if the file does not exists or there is any error while reading it.
      */
     public static String readSource(File source) throws IOException {
-        StringBuilder result = new StringBuilder();
-        try (BufferedReader reader = new BufferedReader(new FileReader(source))) {
-            String currentLine;
-            while ((currentLine = reader.readLine()) != null) {
-                result.append(currentLine).append("\n");
-            }
-        }
-        return result.toString();
+        if (!source.isFile())
+            throw new FileNotFoundException(String.format("File \"%s\" does not exists.",
+                    source.toString()));
+        SourceReader reader = new SourceReader();
+        String content = reader.read(Collections.singletonList(source))[0];
+        if (content == null)
+            throw reader.getFailures().get(0).getCause();
+        return content;
     }
 
     /**
-     * Obtains all the read data obtained after executing {@link #readSource()} methods
+     * Obtains all the read data obtained after executing {@link #readSource()} methods. If the
+     * data was {@link IngestionOptions#setMemoryBudget(long) spilled}, it is loaded from the
+     * segment files, so it must fit at the heap - write it with {@link #writeObject(File)} instead.
      *
      * @return {@code String} with the data
+     *
+     * @throws FileError if the spilled data cannot be read.
      */
     public String getReadData() {
-        return mReadData;
+        if (mSpilledData == null)
+            return mReadData;
+        try {
+            return mSpilledData.read();
+        } catch (IOException e) {
+            throw new FileError("The spilled data cannot be read", e);
+        }
     }
 
     /**
@@ -341,6 +741,10 @@ public class FileToBytesExporter implements Cloneable, Serializable {
      * Writes the read object to the specified destination given at {@code destination}. If it does
      * not exists, {@code com.github.javinator9889.exporter.FileToBytesExporter} will create all the
      * necessary directories in order to work as expected.
+     * <p>
+     * The object is written to a temporary file that <b>atomically</b> replaces the destination
+     * once completed, so readers never find a partially written file - see {@link
+     * #setSyncPolicy(SyncPolicy)}.
      *
      * @param destination relative or complete path to the output file - cannot be only dir.
      *
@@ -348,25 +752,17 @@ public class FileToBytesExporter implements Cloneable, Serializable {
      *                     the file.
      */
     public void writeObject(File destination) throws IOException {
-        if (!destination.exists()) {
-            if (destination.isDirectory()) {
-                if (!destination.mkdirs()) {
-                    throw new IOException(String.format("Impossible to create the required " +
-                                    "directories and file for the specified location: \"%s\"",
-                            destination.toString()));
-                }
-            } else {
-                if (!destination.createNewFile()) {
-                    throw new IOException(String.format("Impossible to create the required " +
-                                    "directories and file for the specified location: \"%s\"",
-                            destination.toString()));
-                }
-            }
-        }
+        File parent = destination.getAbsoluteFile().getParentFile();
+        if (!parent.isDirectory() && !parent.mkdirs())
+            throw new IOException(String.format("Impossible to create the required " +
+                    "directories and file for the specified location: \"%s\"",
+                    destination.toString()));
         if (destination.isDirectory())
             throw new IOException(String.format("Destination file \"%s\" is a directory, not a " +
                     "file.", destination.toString()));
-        writeObject(new FileOutputStream(destination));
+        File partial = AtomicFiles.partial(destination);
+        writeObject(mThrottle.wrap(new FileOutputStream(partial)));
+        AtomicFiles.publish(partial, destination, mSyncPolicy);
     }
 
     /**
@@ -381,10 +777,15 @@ public class FileToBytesExporter implements Cloneable, Serializable {
      * @throws IOException when there is an error while writing the file.
      */
     public void writeObject(OutputStream destination) throws IOException {
-        try (ObjectOutputStream outputStream = new ObjectOutputStream(destination)) {
+        try (OutputStream outputStream = destination) {
+            if (mSpilledData != null) {
+                SerializedStrings.write(outputStream, new String[]{mFileSeparator,
+                        mSpilledData.getHash()}, mSpilledData);
+                return;
+            }
             String hash = getHash(mReadData);
             String[] output = new String[]{mFileSeparator, hash, mReadData};
-            outputStream.writeObject(output);
+            SerializedStrings.write(outputStream, output);
         }
     }
 
@@ -395,17 +796,18 @@ public class FileToBytesExporter implements Cloneable, Serializable {
      *
      * @param source      the source that will be wrote to the destination - use {@link
      *                    FileToBytesExporter#readSource(File)} for obtaining the data.
-     * @param destination relative or complete path to the output file - cannot be only dir.
+     * @param destination relative or complete path to the output file - cannot be only dir. It is
+     *                    atomically replaced once the object is completely written.
      *
      * @throws IOException when there is an error by creating necessary directories or by writing
      *                     the file.
      */
     public static void writeObject(String source, File destination) throws IOException {
-        if (!destination.exists())
-            destination.createNewFile();
         if (destination.isDirectory())
             throw new IOException("Destination cannot be only a directory");
-        writeObject(source, new FileOutputStream(destination));
+        File partial = AtomicFiles.partial(destination);
+        writeObject(source, new FileOutputStream(partial));
+        AtomicFiles.publish(partial, destination, SyncPolicy.ON_PUBLISH);
     }
 
     /**
@@ -422,13 +824,178 @@ public class FileToBytesExporter implements Cloneable, Serializable {
      * @throws IOException when there is an error while writing the file.
      */
     public static void writeObject(String source, OutputStream destination) throws IOException {
-        try (ObjectOutputStream outputStream = new ObjectOutputStream(destination)) {
+        try (OutputStream outputStream = destination) {
             String hash = getHash(source);
             String[] output = new String[]{"", hash, source};
-            outputStream.writeObject(output);
+            SerializedStrings.write(outputStream, output);
         }
     }
 
+    /**
+     * Looks for all the source files (as {@link #readSource(boolean)} does) and writes them to the
+     * given container, <b>streaming</b> every file as an independent entry named by its path
+     * relative to the inspected directory (or to the deepest directory that contains all of them,
+     * if there are several) - the files are not loaded into memory and their bytes are kept as
+     * they are. Entries are stored as defined by the {@link #setContainerOptions(ContainerOptions)
+     * container options}.
+     * <p>
+     * The container is written to a temporary file that atomically replaces the destination once
+     * completed. If the export is interrupted (e.g.: the process crashes), exporting again the
+     * same sources to the same destination resumes it after its last checkpoint, without reading
+     * again the files that were already written - see {@link
+     * ContainerOptions#setCheckpointInterval(int)} and {@link #setSyncPolicy(SyncPolicy)}.
+     *
+     * @param destination      container file - it is created (or replaced if it exists).
+     * @param mustOpenAllFiles whether if more than one source file was found it must be also
+     *                         written, navigating through all the child directories.
+     *
+     * @return {@code List} with the written entries.
+     *
+     * @throws MultipleFilesFoundError if multiple files were found and {@code mustOpenAllFiles} is
+     *                                 {@code false}.
+     * @throws InvalidPathException    when one of the provided paths does not exists.
+     * @throws FileNotFoundException   when the filename is not found at any of the directories.
+     * @throws IOException             when any file cannot be read or the container cannot be
+     *                                 written.
+     * @see ContainerReader
+     */
+    public List<ContainerEntry> exportContainer(File destination, boolean mustOpenAllFiles)
+            throws IOException {
+        ArrayList<File> sources = findSources(mustOpenAllFiles);
+        return ResumableExport.write(destination, sources, getEntryRoot(), getWriteOptions(sources),
+                mSyncPolicy, mThrottle);
+    }
+
+    /**
+     * Looks for all the source files (as {@link #readSource(boolean)} does) and distributes them
+     * across {@code shards} containers that are <b>written concurrently</b>, followed by a {@link
+     * ShardManifest manifest} that describes the logical export. The shards are written next to
+     * the manifest, named after it ({@code manifest.0}, {@code manifest.1}...). Every shard is
+     * written and resumed as {@link #exportContainer(File, boolean)} does.
+     *
+     * @param manifest         manifest file - written once all the shards are completed.
+     * @param shards           number of containers - must be greater than zero.
+     * @param strategy         how the files are distributed across the shards.
+     * @param mustOpenAllFiles whether if more than one source file was found it must be also
+     *                         written, navigating through all the child directories.
+     *
+     * @return the written {@link ShardManifest}.
+     *
+     * @throws IllegalArgumentException if {@code shards} is lower than one.
+     * @throws MultipleFilesFoundError  if multiple files were found and {@code mustOpenAllFiles}
+     *                                  is {@code false}.
+     * @throws InvalidPathException     when one of the provided paths does not exists.
+     * @throws FileNotFoundException    when the filename is not found at any of the directories.
+     * @throws IOException              when any file cannot be read or any shard cannot be
+     *                                  written.
+     * @see ShardedContainerReader
+     */
+    public ShardManifest exportShards(final File manifest, int shards, ShardingStrategy strategy,
+                                      boolean mustOpenAllFiles) throws IOException {
+        if (shards < 1)
+            throw new IllegalArgumentException("The number of shards must be greater than zero");
+        final ArrayList<File> sources = findSources(mustOpenAllFiles);
+        final File root = getEntryRoot();
+        final int[] assignment = strategy.assign(sources, root, shards);
+        final ContainerOptions options = getWriteOptions(sources);
+        final SyncPolicy syncPolicy = mSyncPolicy;
+        final IoThrottle throttle = mThrottle;
+        final ArrayList<File> shardFiles = new ArrayList<>(shards);
+        for (int shard = 0; shard < shards; ++shard)
+            shardFiles.add(ShardManifest.shardFile(manifest, shard));
+        Platform.forEach(IntStream.range(0, shards).boxed().collect(Collectors.toList()),
+                shard -> {
+                    ArrayList<File> shardSources = new ArrayList<>();
+                    for (int i = 0; i < assignment.length; ++i) {
+                        if (assignment[i] == shard)
+                            shardSources.add(sources.get(i));
+                    }
+                    ResumableExport.write(shardFiles.get(shard), shardSources, root, options,
+                            syncPolicy, throttle);
+                });
+        ShardManifest shardManifest = new ShardManifest(manifest, shardFiles, assignment);
+        shardManifest.write(mSyncPolicy);
+        return shardManifest;
+    }
+
+    /**
+     * Looks for all the source files (as {@link #readSource(boolean)} does) and obtains a
+     * publisher of their raw data, chunk by chunk, that only reads the chunks requested by its
+     * subscribers. Chunks are read at the shared executor for blocking I/O: virtual threads when
+     * the JVM supports them, the common pool otherwise.
+     *
+     * @param mustOpenAllFiles whether if more than one source file was found it must be also
+     *                         published, navigating through all the child directories.
+     *
+     * @return the {@link ChunkPublisher}, with the entries named by their relative paths.
+     *
+     * @throws MultipleFilesFoundError if multiple files were found and {@code mustOpenAllFiles} is
+     *                                 {@code false}.
+     * @throws InvalidPathException    when one of the provided paths does not exists.
+     * @throws FileNotFoundException   when the filename is not found at any of the directories.
+     * @see #publishSources(boolean, Executor)
+     */
+    public ChunkPublisher publishSources(boolean mustOpenAllFiles) throws IOException {
+        return publishSources(mustOpenAllFiles, Platform.blockingExecutor());
+    }
+
+    /**
+     * Looks for all the source files (as {@link #readSource(boolean)} does) and obtains a
+     * publisher of their raw data, chunk by chunk, that only reads the chunks requested by its
+     * subscribers - so slow consumers never make the whole sources be loaded into memory.
+     *
+     * @param mustOpenAllFiles whether if more than one source file was found it must be also
+     *                         published, navigating through all the child directories.
+     * @param executor         executor where the chunks are read and published.
+     *
+     * @return the {@link ChunkPublisher}, with the entries named by their relative paths.
+     *
+     * @throws MultipleFilesFoundError if multiple files were found and {@code mustOpenAllFiles} is
+     *                                 {@code false}.
+     * @throws InvalidPathException    when one of the provided paths does not exists.
+     * @throws FileNotFoundException   when the filename is not found at any of the directories.
+     */
+    public ChunkPublisher publishSources(boolean mustOpenAllFiles, Executor executor)
+            throws IOException {
+        final ArrayList<File> sources = findSources(mustOpenAllFiles);
+        final File root = getEntryRoot();
+        final IoThrottle throttle = mThrottle;
+        return new ChunkPublisher(new ChunkPublisher.Source() {
+            @Override
+            public int size() {
+                return sources.size();
+            }
+
+            @Override
+            public String name(int index) {
+                return Container.entryName(root, sources.get(index));
+            }
+
+            @Override
+            public InputStream open(int index) throws IOException {
+                return throttle.open(sources.get(index));
+            }
+        }, executor);
+    }
+
+    /**
+     * Obtains the options for writing the given sources into containers, training the dictionary
+     * from a sample of them, read through the throttle, if it was requested.
+     *
+     * @param sources files that are going to be written.
+     *
+     * @return {@link ContainerOptions} for the writers.
+     *
+     * @throws IOException if any sampled file cannot be read.
+     */
+    private ContainerOptions getWriteOptions(List<File> sources) throws IOException {
+        ContainerOptions options = (ContainerOptions) mContainerOptions.clone();
+        if (options.isTrainDictionary() && options.getDictionary() == null)
+            options.setDictionary(DictionaryTrainer.train(sources, options.getDictionarySize(),
+                    mThrottle));
+        return options;
+    }
+
     /**
      * Reads the data contained at {@code source} obtaining its {@link #mFileSeparator file
      * separator} (used if more than one file was read) and the {@link #mReadData file data}.
@@ -474,9 +1041,8 @@ public class FileToBytesExporter implements Cloneable, Serializable {
     public void readObject(InputStream source) throws IOException, ClassCastException {
         try (ObjectInputStream inputStream = new ObjectInputStream(source)) {
             String[] input = (String[]) inputStream.readObject();
-            mFileSeparator = input[0];
+            replaceData(input[2], null, input[0]);
             String obtainedHash = input[1];
-            mReadData = input[2];
             String generatedHash = getHash(mReadData);
             if (!obtainedHash.equals(generatedHash))
                 throw new FileError(String.format("Hashes are not equal! - file probably has been" +
@@ -491,9 +1057,8 @@ public class FileToBytesExporter implements Cloneable, Serializable {
     /**
      * Obtains the hash of the specified {@code source} by using {@link
      * MessageDigest#digest(byte[])} method, generating a {@link MessageDigest#getInstance(String)
-     * SHA-256 hash}. If it fails because {@link NoSuchAlgorithmException no SHA-256 hashing
-     * algorithm} was found, it just returns the {@link String#hashCode()} casted to {@code
-     * String}.<p>
+     * SHA-256 hash}. The digest is cloned from a shared one, so the provider is only looked up
+     * once per process (every Java platform is required to support SHA-256).<p>
      *
      * You can {@code @Override} this method if you inherit from {@code FileToBytesExporter} if you
      * need any other {@link StandardCharsets} charset.
@@ -503,14 +1068,10 @@ public class FileToBytesExporter implements Cloneable, Serializable {
      * @return {@code String} with the SHA-256 hash of {@code source}.
      */
     protected static String getHash(String source) {
-        try {
-            MessageDigest digest = MessageDigest.getInstance("SHA-256");
-            byte[] sourceBytes = source.getBytes(StandardCharsets.UTF_8);
-            byte[] byteSourceStringHash = digest.digest(sourceBytes);
-            return new String(byteSourceStringHash);
-        } catch (NoSuchAlgorithmException ignored) {
-            return String.valueOf(source.hashCode());
-        }
+        MessageDigest digest = Container.newDigest();
+        byte[] sourceBytes = source.getBytes(StandardCharsets.UTF_8);
+        byte[] byteSourceStringHash = digest.digest(sourceBytes);
+        return new String(byteSourceStringHash);
     }
 
     /**
@@ -558,8 +1119,8 @@ public class FileToBytesExporter implements Cloneable, Serializable {
         return Objects.equals(mFilename, exporter.mFilename) &&
                 Objects.equals(mPath, exporter.mPath) &&
                 Objects.equals(mReadData, exporter.mReadData) &&
-                Objects.equals(mFileSeparator, exporter.mFileSeparator) &&
-                Objects.equals(lock, exporter.lock);
+                Objects.equals(getSpilledHash(), exporter.getSpilledHash()) &&
+                Objects.equals(mFileSeparator, exporter.mFileSeparator);
     }
 
     /**
@@ -594,7 +1155,17 @@ public class FileToBytesExporter implements Cloneable, Serializable {
      */
     @Override
     public int hashCode() {
-        return Objects.hash(mFilename, mPath, mReadData, mFileSeparator, lock);
+        return Objects.hash(mFilename, mPath, mReadData, getSpilledHash(), mFileSeparator);
+    }
+
+    /**
+     * Obtains the hash of the spilled data, so exporters holding the same spilled data are equal
+     * without comparing (nor loading) it.
+     *
+     * @return {@code String} with the hash, {@code null} if the data is not spilled.
+     */
+    private String getSpilledHash() {
+        return mSpilledData != null ? mSpilledData.getHash() : null;
     }
 
     /**
@@ -646,7 +1217,52 @@ public class FileToBytesExporter implements Cloneable, Serializable {
      */
     @Override
     protected Object clone() {
-        return new FileToBytesExporter(mFilename, mPath, mReadData, mFileSeparator, mMustOpenSourcePath);
+        FileToBytesExporter clone = new FileToBytesExporter(mFilename, mPath, mReadData,
+                mFileSeparator, mMustOpenSourcePath, (DiscoveryOptions) mDiscoveryOptions.clone(),
+                (ContainerOptions) mContainerOptions.clone(), mSyncPolicy, mThrottle,
+                (IngestionOptions) mIngestionOptions.clone());
+        // Both share the spilled segments, which are deleted once both replace their data
+        if (mSpilledData != null)
+            clone.mSpilledData = mSpilledData.retain();
+        return clone;
+    }
+
+    /**
+     * Serializes this exporter - the {@link IngestionOptions#setMemoryBudget(long) spilled} data
+     * is streamed after the fields, as it is not kept at the heap.
+     *
+     * @param output stream where the exporter is written.
+     *
+     * @throws IOException if the exporter cannot be written or the spilled data cannot be read.
+     */
+    private void writeObject(ObjectOutputStream output) throws IOException {
+        output.defaultWriteObject();
+        output.writeBoolean(mSpilledData != null);
+        if (mSpilledData != null) {
+            output.writeUTF(mSpilledData.getHash());
+            output.writeLong(mSpilledData.getUtfLength());
+            mSpilledData.copyTo(output, new byte[8192]);
+        }
+    }
+
+    /**
+     * Deserializes an exporter - its spilled data is written to new segments at the {@link
+     * IngestionOptions#setSpillDirectory(File) spill directory}, so it stays out of the heap.
+     *
+     * @param input stream where the exporter is read from.
+     *
+     * @throws IOException            if the exporter cannot be read or the spilled data cannot be
+     *                                written.
+     * @throws ClassNotFoundException if the class of any field cannot be found.
+     */
+    private void readObject(ObjectInputStream input) throws IOException, ClassNotFoundException {
+        input.defaultReadObject();
+        if (input.readBoolean()) {
+            String hash = input.readUTF();
+            long utfLength = input.readLong();
+            mSpilledData = SpillSegments.copyOf(input, utfLength, hash,
+                    mIngestionOptions.getSpillDirectory());
+        }
     }
 
 
@@ -675,13 +1291,27 @@ public class FileToBytesExporter implements Cloneable, Serializable {
     /**
      * Private custom class for synchronizing monitor locks.
      */
-    private static final class Lock {
+    private static final class Lock implements Serializable {
     }
 
     /**
      * Class for searching and obtaining files that corresponds to a custom glob.
      */
     private static final class Glob {
+        /**
+         * Order of the {@link DiscoveryOptions#isSorted() sorted} files: their relative paths are
+         * compared name by name, and a directory goes before all its contents.
+         */
+        static final Comparator<Path> PATH_ORDER = (first, second) -> {
+            int names = Math.min(first.getNameCount(), second.getNameCount());
+            for (int i = 0; i < names; ++i) {
+                int order = first.getName(i).toString().compareTo(second.getName(i).toString());
+                if (order != 0)
+                    return order;
+            }
+            return Integer.compare(first.getNameCount(), second.getNameCount());
+        };
+
         /**
          * <p>
          * Matches all files corresponding the specified glob (
@@ -703,8 +1333,19 @@ public class FileToBytesExporter implements Cloneable, Serializable {
          *                           sequence</a>. It cannot be {@code null} or an empty String
          *                           {@code ""}.
          * @param mustInspectAllDirs if set to {@code true}, it will navigate through the entire
-         *                           dirs and subdirectories, looking for the specified file. Else,
-         *                           it will just look for the files at current folder.
+         *                           dirs and subdirectories (up to {@link
+         *                           DiscoveryOptions#getMaxDepth() max depth}), looking for the
+         *                           specified file. Else, it will just look for the files at
+         *                           current folder.
+         * @param options            options that bound the search - excluded directories are
+         *                           pruned and never walked. If the files are sorted, they are
+         *                           returned in {@link #PATH_ORDER}.
+         * @param maxFiles           maximum number of files to find - once reached, the search
+         *                           stops (unless the files are sorted: then, the first ones in
+         *                           order are kept).
+         * @param throttle           throttle whose budget is consumed by the visited entries.
+         * @param skipped            receives the files and directories skipped by the error
+         *                           policy - can be {@code null}.
          *
          * @return {@code ArrayList} with the found files, {@code null} if no files were found.
          *
@@ -715,21 +1356,31 @@ public class FileToBytesExporter implements Cloneable, Serializable {
          *                                  is {@code null}.
          * @throws IllegalArgumentException when the {@code glob} is {@code null} or an empty String
          *                                  {@code ""}.
+         * @throws FileError                when a file cannot be visited and the {@link
+         *                                  DiscoveryOptions#getErrorPolicy() error policy} is
+         *                                  {@link DiscoveryOptions.ErrorPolicy#FAIL}.
          */
         static ArrayList<File> match(final File workingDirectory, final String glob,
-                                     boolean mustInspectAllDirs)
+                                     boolean mustInspectAllDirs, DiscoveryOptions options,
+                                     int maxFiles, IoThrottle throttle,
+                                     List<IngestionReport.Failure> skipped)
                 throws IOException {
             if (workingDirectory == null || !workingDirectory.exists())
                 throw new InvalidPathException("The provided working directory is not valid!");
             if (glob == null || glob.equals(""))
                 throw new IllegalArgumentException("The provided glob is not valid!");
-            final PathMatcher pathMatcher =
-                    FileSystems.getDefault().getPathMatcher("glob:" + glob);
+            final PathMatcher pathMatcher = GlobMatchers.get(glob);
+            final ArrayList<PathMatcher> excludes = options.getExcludeMatchers();
             final ArrayList<File> matches = new ArrayList<>(100);
-            int maxDepth = mustInspectAllDirs ? Integer.MAX_VALUE : 1;
-            EnumSet<FileVisitOption> options = EnumSet.of(FileVisitOption.FOLLOW_LINKS);
-            Visitor<Path> fileVisitor = new Visitor<>(pathMatcher, matches);
-            Files.walkFileTree(workingDirectory.toPath(), options, maxDepth, fileVisitor);
+            int maxDepth = mustInspectAllDirs ? options.getMaxDepth() : 1;
+            EnumSet<FileVisitOption> visitOptions = options.isFollowLinks() ?
+                    EnumSet.of(FileVisitOption.FOLLOW_LINKS) :
+                    EnumSet.noneOf(FileVisitOption.class);
+            Path root = workingDirectory.toPath();
+            Visitor<Path> fileVisitor = new Visitor<>(pathMatcher, matches, root, excludes,
+                    options.getErrorPolicy(), maxFiles, throttle, skipped, options.isSorted());
+            Files.walkFileTree(root, visitOptions, maxDepth, fileVisitor);
+            fileVisitor.collectSorted();
             matches.trimToSize();
             return matches.size() > 0 ? matches : null;
         }
@@ -745,6 +1396,13 @@ public class FileToBytesExporter implements Cloneable, Serializable {
         private static final class Visitor<E extends Path> extends SimpleFileVisitor<E> {
             private PathMatcher mPathMatcher;
             private ArrayList<File> mMatches;
+            private Path mRoot;
+            private ArrayList<PathMatcher> mExcludes;
+            private DiscoveryOptions.ErrorPolicy mErrorPolicy;
+            private int mMaxFiles;
+            private IoThrottle mThrottle;
+            private List<IngestionReport.Failure> mSkipped;
+            private TreeMap<Path, File> mSortedMatches;
 
             /**
              * Do not let anyone use this constructor
@@ -759,14 +1417,93 @@ public class FileToBytesExporter implements Cloneable, Serializable {
              * @param pathMatcher defined matcher for finding files - cannot be {@code null}.
              * @param matches     {@code ArrayList} of {@code Files} which will contain all the
              *                    results - cannot be {@code null}.
+             * @param root        directory where the walk starts - used for relativizing the
+             *                    paths that are checked against the excludes.
+             * @param excludes    matchers of the files and directories to ignore.
+             * @param errorPolicy what to do when a file cannot be visited.
+             * @param maxFiles    maximum number of matches - when reached, the walk terminates.
+             * @param throttle    throttle whose budget is consumed by the visited entries.
+             * @param skipped     receives the files and directories skipped by the error policy
+             *                    - can be {@code null}.
+             * @param sorted      whether the first {@code maxFiles} in {@link #PATH_ORDER} are
+             *                    kept, instead of the first ones visited - they are added to
+             *                    {@code matches} by {@link #collectSorted()}.
              *
              * @throws NullPointerException if {@code pathMatcher} or {@code matches} are null.
              */
-            public Visitor(PathMatcher pathMatcher, ArrayList<File> matches) {
+            public Visitor(PathMatcher pathMatcher, ArrayList<File> matches, Path root,
+                           ArrayList<PathMatcher> excludes,
+                           DiscoveryOptions.ErrorPolicy errorPolicy, int maxFiles,
+                           IoThrottle throttle, List<IngestionReport.Failure> skipped,
+                           boolean sorted) {
                 if (pathMatcher == null || matches == null)
                     throw new NullPointerException("Visitor params cannot be null");
                 mPathMatcher = pathMatcher;
                 mMatches = matches;
+                mRoot = root;
+                mExcludes = excludes;
+                mErrorPolicy = errorPolicy;
+                mMaxFiles = maxFiles;
+                mThrottle = throttle;
+                mSkipped = skipped;
+                mSortedMatches = sorted ? new TreeMap<>(PATH_ORDER) : null;
+            }
+
+            /**
+             * Adds the sorted matches, in order, to the matches - nothing is done if the files are
+             * not sorted.
+             */
+            void collectSorted() {
+                if (mSortedMatches != null)
+                    mMatches.addAll(mSortedMatches.values());
+            }
+
+            /**
+             * Checks whether the sorted matches are full and the given path goes after all of
+             * them - so neither it nor its contents can be matches.
+             *
+             * @param relative path relative to the root.
+             *
+             * @return {@code true} if it must be ignored.
+             */
+            private boolean isAfterSortedMatches(Path relative) {
+                return mSortedMatches.size() >= mMaxFiles &&
+                        PATH_ORDER.compare(relative, mSortedMatches.lastKey()) > 0;
+            }
+
+            /**
+             * Checks whether the given path matches any of the excludes, either by its name or by
+             * its path relative to the root.
+             *
+             * @param path path to check.
+             *
+             * @return {@code true} if it must be ignored.
+             */
+            private boolean isExcluded(Path path) {
+                return DiscoveryOptions.isExcluded(mExcludes, mRoot, path);
+            }
+
+            /**
+             * Invoked for a directory before entries in the directory are visited.
+             *
+             * <p> Excluded directories are pruned, so none of their entries is ever listed. The
+             * listing of the other ones is only charged through {@link IoThrottle#ENTRY_COST}.
+             *
+             * @param dir   directory that is going to be visited.
+             * @param attrs directory attributes.
+             *
+             * @throws IOException if the thread is interrupted while waiting for the throttle.
+             */
+            @Override
+            public FileVisitResult preVisitDirectory(E dir, BasicFileAttributes attrs)
+                    throws IOException {
+                mThrottle.acquire(IoThrottle.ENTRY_COST);
+                if (!dir.equals(mRoot) && isExcluded(dir))
+                    return FileVisitResult.SKIP_SUBTREE;
+                if (mSortedMatches != null && !dir.equals(mRoot) &&
+                        isAfterSortedMatches(mRoot.relativize(dir)))
+                    return FileVisitResult.SKIP_SUBTREE;
+                return FileVisitResult.CONTINUE;
             }
 
             /**
@@ -778,19 +1515,36 @@ public class FileToBytesExporter implements Cloneable, Serializable {
              * @param file  current file that is being visited
              * @param attrs file attributes which determines if it is a dir, or a file, creation
              *              date, etc.
+             *
+             * @throws IOException if the thread is interrupted while waiting for the throttle.
              */
             @Override
-            public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) {
-                if (mPathMatcher.matches(file.getFileName()) && !attrs.isDirectory())
+            public FileVisitResult visitFile(E file, BasicFileAttributes attrs)
+                    throws IOException {
+                mThrottle.acquire(IoThrottle.ENTRY_COST);
+                if (mPathMatcher.matches(file.getFileName()) && !attrs.isDirectory() &&
+                        !isExcluded(file)) {
+                    if (mSortedMatches != null) {
+                        Path relative = mRoot.relativize(file);
+                        if (!isAfterSortedMatches(relative)) {
+                            mSortedMatches.put(relative, file.toFile());
+                            if (mSortedMatches.size() > mMaxFiles)
+                                mSortedMatches.pollLastEntry();
+                        }
+                        return FileVisitResult.CONTINUE;
+                    }
                     mMatches.add(file.toFile());
+                    if (mMatches.size() >= mMaxFiles)
+                        return FileVisitResult.TERMINATE;
+                }
                 return FileVisitResult.CONTINUE;
             }
 
             /**
              * Invoked for a file that could not be visited.
              *
-             * <p> Unless overridden, this method re-throws the I/O
-             * exception that prevented the file from being visited.
+             * <p> Symbolic link cycles ({@link FileSystemLoopException}) are always skipped. Any
+             * other error is skipped (and recorded) or re-thrown depending on the error policy.
              *
              * @param file file that could not be visited
              * @param exc  exception thrown with the cause of not being able to visit that file
@@ -798,9 +1552,46 @@ public class FileToBytesExporter implements Cloneable, Serializable {
              * @throws FileError with the file information and thrown exception
              */
             @Override
-            public FileVisitResult visitFileFailed(Path file, IOException exc) {
+            public FileVisitResult visitFileFailed(E file, IOException exc) {
+                if (exc instanceof FileSystemLoopException)
+                    return FileVisitResult.CONTINUE;
+                if (mErrorPolicy == DiscoveryOptions.ErrorPolicy.SKIP) {
+                    skip(file, exc);
+                    return FileVisitResult.CONTINUE;
+                }
                 throw new FileError(String.format("There was an error visiting file: \"%s\"",
-                        file.toString()), exc.getCause());
+                        file.toString()), exc);
+            }
+
+            /**
+             * Invoked for a directory after entries in the directory have been visited.
+             *
+             * @param dir directory that was visited.
+             * @param exc {@code null} if the iteration completed without an error, else the I/O
+             *            exception that caused the iteration to complete prematurely.
+             *
+             * @throws FileError if the directory could not be completely listed and the error
+             *                   policy is {@link DiscoveryOptions.ErrorPolicy#FAIL}.
+             */
+            @Override
+            public FileVisitResult postVisitDirectory(E dir, IOException exc) {
+                if (exc != null && mErrorPolicy == DiscoveryOptions.ErrorPolicy.FAIL)
+                    throw new FileError(String.format("There was an error listing directory: " +
+                            "\"%s\"", dir.toString()), exc);
+                if (exc != null)
+                    skip(dir, exc);
+                return FileVisitResult.CONTINUE;
+            }
+
+            /**
+             * Records a file or directory skipped by the error policy.
+             *
+             * @param path path that could not be visited.
+             * @param exc  cause of the error.
+             */
+            private void skip(E path, IOException exc) {
+                if (mSkipped != null)
+                    mSkipped.add(new IngestionReport.Failure(path.toFile(), exc, 1, 0));
             }
         }
     }
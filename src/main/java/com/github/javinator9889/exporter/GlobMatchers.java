@@ -0,0 +1,46 @@
+package com.github.javinator9889.exporter;
+
+import java.nio.file.FileSystems;
+import java.nio.file.PathMatcher;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Cache of the compiled glob matchers of the default file system. Compiling a glob translates it
+ * to a regular expression and compiles it, which is repeated at every path of every search
+ * otherwise - the compiled matchers are immutable, so they are shared by all the threads.
+ */
+final class GlobMatchers {
+    /**
+     * Maximum number of cached matchers - once reached, the cache is emptied, as the globs of an
+     * application are usually a handful.
+     */
+    static final int MAX_CACHED = 256;
+    private static final ConcurrentHashMap<String, PathMatcher> MATCHERS =
+            new ConcurrentHashMap<>();
+
+    /**
+     * Do not let anyone instantiate this class.
+     */
+    private GlobMatchers() {
+    }
+
+    /**
+     * Obtains the compiled matcher of the given glob, compiling it only the first time.
+     *
+     * @param glob glob pattern, without the {@code "glob:"} prefix.
+     *
+     * @return the shared {@code PathMatcher}.
+     *
+     * @throws java.util.regex.PatternSyntaxException if the glob is not valid.
+     */
+    static PathMatcher get(String glob) {
+        PathMatcher matcher = MATCHERS.get(glob);
+        if (matcher != null)
+            return matcher;
+        matcher = FileSystems.getDefault().getPathMatcher("glob:" + glob);
+        if (MATCHERS.size() >= MAX_CACHED)
+            MATCHERS.clear();
+        MATCHERS.putIfAbsent(glob, matcher);
+        return matcher;
+    }
+}
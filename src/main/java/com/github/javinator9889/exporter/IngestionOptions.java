@@ -0,0 +1,225 @@
+package com.github.javinator9889.exporter;
+
+import java.io.File;
+import java.io.Serializable;
+import java.util.Objects;
+
+/**
+ * <p>Options used when reading the source files that were found.
+ * <p>
+ * Reading many files from network or removable volumes fails now and then for reasons that go
+ * away on their own (a busy share, a file locked by another process...). A read that fails is
+ * <b>retried</b> up to {@link #setMaxRetries(int) some times}, waiting a bit longer before every
+ * retry. Files that are missing or cannot be accessed are never retried.
+ * <p>
+ * A file that still cannot be read is handled by the {@link
+ * #setErrorPolicy(DiscoveryOptions.ErrorPolicy) error policy}: either it is skipped and the rest
+ * of the sources are read, or the read fails once every other file was attempted. In both cases,
+ * the other files keep being read in parallel, and the {@link IngestionReport report} of the read
+ * lists every skipped or failed file.
+ * <p>
+ * The read data is kept in memory until it is written, so the sources must fit at the heap. When
+ * they are bigger than the {@link #setMemoryBudget(long) memory budget}, they are read in groups
+ * that fit at it and every group is <b>spilled</b> to a temporary segment file, from where it is
+ * streamed when writing the bytes file - so the heap used does not depend on the size of the
+ * export. A single file bigger than the budget is still read at once.
+ * <p>
+ * By default, nothing is retried, any file that cannot be read fails the read and there is no
+ * memory budget.
+ *
+ * @see FileToBytesExporter#setIngestionOptions(IngestionOptions)
+ * @see FileToBytesExporter#getIngestionReport()
+ */
+public class IngestionOptions implements Cloneable, Serializable {
+    /**
+     * Default time waited before the first retry, in milliseconds.
+     */
+    public static final long DEFAULT_RETRY_DELAY = 100;
+    /**
+     * Memory budget meaning that the sources are always kept in memory.
+     */
+    public static final long UNLIMITED_MEMORY = Long.MAX_VALUE;
+    private int mMaxRetries;
+    private long mRetryDelay;
+    private DiscoveryOptions.ErrorPolicy mErrorPolicy;
+    private long mMemoryBudget;
+    private File mSpillDirectory;
+
+    /**
+     * Public default constructor - no retries, {@link DiscoveryOptions.ErrorPolicy#FAIL failing}
+     * on errors and {@link #UNLIMITED_MEMORY unlimited memory}.
+     */
+    public IngestionOptions() {
+        this(0, DEFAULT_RETRY_DELAY, DiscoveryOptions.ErrorPolicy.FAIL, UNLIMITED_MEMORY, null);
+    }
+
+    /**
+     * Private constructor for cloning or generating a new instance - only visible for this class.
+     *
+     * @param maxRetries  number of times a failed read is retried.
+     * @param retryDelay  milliseconds waited before the first retry.
+     * @param errorPolicy    what to do when a file cannot be read.
+     * @param memoryBudget   bytes of the sources kept in memory at once.
+     * @param spillDirectory directory of the spilled segments - {@code null} for the default one.
+     */
+    private IngestionOptions(int maxRetries, long retryDelay,
+                             DiscoveryOptions.ErrorPolicy errorPolicy, long memoryBudget,
+                             File spillDirectory) {
+        mMaxRetries = maxRetries;
+        mRetryDelay = retryDelay;
+        mErrorPolicy = errorPolicy;
+        mMemoryBudget = memoryBudget;
+        mSpillDirectory = spillDirectory;
+    }
+
+    /**
+     * Updates the number of times a read that failed is retried before giving up on the file.
+     *
+     * @param maxRetries number of retries, or {@code 0} for not retrying.
+     *
+     * @throws IllegalArgumentException if {@code maxRetries} is negative.
+     */
+    public void setMaxRetries(int maxRetries) {
+        if (maxRetries < 0)
+            throw new IllegalArgumentException("Max retries cannot be negative");
+        mMaxRetries = maxRetries;
+    }
+
+    /**
+     * Obtains the number of times a read that failed is retried.
+     *
+     * @return {@code int} with the number of retries.
+     */
+    public int getMaxRetries() {
+        return mMaxRetries;
+    }
+
+    /**
+     * Updates the time waited before the first retry of a file - it is doubled before every
+     * following retry of the same file.
+     *
+     * @param retryDelay delay in milliseconds.
+     *
+     * @throws IllegalArgumentException if {@code retryDelay} is negative.
+     */
+    public void setRetryDelay(long retryDelay) {
+        if (retryDelay < 0)
+            throw new IllegalArgumentException("Retry delay cannot be negative");
+        mRetryDelay = retryDelay;
+    }
+
+    /**
+     * Obtains the time waited before the first retry of a file.
+     *
+     * @return {@code long} with the delay in milliseconds.
+     */
+    public long getRetryDelay() {
+        return mRetryDelay;
+    }
+
+    /**
+     * Updates the policy applied when a file cannot be read, even after retrying it.
+     *
+     * @param errorPolicy the new policy - cannot be {@code null}.
+     *
+     * @throws NullPointerException if {@code errorPolicy} is {@code null}.
+     */
+    public void setErrorPolicy(DiscoveryOptions.ErrorPolicy errorPolicy) {
+        mErrorPolicy = Objects.requireNonNull(errorPolicy, "Error policy cannot be null");
+    }
+
+    /**
+     * Obtains the policy applied when a file cannot be read.
+     *
+     * @return the {@link DiscoveryOptions.ErrorPolicy}.
+     */
+    public DiscoveryOptions.ErrorPolicy getErrorPolicy() {
+        return mErrorPolicy;
+    }
+
+    /**
+     * Updates the bytes of the sources that are kept in memory at once - when the found sources
+     * are bigger, they are spilled to temporary segment files. While a group is spilled, both its
+     * bytes and its decoded text are at the heap, taking a few times the budget - a tenth of the
+     * maximum heap is a safe choice.
+     *
+     * @param memoryBudget budget in bytes, or {@link #UNLIMITED_MEMORY} for never spilling.
+     *
+     * @throws IllegalArgumentException if {@code memoryBudget} is not positive.
+     */
+    public void setMemoryBudget(long memoryBudget) {
+        if (memoryBudget <= 0)
+            throw new IllegalArgumentException("Memory budget must be greater than zero");
+        mMemoryBudget = memoryBudget;
+    }
+
+    /**
+     * Obtains the bytes of the sources that are kept in memory at once.
+     *
+     * @return {@code long} with the budget in bytes.
+     */
+    public long getMemoryBudget() {
+        return mMemoryBudget;
+    }
+
+    /**
+     * Updates the directory where the spilled segments are written - they are removed once the
+     * data is replaced or the JVM exits.
+     *
+     * @param spillDirectory an existing directory, or {@code null} for the default temporary
+     *                       directory.
+     */
+    public void setSpillDirectory(File spillDirectory) {
+        mSpillDirectory = spillDirectory;
+    }
+
+    /**
+     * Obtains the directory where the spilled segments are written.
+     *
+     * @return the {@code File}, {@code null} if the default temporary directory is used.
+     */
+    public File getSpillDirectory() {
+        return mSpillDirectory;
+    }
+
+    /**
+     * Indicates whether some other object is "equal to" this one.
+     *
+     * @param o the reference object with which to compare.
+     *
+     * @return {@code true} if this object is the same as the obj argument; {@code false} otherwise.
+     */
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+        IngestionOptions options = (IngestionOptions) o;
+        return mMaxRetries == options.mMaxRetries &&
+                mRetryDelay == options.mRetryDelay &&
+                mErrorPolicy == options.mErrorPolicy &&
+                mMemoryBudget == options.mMemoryBudget &&
+                Objects.equals(mSpillDirectory, options.mSpillDirectory);
+    }
+
+    /**
+     * Returns a hash code value for the object.
+     *
+     * @return a hash code value for this object.
+     */
+    @Override
+    public int hashCode() {
+        return Objects.hash(mMaxRetries, mRetryDelay, mErrorPolicy, mMemoryBudget,
+                mSpillDirectory);
+    }
+
+    /**
+     * Creates and returns a copy of this object.
+     *
+     * @return a clone of this instance.
+     */
+    @Override
+    protected Object clone() {
+        return new IngestionOptions(mMaxRetries, mRetryDelay, mErrorPolicy, mMemoryBudget,
+                mSpillDirectory);
+    }
+}
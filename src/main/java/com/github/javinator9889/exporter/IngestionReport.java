@@ -0,0 +1,208 @@
+package com.github.javinator9889.exporter;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * <p>Outcome of reading the sources: how many files and bytes were read, how long it took and
+ * which files were <b>skipped</b> or <b>failed</b>.
+ * <p>
+ * Files skipped while looking for the sources (e.g.: a directory that cannot be listed, when the
+ * {@link DiscoveryOptions#getErrorPolicy() discovery error policy} is {@link
+ * DiscoveryOptions.ErrorPolicy#SKIP SKIP}) are listed too. Instances are immutable.
+ *
+ * @see FileToBytesExporter#getIngestionReport()
+ * @see IngestionOptions
+ */
+public final class IngestionReport {
+    private final int mReadFiles;
+    private final long mReadBytes;
+    private final long mSpilledBytes;
+    private final List<Failure> mSkipped;
+    private final List<Failure> mFailed;
+    private final long mDiscoveryNanos;
+    private final long mReadNanos;
+
+    /**
+     * Generates a new report.
+     *
+     * @param readFiles      number of files that were read.
+     * @param readBytes      number of bytes that were read.
+     * @param spilledBytes   number of bytes spilled to segment files.
+     * @param skipped        files that were skipped.
+     * @param failed         files that failed the read.
+     * @param discoveryNanos time spent looking for the sources.
+     * @param readNanos      time spent reading the sources.
+     */
+    IngestionReport(int readFiles, long readBytes, long spilledBytes, List<Failure> skipped,
+                    List<Failure> failed, long discoveryNanos, long readNanos) {
+        mReadFiles = readFiles;
+        mReadBytes = readBytes;
+        mSpilledBytes = spilledBytes;
+        mSkipped = Collections.unmodifiableList(new ArrayList<>(skipped));
+        mFailed = Collections.unmodifiableList(new ArrayList<>(failed));
+        mDiscoveryNanos = discoveryNanos;
+        mReadNanos = readNanos;
+    }
+
+    /**
+     * Obtains the number of files that were read.
+     *
+     * @return {@code int} with the number of files.
+     */
+    public int getReadFiles() {
+        return mReadFiles;
+    }
+
+    /**
+     * Obtains the number of bytes that were read.
+     *
+     * @return {@code long} with the number of bytes.
+     */
+    public long getReadBytes() {
+        return mReadBytes;
+    }
+
+    /**
+     * Obtains the number of bytes written to temporary segment files, as the sources did not fit
+     * at the {@link IngestionOptions#getMemoryBudget() memory budget}.
+     *
+     * @return {@code long} with the number of bytes, {@code 0} if the data was kept in memory.
+     */
+    public long getSpilledBytes() {
+        return mSpilledBytes;
+    }
+
+    /**
+     * Obtains the files that were skipped, either while looking for them or while reading them.
+     *
+     * @return unmodifiable {@code List} with the skipped files.
+     */
+    public List<Failure> getSkipped() {
+        return mSkipped;
+    }
+
+    /**
+     * Obtains the files that could not be read and made the read fail.
+     *
+     * @return unmodifiable {@code List} with the failed files.
+     */
+    public List<Failure> getFailed() {
+        return mFailed;
+    }
+
+    /**
+     * Checks whether every found file was read.
+     *
+     * @return {@code true} if no file was skipped nor failed.
+     */
+    public boolean isComplete() {
+        return mSkipped.isEmpty() && mFailed.isEmpty();
+    }
+
+    /**
+     * Obtains the time spent looking for the sources.
+     *
+     * @return {@code long} with the time in milliseconds.
+     */
+    public long getDiscoveryMillis() {
+        return TimeUnit.NANOSECONDS.toMillis(mDiscoveryNanos);
+    }
+
+    /**
+     * Obtains the time spent reading the sources, including the retries.
+     *
+     * @return {@code long} with the time in milliseconds.
+     */
+    public long getReadMillis() {
+        return TimeUnit.NANOSECONDS.toMillis(mReadNanos);
+    }
+
+    /**
+     * Returns a summary of the report.
+     *
+     * @return a string representation of the report.
+     */
+    @Override
+    public String toString() {
+        return String.format("%d files (%d bytes, %d spilled) read in %d ms - %d skipped, %d " +
+                        "failed (discovery: %d ms)", mReadFiles, mReadBytes, mSpilledBytes,
+                getReadMillis(), mSkipped.size(), mFailed.size(), getDiscoveryMillis());
+    }
+
+    /**
+     * File that could not be found or read.
+     */
+    public static final class Failure {
+        private final File mFile;
+        private final IOException mCause;
+        private final int mAttempts;
+        private final long mNanos;
+
+        /**
+         * Generates a new failure.
+         *
+         * @param file     file that could not be read.
+         * @param cause    error of the last attempt.
+         * @param attempts number of attempts, including the retries.
+         * @param nanos    time spent on the file, including the waits between retries.
+         */
+        Failure(File file, IOException cause, int attempts, long nanos) {
+            mFile = file;
+            mCause = cause;
+            mAttempts = attempts;
+            mNanos = nanos;
+        }
+
+        /**
+         * Obtains the file that could not be read.
+         *
+         * @return the {@code File}.
+         */
+        public File getFile() {
+            return mFile;
+        }
+
+        /**
+         * Obtains the error of the last attempt.
+         *
+         * @return the {@code IOException}.
+         */
+        public IOException getCause() {
+            return mCause;
+        }
+
+        /**
+         * Obtains the number of times the file was attempted, including the retries.
+         *
+         * @return {@code int} with the attempts.
+         */
+        public int getAttempts() {
+            return mAttempts;
+        }
+
+        /**
+         * Obtains the time spent on the file, including the waits between retries.
+         *
+         * @return {@code long} with the time in milliseconds.
+         */
+        public long getMillis() {
+            return TimeUnit.NANOSECONDS.toMillis(mNanos);
+        }
+
+        /**
+         * Returns a summary of the failure.
+         *
+         * @return a string representation of the failure.
+         */
+        @Override
+        public String toString() {
+            return String.format("\"%s\" after %d attempts: %s", mFile.toString(), mAttempts,
+                    mCause.toString());
+        }
+    }
+}
@@ -0,0 +1,321 @@
+package com.github.javinator9889.exporter;
+
+import java.io.*;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * <p>Limits the I/O of the exports, so they can run <b>politely</b> on volumes shared with other
+ * services:
+ * <ul>
+ * <li>
+ * <b>Bytes per second</b>: a token bucket shared by every byte read from the sources and written
+ * to the destinations. Up to one second of unused budget is accumulated, so short bursts are
+ * allowed while the long term rate never exceeds the limit.
+ * </li>
+ * <li>
+ * <b>Max open files</b>: how many source files can be open at once, whatever the number of
+ * threads reading them.
+ * </li>
+ * </ul><p>
+ *
+ * While discovering the source files, every visited entry (file or directory) costs {@link
+ * #ENTRY_COST} bytes of the budget - that is the only limit of the directory listings, which do
+ * not take open-file slots, as the walker keeps them open while their children are visited.
+ * <p>
+ * Both limits can be <b>updated at any time</b> - even while an export is running - so exports can
+ * run at full speed off-peak and throttled during peak hours:
+ * <pre>
+ * IoThrottle throttle = new IoThrottle();
+ * exporter.setThrottle(throttle);
+ * ...
+ * throttle.setBytesPerSecond(10 * 1024 * 1024); // from another thread, e.g.: a scheduler
+ * throttle.setMaxOpenFiles(4);
+ * </pre>
+ *
+ * By default, there is no limit at all. This class is thread safe.
+ *
+ * @see FileToBytesExporter#setThrottle(IoThrottle)
+ */
+public final class IoThrottle implements Serializable {
+    /**
+     * Bytes of the budget consumed by every entry visited while discovering the source files, as
+     * listing and inspecting it is not free either.
+     */
+    public static final int ENTRY_COST = 512;
+    private volatile long mBytesPerSecond;
+    private volatile int mMaxOpenFiles;
+    private transient double mTokens;
+    private transient long mLastRefill;
+    private transient int mOpenFiles;
+
+    /**
+     * Public default constructor - no limit at all.
+     */
+    public IoThrottle() {
+        this(Long.MAX_VALUE, Integer.MAX_VALUE);
+    }
+
+    /**
+     * Generates a new throttle with the given limits.
+     *
+     * @param bytesPerSecond maximum bytes read and written per second - {@link Long#MAX_VALUE}
+     *                       for no limit.
+     * @param maxOpenFiles   maximum number of source files open at once - {@link
+     *                       Integer#MAX_VALUE} for no limit.
+     *
+     * @throws IllegalArgumentException if any limit is lower than one.
+     */
+    public IoThrottle(long bytesPerSecond, int maxOpenFiles) {
+        setBytesPerSecond(bytesPerSecond);
+        setMaxOpenFiles(maxOpenFiles);
+    }
+
+    /**
+     * Updates the maximum bytes read and written per second - the running exports adapt
+     * immediately.
+     *
+     * @param bytesPerSecond new limit - {@link Long#MAX_VALUE} for no limit.
+     *
+     * @throws IllegalArgumentException if {@code bytesPerSecond} is lower than one.
+     */
+    public synchronized void setBytesPerSecond(long bytesPerSecond) {
+        if (bytesPerSecond < 1)
+            throw new IllegalArgumentException("Bytes per second must be greater than zero");
+        refill();
+        mBytesPerSecond = bytesPerSecond;
+        // Neither the debt nor the budget of the old rate is kept above one second of the new one
+        mTokens = isRateLimited() ? Math.max(Math.min(mTokens, bytesPerSecond), -bytesPerSecond) :
+                0;
+        notifyAll();
+    }
+
+    /**
+     * Obtains the maximum bytes read and written per second.
+     *
+     * @return {@code long} with the limit, {@link Long#MAX_VALUE} if there is no limit.
+     */
+    public long getBytesPerSecond() {
+        return mBytesPerSecond;
+    }
+
+    /**
+     * Updates the maximum number of source files open at once. Lowering it does not close the
+     * files that are already open, but no other file is opened until they are under the limit.
+     *
+     * @param maxOpenFiles new limit - {@link Integer#MAX_VALUE} for no limit.
+     *
+     * @throws IllegalArgumentException if {@code maxOpenFiles} is lower than one.
+     */
+    public synchronized void setMaxOpenFiles(int maxOpenFiles) {
+        if (maxOpenFiles < 1)
+            throw new IllegalArgumentException("Max open files must be greater than zero");
+        mMaxOpenFiles = maxOpenFiles;
+        notifyAll();
+    }
+
+    /**
+     * Obtains the maximum number of source files open at once.
+     *
+     * @return {@code int} with the limit, {@link Integer#MAX_VALUE} if there is no limit.
+     */
+    public int getMaxOpenFiles() {
+        return mMaxOpenFiles;
+    }
+
+    /**
+     * Obtains the number of source files that are open right now.
+     *
+     * @return {@code int} with the open files.
+     */
+    public synchronized int getOpenFiles() {
+        return mOpenFiles;
+    }
+
+    /**
+     * Consumes the given number of bytes of the budget, waiting until they are available. A
+     * request bigger than the available budget is always accepted, but the caller waits until the
+     * debt it leaves is paid.
+     *
+     * @param bytes number of bytes read or written.
+     *
+     * @throws InterruptedIOException if the thread is interrupted while waiting.
+     */
+    void acquire(long bytes) throws InterruptedIOException {
+        if (bytes <= 0 || !isRateLimited())
+            return;
+        synchronized (this) {
+            refill();
+            mTokens -= bytes;
+            while (mTokens < 0 && isRateLimited()) {
+                long nanos = (long) Math.ceil(-mTokens * TimeUnit.SECONDS.toNanos(1) /
+                        mBytesPerSecond);
+                await(nanos);
+                refill();
+            }
+        }
+    }
+
+    /**
+     * Takes an open-file slot, waiting until there is one available. It must be released with
+     * {@link #closeFile()}.
+     *
+     * @throws InterruptedIOException if the thread is interrupted while waiting.
+     */
+    synchronized void openFile() throws InterruptedIOException {
+        while (mOpenFiles >= mMaxOpenFiles)
+            await(0);
+        ++mOpenFiles;
+    }
+
+    /**
+     * Releases an open-file slot taken with {@link #openFile()}.
+     */
+    synchronized void closeFile() {
+        --mOpenFiles;
+        notifyAll();
+    }
+
+    /**
+     * Opens the given file for reading, taking an open-file slot that is released when the stream
+     * is closed. Every read byte is consumed from the budget.
+     *
+     * @param file file to read.
+     *
+     * @return the {@code InputStream}.
+     *
+     * @throws IOException if the file cannot be opened or the thread is interrupted while waiting
+     *                     for a slot.
+     */
+    InputStream open(File file) throws IOException {
+        openFile();
+        try {
+            return new ThrottledInputStream(new FileInputStream(file));
+        } catch (IOException | RuntimeException e) {
+            closeFile();
+            throw e;
+        }
+    }
+
+    /**
+     * Wraps the given stream so every written byte is consumed from the budget.
+     *
+     * @param output stream to wrap - closed when the returned one is closed.
+     *
+     * @return the {@code OutputStream}.
+     */
+    OutputStream wrap(OutputStream output) {
+        return new FilterOutputStream(output) {
+            @Override
+            public void write(int b) throws IOException {
+                acquire(1);
+                out.write(b);
+            }
+
+            @Override
+            public void write(byte[] b, int off, int len) throws IOException {
+                acquire(len);
+                out.write(b, off, len);
+            }
+        };
+    }
+
+    /**
+     * Opens the given file for reading, limited by the given throttle.
+     *
+     * @param throttle throttle to use - {@code null} for no limit.
+     * @param file     file to read.
+     *
+     * @return the {@code InputStream}.
+     *
+     * @throws IOException if the file cannot be opened.
+     * @see #open(File)
+     */
+    static InputStream open(IoThrottle throttle, File file) throws IOException {
+        return throttle != null ? throttle.open(file) : new FileInputStream(file);
+    }
+
+    /**
+     * Checks whether there is a limit on the bytes per second.
+     *
+     * @return {@code true} if the bytes are limited.
+     */
+    private boolean isRateLimited() {
+        return mBytesPerSecond != Long.MAX_VALUE;
+    }
+
+    /**
+     * Adds the budget accumulated since the last refill, up to one second of it.
+     */
+    private void refill() {
+        long now = System.nanoTime();
+        if (isRateLimited() && mLastRefill != 0) {
+            double elapsed = (double) (now - mLastRefill) / TimeUnit.SECONDS.toNanos(1);
+            mTokens = Math.min(mTokens + elapsed * mBytesPerSecond, mBytesPerSecond);
+        }
+        mLastRefill = now;
+    }
+
+    /**
+     * Waits until the limits are updated, any slot is released or the given time elapses - the
+     * caller must hold the monitor of this throttle.
+     *
+     * @param nanos maximum time to wait, {@code 0} for no timeout.
+     *
+     * @throws InterruptedIOException if the thread is interrupted while waiting.
+     */
+    private void await(long nanos) throws InterruptedIOException {
+        try {
+            if (nanos == 0)
+                wait();
+            else
+                TimeUnit.NANOSECONDS.timedWait(this, nanos);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for the I/O throttle");
+        }
+    }
+
+    /**
+     * Stream that consumes the read bytes from the budget and releases its open-file slot once
+     * closed.
+     */
+    private final class ThrottledInputStream extends FilterInputStream {
+        private boolean mIsClosed;
+
+        /**
+         * Generates a new stream.
+         *
+         * @param input stream of the opened file.
+         */
+        ThrottledInputStream(InputStream input) {
+            super(input);
+        }
+
+        @Override
+        public int read() throws IOException {
+            int read = in.read();
+            if (read != -1)
+                acquire(1);
+            return read;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            int read = in.read(b, off, Math.min(len, Container.BLOCK_SIZE));
+            acquire(read);
+            return read;
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (mIsClosed)
+                return;
+            mIsClosed = true;
+            try {
+                in.close();
+            } finally {
+                closeFile();
+            }
+        }
+    }
+}
@@ -0,0 +1,74 @@
+package com.github.javinator9889.exporter;
+
+import java.util.Objects;
+
+/**
+ * Line of a container entry that matched a query.
+ *
+ * @see ContainerReader#filterLines(java.util.List, java.util.function.Predicate)
+ */
+public final class LineMatch {
+    private final ContainerEntry mEntry;
+    private final long mLineNumber;
+    private final String mLine;
+
+    /**
+     * Generates a new match - only visible for this package.
+     *
+     * @param entry      entry that contains the line.
+     * @param lineNumber number of the line inside the entry, starting at one.
+     * @param line       the line, without its terminator.
+     */
+    LineMatch(ContainerEntry entry, long lineNumber, String line) {
+        mEntry = entry;
+        mLineNumber = lineNumber;
+        mLine = line;
+    }
+
+    /**
+     * Obtains the entry that contains the line.
+     *
+     * @return the {@link ContainerEntry}.
+     */
+    public ContainerEntry getEntry() {
+        return mEntry;
+    }
+
+    /**
+     * Obtains the number of the line inside the entry, starting at one.
+     *
+     * @return {@code long} with the line number.
+     */
+    public long getLineNumber() {
+        return mLineNumber;
+    }
+
+    /**
+     * Obtains the line, without its terminator.
+     *
+     * @return {@code String} with the line.
+     */
+    public String getLine() {
+        return mLine;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+        LineMatch match = (LineMatch) o;
+        return mLineNumber == match.mLineNumber &&
+                Objects.equals(mEntry, match.mEntry) &&
+                Objects.equals(mLine, match.mLine);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(mEntry, mLineNumber, mLine);
+    }
+
+    @Override
+    public String toString() {
+        return mEntry.getName() + ":" + mLineNumber + ": " + mLine;
+    }
+}
@@ -0,0 +1,117 @@
+package com.github.javinator9889.exporter;
+
+import java.io.*;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+
+/**
+ * <p>Reads the lines of a stream, as {@link BufferedReader#readLine()} does, but locating the
+ * line terminators at the raw bytes with a {@link ByteScanner} and decoding only the lines.
+ * <p>
+ * For charsets that do not {@link ByteScanner#supportsLines(Charset) support} scanning lines at
+ * the bytes, it falls back to a {@code BufferedReader}.
+ */
+final class LineReader implements Closeable {
+    private final InputStream mInput;
+    private final Charset mCharset;
+    private final BufferedReader mReader;
+    private final ByteScanner mScanner;
+    private byte[] mBuffer;
+    private int mStart;
+    private int mEnd;
+    private boolean mMustSkipLf;
+
+    /**
+     * Generates a new reader - the stream is closed when the reader is closed.
+     *
+     * @param input   stream to read.
+     * @param charset charset of the stream.
+     */
+    LineReader(InputStream input, Charset charset) {
+        mInput = input;
+        mCharset = charset;
+        mReader = ByteScanner.supportsLines(charset) ? null :
+                new BufferedReader(new InputStreamReader(input, charset));
+        mScanner = ByteScanner.get();
+        mBuffer = new byte[Container.BLOCK_SIZE];
+    }
+
+    /**
+     * Reads the next line. Lines are terminated by {@code '\n'}, {@code '\r'} or {@code "\r\n"}.
+     *
+     * @return {@code String} with the line, without its terminator, or {@code null} at the end of
+     * the stream.
+     *
+     * @throws IOException if the stream cannot be read.
+     */
+    String readLine() throws IOException {
+        if (mReader != null)
+            return mReader.readLine();
+        if (mMustSkipLf) {
+            if (mStart == mEnd)
+                fill();
+            if (mStart < mEnd && mBuffer[mStart] == '\n')
+                ++mStart;
+            mMustSkipLf = false;
+        }
+        int scanned = mStart;
+        while (true) {
+            int end = mScanner.indexOfLineEnd(mBuffer, scanned, mEnd);
+            if (end != -1) {
+                String line = new String(mBuffer, mStart, end - mStart, mCharset);
+                mStart = end + 1;
+                if (mBuffer[end] == '\r') {
+                    if (mStart < mEnd) {
+                        if (mBuffer[mStart] == '\n')
+                            ++mStart;
+                    } else {
+                        mMustSkipLf = true;
+                    }
+                }
+                return line;
+            }
+            int pending = mEnd - mStart;
+            if (!fill()) {
+                if (pending == 0)
+                    return null;
+                String line = new String(mBuffer, mStart, pending, mCharset);
+                mStart = mEnd;
+                return line;
+            }
+            scanned = mStart + pending;
+        }
+    }
+
+    /**
+     * Moves the pending data to the start of the buffer (growing it if it is full) and reads more
+     * data after it.
+     *
+     * @return {@code false} at the end of the stream.
+     *
+     * @throws IOException if the stream cannot be read.
+     */
+    private boolean fill() throws IOException {
+        int pending = mEnd - mStart;
+        if (pending == mBuffer.length)
+            mBuffer = Arrays.copyOf(mBuffer, mBuffer.length * 2);
+        System.arraycopy(mBuffer, mStart, mBuffer, 0, pending);
+        mStart = 0;
+        mEnd = pending;
+        int read;
+        do {
+            read = mInput.read(mBuffer, mEnd, mBuffer.length - mEnd);
+        } while (read == 0);
+        if (read == -1)
+            return false;
+        mEnd += read;
+        return true;
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (mReader != null)
+            mReader.close();
+        else
+            mInput.close();
+    }
+}
@@ -0,0 +1,80 @@
+package com.github.javinator9889.exporter;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * <p>Runs the blocking I/O work (writing extracted files, reading entries for subscribers...)
+ * with the best mechanism of the running JVM.
+ * <p>
+ * This is the Java 8 version, which runs it at the {@link ForkJoinPool#commonPool() common pool}.
+ * Newer JDKs load their own version of this class from the multi-release jar - e.g.: the Java 11+
+ * one uses virtual threads when they are available (Java 21+), so the number of concurrent
+ * blocking operations is not limited by the number of cores.
+ */
+final class Platform {
+    /**
+     * Do not let anyone instantiate this class.
+     */
+    private Platform() {
+    }
+
+    /**
+     * Obtains the executor for tasks that block on I/O.
+     *
+     * @return the shared {@code Executor}.
+     */
+    static Executor blockingExecutor() {
+        return ForkJoinPool.commonPool();
+    }
+
+    /**
+     * Runs the given action for every item concurrently, waiting for all of them. Once the action
+     * fails for any item, the pending ones are skipped - the stream is never left by an exception,
+     * so no action is still running when this method returns or throws.
+     *
+     * @param items  items to process.
+     * @param action action to run for every item.
+     * @param <T>    type of the items.
+     *
+     * @throws IOException if the action fails for any item - the first failure is thrown.
+     */
+    static <T> void forEach(List<T> items, IOConsumer<? super T> action) throws IOException {
+        AtomicReference<Throwable> failure = new AtomicReference<>();
+        items.parallelStream().forEach(item -> {
+            if (failure.get() != null)
+                return;
+            try {
+                action.accept(item);
+            } catch (IOException | RuntimeException | Error e) {
+                failure.compareAndSet(null, e);
+            }
+        });
+        Throwable cause = failure.get();
+        if (cause instanceof IOException)
+            throw (IOException) cause;
+        if (cause instanceof RuntimeException)
+            throw (RuntimeException) cause;
+        if (cause != null)
+            throw (Error) cause;
+    }
+
+    /**
+     * Action over an item that may fail with an {@link IOException}.
+     *
+     * @param <T> type of the item.
+     */
+    interface IOConsumer<T> {
+        /**
+         * Runs the action.
+         *
+         * @param item item to process.
+         *
+         * @throws IOException if the action fails.
+         */
+        void accept(T item) throws IOException;
+    }
+}
@@ -0,0 +1,425 @@
+package com.github.javinator9889.exporter;
+
+import com.github.javinator9889.error.InvalidContainerException;
+
+import java.io.*;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedInputStream;
+
+/**
+ * <p>Writes containers that survive crashes and never leave a truncated destination.
+ * <p>
+ * The container is written to a temporary file next to the destination ({@code
+ * "destination.partial"}) that is atomically renamed once completed. While writing, the completed
+ * entries are appended to a checkpoint log ({@code "destination.checkpoint"}) every {@link
+ * ContainerOptions#getCheckpointInterval() some entries}. If the export is interrupted, the next
+ * export of the same sources to the same destination truncates the temporary file after the last
+ * checkpointed entry and continues from there, without reading again the files already written.
+ * <p>
+ * An entry is only reused when its source file has the same name, length and modification time
+ * that when it was written, and its bytes at the temporary file have the same CRC-32 that when
+ * they were written (so a temporary file damaged or replaced after the checkpoint is not
+ * trusted) - the first one that changed (and all the following ones) is written again. The
+ * checkpoint log is a header ({@code int MAGIC | short VERSION | long headerEnd}) followed by
+ * records of completed entries, each one protected by a CRC-32 so a record torn by a crash is
+ * ignored. Encrypted exports are never resumed.
+ */
+final class ResumableExport {
+    /**
+     * Magic number at the start of a checkpoint log ("FTBC").
+     */
+    static final int MAGIC = 0x46544243;
+    /**
+     * Version of the checkpoint log format.
+     */
+    static final short VERSION = 2;
+
+    /**
+     * Do not let anyone instantiate this class.
+     */
+    private ResumableExport() {
+    }
+
+    /**
+     * Obtains the checkpoint log of the given destination.
+     *
+     * @param destination container file.
+     *
+     * @return {@code File} next to the destination, with the {@code ".checkpoint"} suffix.
+     */
+    static File checkpointFile(File destination) {
+        return new File(destination.getAbsoluteFile().getParentFile(),
+                destination.getName() + ".checkpoint");
+    }
+
+    /**
+     * Writes the given sources to a container, resuming a previous interrupted export of them if
+     * there is any, and atomically publishes it at the destination.
+     *
+     * @param destination container file - replaced once completed.
+     * @param sources     files to write, in order.
+     * @param root        directory the entries are named against.
+     * @param options     how the entries are stored.
+     * @param policy      when the written data is forced to the storage device.
+     * @param throttle    throttle that limits the reads and writes - {@code null} for no limit.
+     *
+     * @return {@code List} with all the entries of the container.
+     *
+     * @throws IOException if any file cannot be read or the container cannot be written.
+     */
+    static List<ContainerEntry> write(File destination, List<File> sources, File root,
+                                      ContainerOptions options, SyncPolicy policy,
+                                      IoThrottle throttle) throws IOException {
+        File partial = AtomicFiles.partial(destination);
+        File checkpoint = checkpointFile(destination);
+        ArrayList<Completed> completed = new ArrayList<>();
+        long headerEnd = resume(partial, checkpoint, sources, root, options, completed);
+        ContainerWriter writer;
+        if (headerEnd < 0) {
+            writer = new ContainerWriter(partial, options);
+            headerEnd = writer.getPosition();
+        } else {
+            ArrayList<ContainerEntry> entries = new ArrayList<>(completed.size());
+            long position = headerEnd;
+            for (Completed entry : completed) {
+                entries.add(entry.mEntry);
+                position = entry.mEntry.getOffset() + entry.mEntry.getStoredLength();
+            }
+            writer = new ContainerWriter(partial, options, entries, position);
+        }
+        writer.setThrottle(throttle);
+        int interval = options.getCheckpointInterval();
+        if (interval == 0)
+            Files.deleteIfExists(checkpoint.toPath());
+        try (ContainerWriter output = writer;
+             Log log = interval > 0 ? new Log(checkpoint, headerEnd, completed, policy) : null) {
+            for (int i = completed.size(); i < sources.size(); ++i) {
+                File source = sources.get(i);
+                long length = source.length();
+                long lastModified = source.lastModified();
+                Completed entry = new Completed(output.write(source, root), length, lastModified,
+                        output.getLastEntryCrc());
+                if (log != null && log.add(entry) >= interval) {
+                    output.sync(policy == SyncPolicy.ON_CHECKPOINT);
+                    log.commit();
+                }
+            }
+        }
+        AtomicFiles.publish(partial, destination, policy);
+        Files.deleteIfExists(checkpoint.toPath());
+        return writer.getEntries();
+    }
+
+    /**
+     * Reads the checkpoint log of a previous interrupted export, keeping the entries that can be
+     * reused for the given sources.
+     *
+     * @param partial    temporary container file.
+     * @param checkpoint checkpoint log.
+     * @param sources    files to write, in order.
+     * @param root       directory the entries are named against.
+     * @param options    how the entries are stored.
+     * @param completed  list where the reusable entries are added.
+     *
+     * @return offset of the first entry at the temporary file, or {@code -1} if the export cannot
+     * be resumed.
+     *
+     * @throws IOException if the files cannot be read.
+     */
+    private static long resume(File partial, File checkpoint, List<File> sources, File root,
+                               ContainerOptions options, List<Completed> completed)
+            throws IOException {
+        // Encrypted exports start again: rewriting the torn blocks would reuse their nonces
+        if (!partial.isFile() || !checkpoint.isFile() || options.getEncryptionKey() != null)
+            return -1;
+        try (DataInputStream input = new DataInputStream(new BufferedInputStream(
+                new FileInputStream(partial)))) {
+            ContainerHeader header = ContainerHeader.read(input, partial.getName());
+            byte[] dictionary = options.isCompression() ? options.getDictionary() : null;
+            if (header.isCompressed() != options.isCompression() || header.isEncrypted() ||
+                    !Arrays.equals(header.getDictionary(), dictionary))
+                return -1;
+        } catch (EOFException | InvalidContainerException e) {
+            return -1;
+        }
+        CheckedInputStream checked = new CheckedInputStream(new BufferedInputStream(
+                new FileInputStream(checkpoint)), new CRC32());
+        long headerEnd;
+        try (DataInputStream input = new DataInputStream(checked)) {
+            if (input.readInt() != MAGIC || input.readShort() != VERSION)
+                return -1;
+            headerEnd = input.readLong();
+            readRecords(input, checked, sources, root, completed);
+        } catch (EOFException e) {
+            return -1;
+        }
+        verify(partial, headerEnd, completed);
+        return headerEnd;
+    }
+
+    /**
+     * Reads the records of a checkpoint log until its end, the first invalid record (e.g.: torn
+     * by a crash) or the first entry that cannot be reused.
+     *
+     * @param input     checkpoint log, just after its header.
+     * @param checked   stream that computes the CRC-32 of the read data.
+     * @param sources   files to write, in order.
+     * @param root      directory the entries are named against.
+     * @param completed list where the reusable entries are added.
+     *
+     * @throws IOException if the log cannot be read.
+     */
+    private static void readRecords(DataInputStream input, CheckedInputStream checked,
+                                    List<File> sources, File root, List<Completed> completed)
+            throws IOException {
+        try {
+            while (true) {
+                checked.getChecksum().reset();
+                int count = input.readInt();
+                if (count <= 0)
+                    return;
+                ArrayList<Completed> record = new ArrayList<>(count);
+                for (int i = 0; i < count; ++i)
+                    record.add(Completed.read(input));
+                long crc = checked.getChecksum().getValue();
+                if (input.readLong() != crc)
+                    return;
+                for (Completed entry : record) {
+                    if (completed.size() == sources.size() ||
+                            !entry.matches(sources.get(completed.size()), root))
+                        return;
+                    completed.add(entry);
+                }
+            }
+        } catch (EOFException ignored) {
+            // End of the log, or its last record was torn by a crash
+        }
+    }
+
+    /**
+     * Verifies that the temporary file still contains the reusable entries as they were written,
+     * comparing the CRC-32 of the bytes of every one with the checkpointed one. The first entry
+     * that is missing or different (e.g.: the file was truncated or modified by someone else) and
+     * all the following ones are discarded.
+     *
+     * @param partial   temporary container file.
+     * @param headerEnd offset of the first entry.
+     * @param completed reusable entries - only the verified ones are kept.
+     *
+     * @throws IOException if the temporary file cannot be read.
+     */
+    private static void verify(File partial, long headerEnd, List<Completed> completed)
+            throws IOException {
+        byte[] buffer = new byte[Container.BLOCK_SIZE];
+        CRC32 crc = new CRC32();
+        int verified = 0;
+        try (InputStream input = new FileInputStream(partial)) {
+            long position = skip(input, headerEnd, buffer);
+            for (Completed entry : completed) {
+                long end = entry.mEntry.getOffset() + entry.mEntry.getStoredLength();
+                crc.reset();
+                long remaining = end - position;
+                int read = 0;
+                while (remaining > 0 && (read = input.read(buffer, 0,
+                        (int) Math.min(buffer.length, remaining))) > 0) {
+                    crc.update(buffer, 0, read);
+                    remaining -= read;
+                }
+                if (remaining != 0 || crc.getValue() != entry.mCrc)
+                    break;
+                position = end;
+                ++verified;
+            }
+        }
+        completed.subList(verified, completed.size()).clear();
+    }
+
+    /**
+     * Skips the given number of bytes of a stream.
+     *
+     * @param input  stream to skip.
+     * @param count  number of bytes to skip.
+     * @param buffer buffer for reading the skipped bytes.
+     *
+     * @return {@code long} with the number of skipped bytes - lower than {@code count} if the
+     * stream ended before.
+     *
+     * @throws IOException if the stream cannot be read.
+     */
+    private static long skip(InputStream input, long count, byte[] buffer) throws IOException {
+        long skipped = 0;
+        int read;
+        while (skipped < count && (read = input.read(buffer, 0,
+                (int) Math.min(buffer.length, count - skipped))) > 0)
+            skipped += read;
+        return skipped;
+    }
+
+    /**
+     * Entry written to the container, together with the state of its source file at that time.
+     */
+    private static final class Completed {
+        private final ContainerEntry mEntry;
+        private final long mSourceLength;
+        private final long mLastModified;
+        private final long mCrc;
+
+        /**
+         * Generates a new completed entry.
+         *
+         * @param entry        written entry.
+         * @param sourceLength length of the source file.
+         * @param lastModified modification time of the source file.
+         * @param crc          CRC-32 of the bytes of the entry at the container, from its marker.
+         */
+        Completed(ContainerEntry entry, long sourceLength, long lastModified, long crc) {
+            mEntry = entry;
+            mSourceLength = sourceLength;
+            mLastModified = lastModified;
+            mCrc = crc;
+        }
+
+        /**
+         * Reads a completed entry from a checkpoint record.
+         *
+         * @param input checkpoint log.
+         *
+         * @return the {@code Completed} entry.
+         *
+         * @throws IOException if the log cannot be read.
+         */
+        static Completed read(DataInputStream input) throws IOException {
+            String name = input.readUTF();
+            long offset = input.readLong();
+            long storedLength = input.readLong();
+            long size = input.readLong();
+            byte[] digest = new byte[Container.DIGEST_SIZE];
+            input.readFully(digest);
+            return new Completed(new ContainerEntry(name, offset, storedLength, size, digest),
+                    input.readLong(), input.readLong(), input.readLong());
+        }
+
+        /**
+         * Writes this entry to a checkpoint record.
+         *
+         * @param output checkpoint record.
+         *
+         * @throws IOException if the record cannot be written.
+         */
+        void write(DataOutputStream output) throws IOException {
+            output.writeUTF(mEntry.getName());
+            output.writeLong(mEntry.getOffset());
+            output.writeLong(mEntry.getStoredLength());
+            output.writeLong(mEntry.getSize());
+            output.write(mEntry.getDigest());
+            output.writeLong(mSourceLength);
+            output.writeLong(mLastModified);
+            output.writeLong(mCrc);
+        }
+
+        /**
+         * Checks whether this entry was written from the given source, as it is now.
+         *
+         * @param source source file.
+         * @param root   directory the entries are named against.
+         *
+         * @return {@code true} if the entry can be reused for the source.
+         */
+        boolean matches(File source, File root) {
+            return mEntry.getName().equals(Container.entryName(root, source)) &&
+                    mSourceLength == source.length() && mLastModified == source.lastModified();
+        }
+    }
+
+    /**
+     * Checkpoint log, opened for appending records of completed entries.
+     */
+    private static final class Log implements Closeable {
+        private final FileOutputStream mOutput;
+        private final ArrayList<Completed> mPending;
+        private final boolean mMustSync;
+
+        /**
+         * Atomically replaces the checkpoint log with a new one, containing the given entries, and
+         * opens it for appending.
+         *
+         * @param checkpoint checkpoint log.
+         * @param headerEnd  offset of the first entry at the container.
+         * @param completed  entries already written at the container.
+         * @param policy     when the log is forced to the storage device.
+         *
+         * @throws IOException if the log cannot be written.
+         */
+        Log(File checkpoint, long headerEnd, List<Completed> completed, SyncPolicy policy)
+                throws IOException {
+            mMustSync = policy == SyncPolicy.ON_CHECKPOINT;
+            mPending = new ArrayList<>(completed);
+            File partial = AtomicFiles.partial(checkpoint);
+            try (DataOutputStream output = new DataOutputStream(new BufferedOutputStream(
+                    new FileOutputStream(partial)))) {
+                output.writeInt(MAGIC);
+                output.writeShort(VERSION);
+                output.writeLong(headerEnd);
+                writeRecord(output);
+            }
+            AtomicFiles.publish(partial, checkpoint, mMustSync ? policy : SyncPolicy.NONE);
+            mOutput = new FileOutputStream(checkpoint, true);
+        }
+
+        /**
+         * Adds a completed entry to the next record.
+         *
+         * @param entry completed entry.
+         *
+         * @return number of entries pending to be committed.
+         */
+        int add(Completed entry) {
+            mPending.add(entry);
+            return mPending.size();
+        }
+
+        /**
+         * Appends a record with the pending entries - their data must have been written to the
+         * container before.
+         *
+         * @throws IOException if the record cannot be written.
+         */
+        void commit() throws IOException {
+            writeRecord(new DataOutputStream(mOutput));
+            if (mMustSync)
+                AtomicFiles.sync(mOutput);
+        }
+
+        /**
+         * Writes a record with the pending entries, followed by its CRC-32, and clears them.
+         *
+         * @param output checkpoint log.
+         *
+         * @throws IOException if the record cannot be written.
+         */
+        private void writeRecord(DataOutputStream output) throws IOException {
+            if (mPending.isEmpty())
+                return;
+            ByteArrayOutputStream record = new ByteArrayOutputStream();
+            DataOutputStream fields = new DataOutputStream(record);
+            fields.writeInt(mPending.size());
+            for (Completed entry : mPending)
+                entry.write(fields);
+            CRC32 crc = new CRC32();
+            crc.update(record.toByteArray());
+            record.writeTo(output);
+            output.writeLong(crc.getValue());
+            output.flush();
+            mPending.clear();
+        }
+
+        @Override
+        public void close() throws IOException {
+            mOutput.close();
+        }
+    }
+}
@@ -0,0 +1,218 @@
+package com.github.javinator9889.exporter;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.ObjectStreamConstants;
+import java.io.OutputStream;
+
+/**
+ * <p>Writes a {@code String[]} with the Java serialization format, producing exactly the same
+ * bytes as {@link java.io.ObjectOutputStream#writeObject(Object)} - so the files are still read
+ * with an {@link java.io.ObjectInputStream}.
+ * <p>
+ * For short-lived processes, setting up an {@code ObjectOutputStream} and looking up the class
+ * descriptor of {@code String[]} (whose serial version UID is computed by hashing the class)
+ * costs more than writing the data itself. As the exported object is always a {@code String[]},
+ * its descriptor is written as constant bytes instead. Strings repeated at the array (the same
+ * instance) are written as back references, as the serialization does.
+ * <p>
+ * The last string can also be streamed from {@link SpillSegments}, which already hold it encoded
+ * as modified UTF-8, so data that does not fit at the heap is written too.
+ */
+final class SerializedStrings {
+    /**
+     * Serial version UID that the serialization computes for {@code String[]}.
+     */
+    static final long STRING_ARRAY_UID = 0xADD256E7E91D7B47L;
+    private static final String STRING_ARRAY_NAME = "[Ljava.lang.String;";
+    /**
+     * Handle of the first string - the class descriptor and the array take the first two.
+     */
+    private static final int FIRST_STRING_HANDLE = ObjectStreamConstants.baseWireHandle + 2;
+    private static final int BUFFER_SIZE = 8192;
+
+    /**
+     * Do not let anyone instantiate this class.
+     */
+    private SerializedStrings() {
+    }
+
+    /**
+     * Writes the given array as a serialization stream. The destination is flushed but not
+     * closed.
+     *
+     * @param destination stream where the array is written.
+     * @param strings     array to write - any element can be {@code null}.
+     *
+     * @throws IOException if the stream cannot be written.
+     */
+    static void write(OutputStream destination, String[] strings) throws IOException {
+        DataOutputStream output = new DataOutputStream(new BufferedOutputStream(destination,
+                BUFFER_SIZE));
+        writeHeader(output, strings.length);
+        byte[] buffer = new byte[BUFFER_SIZE];
+        writeStrings(output, strings, buffer);
+        output.flush();
+    }
+
+    /**
+     * Writes the given strings followed by the spilled data as the last element of the array. The
+     * destination is flushed but not closed.
+     *
+     * @param destination stream where the array is written.
+     * @param strings     first elements of the array - any element can be {@code null}.
+     * @param data        segments whose concatenation is the last element.
+     *
+     * @throws IOException if the stream cannot be written or the segments cannot be read.
+     */
+    static void write(OutputStream destination, String[] strings, SpillSegments data)
+            throws IOException {
+        DataOutputStream output = new DataOutputStream(new BufferedOutputStream(destination,
+                BUFFER_SIZE));
+        writeHeader(output, strings.length + 1);
+        byte[] buffer = new byte[BUFFER_SIZE];
+        writeStrings(output, strings, buffer);
+        writeLength(output, data.getUtfLength());
+        data.copyTo(output, buffer);
+        output.flush();
+    }
+
+    /**
+     * Writes the stream header and the beginning of a {@code String[]} with the given length.
+     *
+     * @param output stream where the header is written.
+     * @param length number of elements of the array.
+     *
+     * @throws IOException if the stream cannot be written.
+     */
+    private static void writeHeader(DataOutputStream output, int length) throws IOException {
+        output.writeShort(ObjectStreamConstants.STREAM_MAGIC);
+        output.writeShort(ObjectStreamConstants.STREAM_VERSION);
+        output.writeByte(ObjectStreamConstants.TC_ARRAY);
+        output.writeByte(ObjectStreamConstants.TC_CLASSDESC);
+        output.writeUTF(STRING_ARRAY_NAME);
+        output.writeLong(STRING_ARRAY_UID);
+        output.writeByte(ObjectStreamConstants.SC_SERIALIZABLE);
+        output.writeShort(0);
+        output.writeByte(ObjectStreamConstants.TC_ENDBLOCKDATA);
+        output.writeByte(ObjectStreamConstants.TC_NULL);
+        output.writeInt(length);
+    }
+
+    /**
+     * Writes the given strings as consecutive elements of the array, starting at the first one.
+     *
+     * @param output  stream where the strings are written.
+     * @param strings strings to write - any element can be {@code null}.
+     * @param buffer  buffer used for encoding the strings.
+     *
+     * @throws IOException if the stream cannot be written.
+     */
+    private static void writeStrings(DataOutputStream output, String[] strings, byte[] buffer)
+            throws IOException {
+        int[] handles = new int[strings.length];
+        int nextHandle = FIRST_STRING_HANDLE;
+        for (int i = 0; i < strings.length; ++i) {
+            String string = strings[i];
+            if (string == null) {
+                output.writeByte(ObjectStreamConstants.TC_NULL);
+                continue;
+            }
+            int previous = indexOf(strings, i);
+            if (previous != -1) {
+                handles[i] = handles[previous];
+                output.writeByte(ObjectStreamConstants.TC_REFERENCE);
+                output.writeInt(handles[i]);
+                continue;
+            }
+            handles[i] = nextHandle++;
+            writeLength(output, utfLength(string));
+            writeUtf(output, string, buffer);
+        }
+    }
+
+    /**
+     * Writes the type and the length of a new string, which is long if its encoding does not fit
+     * at an unsigned {@code short}.
+     *
+     * @param output stream where the string is written.
+     * @param length length of the modified UTF-8 encoding of the string.
+     *
+     * @throws IOException if the stream cannot be written.
+     */
+    private static void writeLength(DataOutputStream output, long length) throws IOException {
+        if (length <= 0xFFFF) {
+            output.writeByte(ObjectStreamConstants.TC_STRING);
+            output.writeShort((int) length);
+        } else {
+            output.writeByte(ObjectStreamConstants.TC_LONGSTRING);
+            output.writeLong(length);
+        }
+    }
+
+    /**
+     * Looks for an earlier element of the array that is the same instance as the given one.
+     *
+     * @param strings array that is being written.
+     * @param index   index of the element.
+     *
+     * @return the index of the earlier element, {@code -1} if there is none.
+     */
+    private static int indexOf(String[] strings, int index) {
+        for (int i = 0; i < index; ++i) {
+            if (strings[i] == strings[index])
+                return i;
+        }
+        return -1;
+    }
+
+    /**
+     * Obtains the length of the modified UTF-8 encoding of the given string.
+     *
+     * @param string string to measure.
+     *
+     * @return {@code long} with the number of bytes.
+     */
+    static long utfLength(String string) {
+        long length = 0;
+        for (int i = 0; i < string.length(); ++i) {
+            char c = string.charAt(i);
+            length += c >= 0x0001 && c <= 0x007F ? 1 : c > 0x07FF ? 3 : 2;
+        }
+        return length;
+    }
+
+    /**
+     * Writes the modified UTF-8 encoding of the given string, as {@link
+     * DataOutputStream#writeUTF(String)} does but without its length limit nor the length itself.
+     *
+     * @param output stream where the string is written.
+     * @param string string to write.
+     * @param buffer buffer used for encoding the string.
+     *
+     * @throws IOException if the stream cannot be written.
+     */
+    static void writeUtf(OutputStream output, String string, byte[] buffer)
+            throws IOException {
+        int position = 0;
+        for (int i = 0; i < string.length(); ++i) {
+            if (position > buffer.length - 3) {
+                output.write(buffer, 0, position);
+                position = 0;
+            }
+            char c = string.charAt(i);
+            if (c >= 0x0001 && c <= 0x007F) {
+                buffer[position++] = (byte) c;
+            } else if (c > 0x07FF) {
+                buffer[position++] = (byte) (0xE0 | ((c >> 12) & 0x0F));
+                buffer[position++] = (byte) (0x80 | ((c >> 6) & 0x3F));
+                buffer[position++] = (byte) (0x80 | (c & 0x3F));
+            } else {
+                buffer[position++] = (byte) (0xC0 | ((c >> 6) & 0x1F));
+                buffer[position++] = (byte) (0x80 | (c & 0x3F));
+            }
+        }
+        output.write(buffer, 0, position);
+    }
+}
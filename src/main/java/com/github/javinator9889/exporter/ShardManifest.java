@@ -0,0 +1,141 @@
+package com.github.javinator9889.exporter;
+
+import com.github.javinator9889.error.InvalidContainerException;
+
+import java.io.*;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * <p>Manifest of a sharded export: which container files (shards) compose the logical export and
+ * at which shard is every entry, in the order the sources were found.
+ * <p>
+ * The shards are stored next to the manifest, named after it: {@code export.ftbm.0}, {@code
+ * export.ftbm.1}... The manifest is written once all the shards were completely written, so an
+ * existing manifest always describes a complete export.
+ *
+ * @see ShardedContainerReader
+ */
+public final class ShardManifest {
+    private final File mManifest;
+    private final List<File> mShards;
+    private final int[] mEntryShards;
+
+    /**
+     * Generates a new manifest - only visible for this package.
+     *
+     * @param manifest    manifest file.
+     * @param shards      shard files, next to the manifest.
+     * @param entryShards shard of every entry, in the order of the logical export.
+     */
+    ShardManifest(File manifest, List<File> shards, int[] entryShards) {
+        mManifest = manifest;
+        mShards = Collections.unmodifiableList(shards);
+        mEntryShards = entryShards;
+    }
+
+    /**
+     * Reads the given manifest.
+     *
+     * @param manifest manifest file.
+     *
+     * @return the read {@code ShardManifest}.
+     *
+     * @throws IOException               if the file does not exist or cannot be read.
+     * @throws InvalidContainerException if the file is not a valid manifest.
+     */
+    public static ShardManifest read(File manifest) throws IOException {
+        try (DataInputStream input = new DataInputStream(new BufferedInputStream(
+                new FileInputStream(manifest)))) {
+            if (input.readInt() != Container.MANIFEST_MAGIC)
+                throw new InvalidContainerException(String.format("File \"%s\" is not a shards " +
+                        "manifest", manifest.toString()));
+            short version = input.readShort();
+            if (version > Container.VERSION)
+                throw new InvalidContainerException(String.format("Manifest \"%s\" has an " +
+                        "unsupported version: %d", manifest.toString(), version));
+            int shardCount = input.readInt();
+            ArrayList<File> shards = new ArrayList<>(shardCount);
+            for (int i = 0; i < shardCount; ++i)
+                shards.add(new File(manifest.getAbsoluteFile().getParentFile(), input.readUTF()));
+            int[] entryShards = new int[input.readInt()];
+            for (int i = 0; i < entryShards.length; ++i) {
+                entryShards[i] = input.readInt();
+                if (entryShards[i] < 0 || entryShards[i] >= shardCount)
+                    throw new InvalidContainerException(String.format("Manifest \"%s\" " +
+                            "references an unknown shard: %d", manifest.toString(),
+                            entryShards[i]));
+            }
+            return new ShardManifest(manifest, shards, entryShards);
+        } catch (EOFException e) {
+            throw new InvalidContainerException(String.format("Manifest \"%s\" is truncated",
+                    manifest.toString()), e);
+        }
+    }
+
+    /**
+     * Obtains the file of the given shard of a manifest.
+     *
+     * @param manifest manifest file.
+     * @param shard    shard number.
+     *
+     * @return {@code File} of the shard, next to the manifest.
+     */
+    static File shardFile(File manifest, int shard) {
+        return new File(manifest.getAbsoluteFile().getParentFile(),
+                manifest.getName() + "." + shard);
+    }
+
+    /**
+     * Writes this manifest to its file, atomically.
+     *
+     * @param policy when the manifest is forced to the storage device.
+     *
+     * @throws IOException if the file cannot be written.
+     */
+    void write(SyncPolicy policy) throws IOException {
+        File partial = AtomicFiles.partial(mManifest);
+        try (DataOutputStream output = new DataOutputStream(new BufferedOutputStream(
+                new FileOutputStream(partial)))) {
+            output.writeInt(Container.MANIFEST_MAGIC);
+            output.writeShort(Container.VERSION);
+            output.writeInt(mShards.size());
+            for (File shard : mShards)
+                output.writeUTF(shard.getName());
+            output.writeInt(mEntryShards.length);
+            for (int shard : mEntryShards)
+                output.writeInt(shard);
+        }
+        AtomicFiles.publish(partial, mManifest, policy);
+    }
+
+    /**
+     * Obtains the shard files of the export.
+     *
+     * @return unmodifiable {@code List} with the shards.
+     */
+    public List<File> getShards() {
+        return mShards;
+    }
+
+    /**
+     * Obtains the number of entries of the logical export.
+     *
+     * @return {@code int} with the number of entries.
+     */
+    public int getEntryCount() {
+        return mEntryShards.length;
+    }
+
+    /**
+     * Obtains the shard of the given entry.
+     *
+     * @param entry position of the entry at the logical export.
+     *
+     * @return {@code int} with the shard number.
+     */
+    public int getShard(int entry) {
+        return mEntryShards[entry];
+    }
+}
@@ -0,0 +1,158 @@
+package com.github.javinator9889.exporter;
+
+import com.github.javinator9889.error.FileError;
+import com.github.javinator9889.error.InvalidContainerException;
+
+import javax.crypto.SecretKey;
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+/**
+ * <p>Reads the logical export described by a {@link ShardManifest}, opening all its shards.
+ * <p>
+ * The entries are presented in the order the sources were found, no matter at which shard they
+ * are. As every shard is an independent container, they can be read in parallel:
+ * {@link #readAll()} reads every shard at its own thread.
+ */
+public class ShardedContainerReader implements Closeable {
+    private final ShardManifest mManifest;
+    private final List<ContainerReader> mReaders;
+    private final List<ContainerEntry> mEntries;
+    private final int[] mEntryShards;
+
+    /**
+     * Opens the given manifest and all its shards.
+     *
+     * @param manifest manifest file.
+     *
+     * @throws IOException               if the manifest or any shard cannot be read.
+     * @throws InvalidContainerException if the manifest or any shard is not valid, or they do
+     *                                   not match.
+     */
+    public ShardedContainerReader(File manifest) throws IOException {
+        this(manifest, null);
+    }
+
+    /**
+     * Opens the given manifest and all its shards, that may be encrypted.
+     *
+     * @param manifest manifest file.
+     * @param key      key the shards were encrypted with - not used if they are not encrypted.
+     *
+     * @throws IOException               if the manifest or any shard cannot be read.
+     * @throws InvalidContainerException if the manifest or any shard is not valid, they do not
+     *                                   match or {@code key} is not the key of any shard.
+     */
+    public ShardedContainerReader(File manifest, SecretKey key) throws IOException {
+        mManifest = ShardManifest.read(manifest);
+        ArrayList<ContainerReader> readers = new ArrayList<>(mManifest.getShards().size());
+        try {
+            for (File shard : mManifest.getShards())
+                readers.add(new ContainerReader(shard, key));
+            mReaders = Collections.unmodifiableList(readers);
+            int[] nextEntry = new int[readers.size()];
+            ArrayList<ContainerEntry> entries = new ArrayList<>(mManifest.getEntryCount());
+            mEntryShards = new int[mManifest.getEntryCount()];
+            for (int i = 0; i < mEntryShards.length; ++i) {
+                int shard = mManifest.getShard(i);
+                List<ContainerEntry> shardEntries = readers.get(shard).getEntries();
+                if (nextEntry[shard] >= shardEntries.size())
+                    throw new InvalidContainerException(String.format("Shard \"%s\" does not " +
+                            "match the manifest", mManifest.getShards().get(shard).toString()));
+                entries.add(shardEntries.get(nextEntry[shard]++));
+                mEntryShards[i] = shard;
+            }
+            mEntries = Collections.unmodifiableList(entries);
+        } catch (IOException | RuntimeException e) {
+            for (ContainerReader reader : readers)
+                reader.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Obtains the manifest of the export.
+     *
+     * @return the {@link ShardManifest}.
+     */
+    public ShardManifest getManifest() {
+        return mManifest;
+    }
+
+    /**
+     * Obtains all the entries of the logical export, in the order the sources were found.
+     *
+     * @return unmodifiable {@code List} with the entries.
+     */
+    public List<ContainerEntry> getEntries() {
+        return mEntries;
+    }
+
+    /**
+     * Obtains the readers of every shard, for reading them independently.
+     *
+     * @return unmodifiable {@code List} with the readers, in the shards order.
+     */
+    public List<ContainerReader> getShardReaders() {
+        return mReaders;
+    }
+
+    /**
+     * Reads all the data of the given entry.
+     *
+     * @param entry position of the entry at the logical export.
+     *
+     * @return {@code byte[]} with the entry data.
+     *
+     * @throws IOException if the entry cannot be read.
+     * @throws FileError   if the digest of the read data is not the same as the stored one.
+     */
+    public byte[] read(int entry) throws IOException {
+        return mReaders.get(mEntryShards[entry]).read(mEntries.get(entry));
+    }
+
+    /**
+     * Reads all the entries of the export, reading the shards in parallel.
+     *
+     * @return {@code byte[][]} with the data of every entry, in the order of the logical export.
+     *
+     * @throws IOException if any entry cannot be read.
+     * @throws FileError   if the digest of any entry is not the same as the stored one.
+     */
+    public byte[][] readAll() throws IOException {
+        final byte[][] data = new byte[mEntries.size()][];
+        Platform.forEach(IntStream.range(0, mReaders.size()).boxed().collect(Collectors.toList()),
+                shard -> {
+                    for (int i = 0; i < data.length; ++i) {
+                        if (mEntryShards[i] == shard)
+                            data[i] = mReaders.get(shard).read(mEntries.get(i));
+                    }
+                });
+        return data;
+    }
+
+    /**
+     * Closes all the shards.
+     *
+     * @throws IOException if any shard cannot be closed.
+     */
+    @Override
+    public void close() throws IOException {
+        IOException error = null;
+        for (ContainerReader reader : mReaders) {
+            try {
+                reader.close();
+            } catch (IOException e) {
+                error = e;
+            }
+        }
+        if (error != null)
+            throw error;
+    }
+}
@@ -0,0 +1,69 @@
+package com.github.javinator9889.exporter;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.List;
+import java.util.PriorityQueue;
+
+/**
+ * How the source files are distributed across the shards of a sharded export.
+ *
+ * @see FileToBytesExporter#exportShards(File, int, ShardingStrategy, boolean)
+ */
+public enum ShardingStrategy {
+    /**
+     * Every file goes to the shard with less bytes at that moment, starting by the biggest files,
+     * so all the shards have roughly the same size and are written at the same time.
+     */
+    SIZE {
+        @Override
+        int[] assign(List<File> files, File root, int shards) {
+            Integer[] bySize = new Integer[files.size()];
+            long[] sizes = new long[files.size()];
+            for (int i = 0; i < bySize.length; ++i) {
+                bySize[i] = i;
+                sizes[i] = files.get(i).length();
+            }
+            Arrays.sort(bySize, (a, b) -> Long.compare(sizes[b], sizes[a]));
+            long[] load = new long[shards];
+            PriorityQueue<Integer> lightest = new PriorityQueue<>(shards,
+                    (a, b) -> load[a] != load[b] ? Long.compare(load[a], load[b]) :
+                            Integer.compare(a, b));
+            for (int shard = 0; shard < shards; ++shard)
+                lightest.add(shard);
+            int[] assignment = new int[bySize.length];
+            for (int file : bySize) {
+                int shard = lightest.poll();
+                assignment[file] = shard;
+                load[shard] += sizes[file];
+                lightest.add(shard);
+            }
+            return assignment;
+        }
+    },
+    /**
+     * Every file goes to the shard given by the hash of its entry name, so the same file is
+     * always at the same shard between exports.
+     */
+    HASH {
+        @Override
+        int[] assign(List<File> files, File root, int shards) {
+            int[] assignment = new int[files.size()];
+            for (int i = 0; i < assignment.length; ++i)
+                assignment[i] = Math.floorMod(Container.entryName(root, files.get(i)).hashCode(),
+                        shards);
+            return assignment;
+        }
+    };
+
+    /**
+     * Distributes the given files across the shards.
+     *
+     * @param files  files to distribute.
+     * @param root   directory the entries of the files are named against.
+     * @param shards number of shards.
+     *
+     * @return {@code int[]} with the shard of every file.
+     */
+    abstract int[] assign(List<File> files, File root, int shards);
+}
@@ -0,0 +1,451 @@
+package com.github.javinator9889.exporter;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.file.AccessDeniedException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.IntStream;
+
+/**
+ * <p>Reads a set of source files <b>scheduling the work by size</b> instead of by file index.
+ * <p>
+ * The files are split into tasks of roughly the same amount of bytes:
+ * <ul>
+ * <li>
+ * <b>Large files</b> (bigger than {@link #SPLIT_SIZE}) are split into ranges that are read
+ * concurrently, using positional reads, into the same buffer.
+ * </li>
+ * <li>
+ * <b>Small files</b> are batched together until the batch reaches {@link #BATCH_SIZE} bytes, so a
+ * task is not scheduled for every single tiny file.
+ * </li>
+ * </ul><p>
+ *
+ * All the tasks are executed at a work-stealing {@link ForkJoinPool}, so one huge file next to
+ * thousands of small ones keeps every core busy until the end. Once read, the lines of every file
+ * are normalized to {@code "\n"} (the same output a {@link java.io.BufferedReader#readLine()} loop
+ * produces) and it is decoded using the platform charset. When the charset allows it, lines are
+ * normalized at the raw bytes with a {@link ByteScanner}, before decoding them.
+ * <p>
+ * When an {@link IoThrottle} is given, the files are read in blocks whose bytes are consumed from
+ * its budget, and every task holds an open-file slot while its file is open.
+ * <p>
+ * Reads that fail are retried as defined by the {@link IngestionOptions}. A file that still
+ * cannot be read does not stop the other tasks: it is left out of the results and its {@link
+ * IngestionReport.Failure failure} is recorded, so the caller decides whether to skip it or fail.
+ */
+final class SourceReader {
+    /**
+     * Files bigger than this size are split into ranges of this size.
+     */
+    static final int SPLIT_SIZE = 8 * 1024 * 1024;
+    /**
+     * Small files are batched together until reaching this size.
+     */
+    static final int BATCH_SIZE = 1024 * 1024;
+    private final ForkJoinPool mPool;
+    private final IoThrottle mThrottle;
+    private final IngestionOptions mOptions;
+    private IngestionReport.Failure[] mFailures;
+    private long mReadBytes;
+
+    /**
+     * Generates a new reader that uses the {@link ForkJoinPool#commonPool() common pool}, without
+     * retries.
+     */
+    SourceReader() {
+        this(ForkJoinPool.commonPool(), null, new IngestionOptions());
+    }
+
+    /**
+     * Generates a new reader that uses the {@link ForkJoinPool#commonPool() common pool}, limited
+     * by the given throttle.
+     *
+     * @param throttle throttle that limits the reads - {@code null} for no limit.
+     * @param options  how failed reads are retried.
+     */
+    SourceReader(IoThrottle throttle, IngestionOptions options) {
+        this(ForkJoinPool.commonPool(), throttle, options);
+    }
+
+    /**
+     * Generates a new reader that uses the given pool.
+     *
+     * @param pool     pool where the read tasks are executed.
+     * @param throttle throttle that limits the reads - {@code null} for no limit.
+     * @param options  how failed reads are retried.
+     */
+    SourceReader(ForkJoinPool pool, IoThrottle throttle, IngestionOptions options) {
+        mPool = pool;
+        mThrottle = throttle;
+        mOptions = options;
+        mFailures = new IngestionReport.Failure[0];
+    }
+
+    /**
+     * Reads all the given files. The raw bytes of every file are released as soon as it is
+     * decoded, so the bytes and the text of the same file are not kept at once.
+     *
+     * @param files files to read.
+     *
+     * @return {@code String[]} with the normalized contents of every file, in the same order -
+     * {@code null} for the files that could not be read.
+     *
+     * @throws InterruptedIOException if the thread is interrupted while reading or waiting for a
+     *                                retry.
+     * @see #getFailures()
+     */
+    String[] read(final List<File> files) throws IOException {
+        final byte[][] contents = readBytes(files);
+        final Charset charset = Charset.defaultCharset();
+        final boolean mustScanBytes = ByteScanner.supportsLines(charset);
+        return mPool.submit(() -> IntStream.range(0, contents.length).parallel()
+                .mapToObj(i -> {
+                    byte[] bytes = contents[i];
+                    contents[i] = null;
+                    return bytes == null ? null : mustScanBytes ?
+                            new String(ByteScanner.normalizeLines(bytes), charset) :
+                            normalizeLines(new String(bytes, charset));
+                })
+                .toArray(String[]::new)).join();
+    }
+
+    /**
+     * Reads the raw bytes of all the given files.
+     *
+     * @param files files to read.
+     *
+     * @return {@code byte[][]} with the contents of every file, in the same order - {@code null}
+     * for the files that could not be read (e.g.: they are too big for being stored at an array).
+     *
+     * @throws InterruptedIOException if the thread is interrupted while reading or waiting for a
+     *                                retry.
+     * @see #getFailures()
+     */
+    byte[][] readBytes(final List<File> files) throws IOException {
+        final byte[][] contents = new byte[files.size()][];
+        mFailures = new IngestionReport.Failure[files.size()];
+        ArrayList<RecursiveAction> tasks = new ArrayList<>();
+        ArrayList<Integer> batch = new ArrayList<>();
+        long batchSize = 0;
+        for (int i = 0; i < files.size(); ++i) {
+            File file = files.get(i);
+            long size = file.length();
+            if (size > Integer.MAX_VALUE - 8) {
+                fail(i, new IngestionReport.Failure(file, new IOException(String.format("File " +
+                        "\"%s\" is too big to be read (%d bytes)", file.toString(), size)), 1, 0));
+            } else if (size > SPLIT_SIZE) {
+                contents[i] = new byte[(int) size];
+                for (long offset = 0; offset < size; offset += SPLIT_SIZE)
+                    tasks.add(new RangeTask(i, file, contents[i], (int) offset,
+                            (int) Math.min(SPLIT_SIZE, size - offset)));
+            } else {
+                batch.add(i);
+                batchSize += size;
+                if (batchSize >= BATCH_SIZE) {
+                    tasks.add(new BatchTask(files, contents, batch));
+                    batch = new ArrayList<>();
+                    batchSize = 0;
+                }
+            }
+        }
+        if (!batch.isEmpty())
+            tasks.add(new BatchTask(files, contents, batch));
+        try {
+            mPool.submit(() -> RecursiveAction.invokeAll(tasks)).join();
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+        mReadBytes = 0;
+        for (int i = 0; i < contents.length; ++i) {
+            if (mFailures[i] != null)
+                contents[i] = null;
+            else
+                mReadBytes += contents[i].length;
+        }
+        return contents;
+    }
+
+    /**
+     * Obtains the number of bytes of the files that were read by the last read.
+     *
+     * @return {@code long} with the number of bytes.
+     */
+    long getReadBytes() {
+        return mReadBytes;
+    }
+
+    /**
+     * Obtains the files of the last read that could not be read, even after retrying them.
+     *
+     * @return {@code List} with the failures, in the same order as the files.
+     */
+    List<IngestionReport.Failure> getFailures() {
+        ArrayList<IngestionReport.Failure> failures = new ArrayList<>();
+        synchronized (this) {
+            for (IngestionReport.Failure failure : mFailures) {
+                if (failure != null)
+                    failures.add(failure);
+            }
+        }
+        return Collections.unmodifiableList(failures);
+    }
+
+    /**
+     * Runs the read of a file, retrying it as defined by the options. Files that do not exist or
+     * cannot be accessed are not retried, as retrying them would not make any difference.
+     *
+     * @param index index of the file.
+     * @param file  file that is read.
+     * @param read  the read to run.
+     *
+     * @return {@code true} if the read succeeded, {@code false} if it failed and the failure was
+     * recorded.
+     *
+     * @throws InterruptedIOException if the thread is interrupted while reading or waiting for a
+     *                                retry.
+     */
+    private boolean attempt(int index, File file, IOAction read) throws InterruptedIOException {
+        long start = System.nanoTime();
+        long delay = mOptions.getRetryDelay();
+        for (int attempt = 1; ; ++attempt) {
+            if (isFailed(index))
+                return false;
+            try {
+                read.run();
+                return true;
+            } catch (InterruptedIOException e) {
+                throw e;
+            } catch (IOException e) {
+                if (Thread.currentThread().isInterrupted())
+                    throw (InterruptedIOException) new InterruptedIOException(String.format(
+                            "Interrupted while reading \"%s\"", file.toString())).initCause(e);
+                if (attempt > mOptions.getMaxRetries() || e instanceof NoSuchFileException ||
+                        e instanceof AccessDeniedException || e instanceof FileNotFoundException) {
+                    fail(index, new IngestionReport.Failure(file, e, attempt,
+                            System.nanoTime() - start));
+                    return false;
+                }
+            }
+            try {
+                TimeUnit.MILLISECONDS.sleep(delay);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException(String.format("Interrupted while waiting for " +
+                        "retrying \"%s\"", file.toString()));
+            }
+            delay = delay > Long.MAX_VALUE / 2 ? Long.MAX_VALUE : delay * 2;
+        }
+    }
+
+    /**
+     * Records the failure of a file - only the first one is kept, as every range of a large file
+     * may fail on its own.
+     *
+     * @param index   index of the file.
+     * @param failure failure of the file.
+     */
+    private synchronized void fail(int index, IngestionReport.Failure failure) {
+        if (mFailures[index] == null)
+            mFailures[index] = failure;
+    }
+
+    /**
+     * Checks whether a file already failed, so its remaining ranges are not read.
+     *
+     * @param index index of the file.
+     *
+     * @return {@code true} if the file failed.
+     */
+    private synchronized boolean isFailed(int index) {
+        return mFailures[index] != null;
+    }
+
+    /**
+     * Normalizes the line terminators of the given text: {@code "\r\n"} and {@code "\r"} are
+     * converted to {@code "\n"} and, if the text is not empty, it always ends with {@code "\n"}.
+     *
+     * @param text text to normalize.
+     *
+     * @return {@code String} with the normalized text.
+     */
+    static String normalizeLines(String text) {
+        int length = text.length();
+        if (length == 0)
+            return text;
+        if (text.indexOf('\r') == -1)
+            return text.charAt(length - 1) == '\n' ? text : text.concat("\n");
+        StringBuilder builder = new StringBuilder(length + 1);
+        for (int i = 0; i < length; ++i) {
+            char c = text.charAt(i);
+            if (c == '\r') {
+                builder.append('\n');
+                if (i + 1 < length && text.charAt(i + 1) == '\n')
+                    ++i;
+            } else {
+                builder.append(c);
+            }
+        }
+        if (builder.charAt(builder.length() - 1) != '\n')
+            builder.append('\n');
+        return builder.toString();
+    }
+
+    /**
+     * Read of a file that may fail.
+     */
+    private interface IOAction {
+        /**
+         * Runs the read.
+         *
+         * @throws IOException if the file cannot be read.
+         */
+        void run() throws IOException;
+    }
+
+    /**
+     * Task that reads a range of a large file into its shared buffer.
+     */
+    private final class RangeTask extends RecursiveAction {
+        private final int mIndex;
+        private final File mFile;
+        private final byte[] mBuffer;
+        private final int mOffset;
+        private final int mLength;
+
+        /**
+         * Generates a new task.
+         *
+         * @param index  index of the file.
+         * @param file   file to read.
+         * @param buffer buffer that will contain the whole file.
+         * @param offset position of the range, both at the file and at the buffer.
+         * @param length length of the range.
+         */
+        RangeTask(int index, File file, byte[] buffer, int offset, int length) {
+            mIndex = index;
+            mFile = file;
+            mBuffer = buffer;
+            mOffset = offset;
+            mLength = length;
+        }
+
+        @Override
+        protected void compute() {
+            try {
+                attempt(mIndex, mFile, () -> {
+                    if (mThrottle == null) {
+                        read(mLength);
+                        return;
+                    }
+                    mThrottle.openFile();
+                    try {
+                        read(Container.BLOCK_SIZE);
+                    } finally {
+                        mThrottle.closeFile();
+                    }
+                });
+            } catch (InterruptedIOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+
+        /**
+         * Reads the range with positional reads of, at most, the given size.
+         *
+         * @param blockSize maximum bytes read at once - consumed from the throttle budget, if any.
+         *
+         * @throws IOException if the file cannot be read or it was truncated.
+         */
+        private void read(int blockSize) throws IOException {
+            ByteBuffer buffer = ByteBuffer.wrap(mBuffer, mOffset, mLength);
+            int end = mOffset + mLength;
+            try (FileChannel channel = FileChannel.open(mFile.toPath(), StandardOpenOption.READ)) {
+                long position = mOffset;
+                while (buffer.position() < end) {
+                    buffer.limit(buffer.position() + Math.min(blockSize, end - buffer.position()));
+                    int read = channel.read(buffer, position);
+                    if (read < 0)
+                        throw new IOException(String.format("File \"%s\" was modified while " +
+                                "being read", mFile.toString()));
+                    position += read;
+                    if (mThrottle != null)
+                        mThrottle.acquire(read);
+                }
+            }
+        }
+    }
+
+    /**
+     * Task that completely reads a batch of small files - a file that cannot be read does not stop
+     * the rest of the batch.
+     */
+    private final class BatchTask extends RecursiveAction {
+        private final List<File> mFiles;
+        private final byte[][] mContents;
+        private final List<Integer> mIndexes;
+
+        /**
+         * Generates a new task.
+         *
+         * @param files    all the files.
+         * @param contents where the contents of every file are stored.
+         * @param indexes  indexes of the files of this batch.
+         */
+        BatchTask(List<File> files, byte[][] contents, List<Integer> indexes) {
+            mFiles = files;
+            mContents = contents;
+            mIndexes = indexes;
+        }
+
+        @Override
+        protected void compute() {
+            try {
+                for (int i : mIndexes) {
+                    File file = mFiles.get(i);
+                    attempt(i, file, () -> mContents[i] = read(file));
+                }
+            } catch (InterruptedIOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+
+        /**
+         * Reads the whole given file, block by block if there is a throttle.
+         *
+         * @param file file to read.
+         *
+         * @return {@code byte[]} with the contents.
+         *
+         * @throws IOException if the file cannot be read.
+         */
+        private byte[] read(File file) throws IOException {
+            if (mThrottle == null)
+                return Files.readAllBytes(file.toPath());
+            try (InputStream input = mThrottle.open(file)) {
+                ByteArrayOutputStream output = new ByteArrayOutputStream((int) file.length());
+                byte[] block = new byte[Container.BLOCK_SIZE];
+                int read;
+                while ((read = input.read(block)) != -1)
+                    output.write(block, 0, read);
+                return output.toByteArray();
+            }
+        }
+    }
+}
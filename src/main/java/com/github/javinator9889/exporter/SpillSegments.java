@@ -0,0 +1,284 @@
+package com.github.javinator9889.exporter;
+
+import com.github.javinator9889.error.FileError;
+
+import java.io.BufferedOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * <p>Read data that did not fit at the memory budget, spilled to <b>temporary segment files</b>.
+ * <p>
+ * Every group of sources read at once is appended as a new segment, encoded as modified UTF-8 -
+ * the same encoding the serialization uses - so the data is later streamed to the bytes file as
+ * it is (see {@link SerializedStrings#write(OutputStream, String[], SpillSegments)}). Its hash is
+ * computed while it is appended, as {@link FileToBytesExporter#getHash(String)} does for the
+ * whole data.
+ * <p>
+ * The segments are shared by the exporters cloned from the one that read them: every holder
+ * {@link #retain() retains} them, and they are removed once the last one {@link #release()
+ * releases} them. The segments still alive when the JVM exits are removed by a shutdown hook -
+ * {@link File#deleteOnExit()} is not used, as it never forgets a file, so long-running processes
+ * that spill again and again would leak memory.
+ */
+final class SpillSegments {
+    private static final int BUFFER_SIZE = 64 * 1024;
+    private static final Set<File> LIVE_SEGMENTS = ConcurrentHashMap.newKeySet();
+
+    static {
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            for (File segment : LIVE_SEGMENTS)
+                segment.delete();
+        }, "spill-segments-cleanup"));
+    }
+
+    private final File mDirectory;
+    private final ArrayList<File> mSegments;
+    private final MessageDigest mDigest;
+    private long mUtfLength;
+    private String mHash;
+    private int mHolders;
+
+    /**
+     * Generates new empty segments, retained by their creator.
+     *
+     * @param directory directory where the segments are written - {@code null} for the default
+     *                  temporary directory.
+     */
+    SpillSegments(File directory) {
+        mDirectory = directory;
+        mSegments = new ArrayList<>();
+        mDigest = Container.newDigest();
+        mHolders = 1;
+    }
+
+    /**
+     * Generates completed segments holding the given encoded data, retained by their creator.
+     *
+     * @param input     stream the modified UTF-8 data is read from.
+     * @param utfLength number of bytes of the data.
+     * @param hash      hash of the data.
+     * @param directory directory where the segments are written - {@code null} for the default
+     *                  temporary directory.
+     *
+     * @return the new {@link SpillSegments}.
+     *
+     * @throws IOException if the data cannot be read or the segment cannot be written.
+     */
+    static SpillSegments copyOf(InputStream input, long utfLength, String hash, File directory)
+            throws IOException {
+        SpillSegments segments = new SpillSegments(directory);
+        File segment = segments.newSegment();
+        byte[] buffer = new byte[BUFFER_SIZE];
+        try (OutputStream output = new FileOutputStream(segment)) {
+            long remaining = utfLength;
+            while (remaining > 0) {
+                int read = input.read(buffer, 0, (int) Math.min(buffer.length, remaining));
+                if (read == -1)
+                    throw new EOFException(String.format("Spilled data is truncated: %d of %d " +
+                            "bytes are missing", remaining, utfLength));
+                output.write(buffer, 0, read);
+                remaining -= read;
+            }
+        } catch (IOException e) {
+            segments.release();
+            throw e;
+        }
+        segments.mUtfLength = utfLength;
+        segments.mHash = hash;
+        return segments;
+    }
+
+    /**
+     * Appends a new segment with the concatenation of the given strings.
+     *
+     * @param parts strings to append, in order.
+     *
+     * @throws IOException           if the segment cannot be written.
+     * @throws IllegalStateException if the hash was already obtained.
+     */
+    synchronized void append(List<String> parts) throws IOException {
+        if (mHash != null)
+            throw new IllegalStateException("Segments cannot be appended once completed");
+        File segment = newSegment();
+        byte[] buffer = new byte[BUFFER_SIZE];
+        try (OutputStream output = new BufferedOutputStream(new FileOutputStream(segment),
+                BUFFER_SIZE)) {
+            for (String part : parts) {
+                mDigest.update(part.getBytes(StandardCharsets.UTF_8));
+                long length = SerializedStrings.utfLength(part);
+                SerializedStrings.writeUtf(output, part, buffer);
+                mUtfLength += length;
+            }
+        }
+    }
+
+    /**
+     * Creates a new empty segment file at the end of the segments.
+     *
+     * @return the segment {@code File}.
+     *
+     * @throws IOException if the file cannot be created.
+     */
+    private File newSegment() throws IOException {
+        File segment = mDirectory == null ?
+                Files.createTempFile("filetobytes-", ".segment").toFile() :
+                Files.createTempFile(mDirectory.toPath(), "filetobytes-", ".segment").toFile();
+        LIVE_SEGMENTS.add(segment);
+        mSegments.add(segment);
+        return segment;
+    }
+
+    /**
+     * Obtains the hash of the whole data - no more segments can be appended once it is obtained.
+     *
+     * @return {@code String} with the hash.
+     */
+    synchronized String getHash() {
+        if (mHash == null)
+            mHash = new String(mDigest.digest());
+        return mHash;
+    }
+
+    /**
+     * Obtains the length of the modified UTF-8 encoding of the whole data.
+     *
+     * @return {@code long} with the number of bytes.
+     */
+    synchronized long getUtfLength() {
+        return mUtfLength;
+    }
+
+    /**
+     * Copies the encoded data of all the segments, in order, to the given stream.
+     *
+     * @param output stream where the data is copied.
+     * @param buffer buffer used for copying.
+     *
+     * @throws IOException           if any segment cannot be read or the stream cannot be
+     *                               written.
+     * @throws IllegalStateException if the segments were released.
+     */
+    synchronized void copyTo(OutputStream output, byte[] buffer) throws IOException {
+        checkRetained();
+        for (File segment : mSegments) {
+            try (InputStream input = new FileInputStream(segment)) {
+                int read;
+                while ((read = input.read(buffer)) != -1)
+                    output.write(buffer, 0, read);
+            }
+        }
+    }
+
+    /**
+     * Decodes the whole data - it must fit at the heap.
+     *
+     * @return {@code String} with the data.
+     *
+     * @throws IOException           if any segment cannot be read.
+     * @throws FileError             if any segment is not valid modified UTF-8 (e.g.: it was
+     *                               modified).
+     * @throws IllegalStateException if the segments were released.
+     */
+    synchronized String read() throws IOException {
+        checkRetained();
+        StringBuilder data = new StringBuilder((int) Math.min(mUtfLength, Integer.MAX_VALUE - 8));
+        byte[] buffer = new byte[BUFFER_SIZE];
+        for (File segment : mSegments) {
+            try (InputStream input = new FileInputStream(segment)) {
+                int pending = 0;
+                int read;
+                while ((read = input.read(buffer, pending, buffer.length - pending)) != -1) {
+                    int available = pending + read;
+                    int position = decode(buffer, available, data);
+                    pending = available - position;
+                    System.arraycopy(buffer, position, buffer, 0, pending);
+                }
+                if (pending != 0)
+                    throw new FileError(String.format("Segment \"%s\" is truncated",
+                            segment.toString()));
+            }
+        }
+        return data.toString();
+    }
+
+    /**
+     * Decodes the complete characters of the given modified UTF-8 bytes.
+     *
+     * @param bytes  encoded bytes.
+     * @param length number of valid bytes.
+     * @param data   receives the decoded characters.
+     *
+     * @return the position of the first byte that was not decoded, as its character is not
+     * complete.
+     */
+    private static int decode(byte[] bytes, int length, StringBuilder data) {
+        int position = 0;
+        while (position < length) {
+            int first = bytes[position] & 0xFF;
+            if (first < 0x80) {
+                data.append((char) first);
+                ++position;
+            } else if ((first & 0xE0) == 0xC0) {
+                if (position + 1 >= length)
+                    break;
+                data.append((char) (((first & 0x1F) << 6) | (bytes[position + 1] & 0x3F)));
+                position += 2;
+            } else if ((first & 0xF0) == 0xE0) {
+                if (position + 2 >= length)
+                    break;
+                data.append((char) (((first & 0x0F) << 12) | ((bytes[position + 1] & 0x3F) << 6) |
+                        (bytes[position + 2] & 0x3F)));
+                position += 3;
+            } else {
+                throw new FileError(String.format("Invalid modified UTF-8 byte: 0x%02X", first));
+            }
+        }
+        return position;
+    }
+
+    /**
+     * Checks that the segments were not deleted yet.
+     *
+     * @throws IllegalStateException if the segments were released.
+     */
+    private void checkRetained() {
+        if (mHolders <= 0)
+            throw new IllegalStateException("Spilled segments were already released");
+    }
+
+    /**
+     * Adds a new holder of the segments.
+     *
+     * @return these segments.
+     */
+    synchronized SpillSegments retain() {
+        ++mHolders;
+        return this;
+    }
+
+    /**
+     * Removes a holder of the segments, deleting them once there are no more holders.
+     */
+    synchronized void release() {
+        if (--mHolders > 0)
+            return;
+        for (File segment : mSegments) {
+            segment.delete();
+            LIVE_SEGMENTS.remove(segment);
+        }
+        mSegments.clear();
+    }
+}
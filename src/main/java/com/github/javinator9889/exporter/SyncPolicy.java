@@ -0,0 +1,26 @@
+package com.github.javinator9889.exporter;
+
+/**
+ * When the written data is forced to the storage device ({@code fsync}) while exporting.
+ * <p>
+ * Exports are always written to a temporary file that is atomically renamed to the destination,
+ * so a crash never leaves a truncated destination. Forcing the data to the device also protects
+ * the exports against power failures, at the cost of waiting for the device.
+ *
+ * @see FileToBytesExporter#setSyncPolicy(SyncPolicy)
+ */
+public enum SyncPolicy {
+    /**
+     * Data is never forced - the operating system decides when it is written.
+     */
+    NONE,
+    /**
+     * The whole export is forced before being renamed to the destination.
+     */
+    ON_PUBLISH,
+    /**
+     * Besides forcing the export before renaming it, the written entries are forced at every
+     * checkpoint, so no completed entry is lost even after a power failure.
+     */
+    ON_CHECKPOINT
+}
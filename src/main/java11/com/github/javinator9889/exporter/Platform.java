@@ -0,0 +1,177 @@
+package com.github.javinator9889.exporter;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * <p>Runs the blocking I/O work (writing extracted files, reading entries for subscribers...)
+ * with the best mechanism of the running JVM.
+ * <p>
+ * This is the Java 11+ version: when virtual threads are available (Java 21+), every blocking task
+ * runs at its own virtual thread, so the number of concurrent operations is not limited by the
+ * number of cores (nor blocks the common pool) - at most {@link #MAX_CONCURRENT_TASKS} at once.
+ * Otherwise, the work runs at the {@link ForkJoinPool#commonPool() common pool}.
+ */
+final class Platform {
+    /**
+     * Maximum number of items processed at once by {@link #forEach(List, IOConsumer)} on virtual
+     * threads, so the open files are bounded.
+     */
+    static final int MAX_CONCURRENT_TASKS = 64;
+    private static final ExecutorService VIRTUAL_THREADS = newVirtualThreadExecutor();
+
+    /**
+     * Do not let anyone instantiate this class.
+     */
+    private Platform() {
+    }
+
+    /**
+     * Obtains the executor for tasks that block on I/O.
+     *
+     * @return the shared {@code Executor}.
+     */
+    static Executor blockingExecutor() {
+        return VIRTUAL_THREADS != null ? VIRTUAL_THREADS : ForkJoinPool.commonPool();
+    }
+
+    /**
+     * Runs the given action for every item concurrently, waiting for all of them. Once the action
+     * fails for any item, the pending ones are not started - but the ones already running are
+     * waited for, so none is still running when this method returns or throws.
+     *
+     * @param items  items to process.
+     * @param action action to run for every item.
+     * @param <T>    type of the items.
+     *
+     * @throws IOException if the action fails for any item - the first failure is thrown.
+     */
+    static <T> void forEach(List<T> items, IOConsumer<? super T> action) throws IOException {
+        if (VIRTUAL_THREADS == null) {
+            forEachParallel(items, action);
+            return;
+        }
+        Semaphore permits = new Semaphore(MAX_CONCURRENT_TASKS);
+        AtomicBoolean hasFailed = new AtomicBoolean();
+        ArrayList<Future<Void>> tasks = new ArrayList<>(items.size());
+        boolean interrupted = false;
+        for (T item : items) {
+            try {
+                permits.acquire();
+            } catch (InterruptedException e) {
+                interrupted = true;
+                break;
+            }
+            if (hasFailed.get()) {
+                permits.release();
+                break;
+            }
+            tasks.add(VIRTUAL_THREADS.submit(() -> {
+                try {
+                    action.accept(item);
+                    return null;
+                } catch (Throwable e) {
+                    hasFailed.set(true);
+                    throw e;
+                } finally {
+                    permits.release();
+                }
+            }));
+        }
+        // Every running task holds a permit until it finishes
+        permits.acquireUninterruptibly(MAX_CONCURRENT_TASKS);
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while running the tasks");
+        }
+        for (Future<Void> task : tasks) {
+            try {
+                task.get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted while waiting for the tasks");
+            } catch (ExecutionException e) {
+                Throwable cause = e.getCause();
+                if (cause instanceof IOException)
+                    throw (IOException) cause;
+                if (cause instanceof RuntimeException)
+                    throw (RuntimeException) cause;
+                throw (Error) cause;
+            }
+        }
+    }
+
+    /**
+     * Runs the given action for every item at the common pool, waiting for all of them. Once the
+     * action fails for any item, the pending ones are skipped - the stream is never left by an
+     * exception, so no action is still running when this method returns or throws.
+     *
+     * @param items  items to process.
+     * @param action action to run for every item.
+     * @param <T>    type of the items.
+     *
+     * @throws IOException if the action fails for any item - the first failure is thrown.
+     */
+    private static <T> void forEachParallel(List<T> items, IOConsumer<? super T> action)
+            throws IOException {
+        AtomicReference<Throwable> failure = new AtomicReference<>();
+        items.parallelStream().forEach(item -> {
+            if (failure.get() != null)
+                return;
+            try {
+                action.accept(item);
+            } catch (IOException | RuntimeException | Error e) {
+                failure.compareAndSet(null, e);
+            }
+        });
+        Throwable cause = failure.get();
+        if (cause instanceof IOException)
+            throw (IOException) cause;
+        if (cause instanceof RuntimeException)
+            throw (RuntimeException) cause;
+        if (cause != null)
+            throw (Error) cause;
+    }
+
+    /**
+     * Creates the executor of virtual threads if the running JVM supports them (Java 21+). It is
+     * looked up at runtime, so this class still runs on older JVMs.
+     *
+     * @return the {@code ExecutorService}, {@code null} if virtual threads are not supported.
+     */
+    private static ExecutorService newVirtualThreadExecutor() {
+        try {
+            return (ExecutorService) Executors.class
+                    .getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (ReflectiveOperationException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Action over an item that may fail with an {@link IOException}.
+     *
+     * @param <T> type of the item.
+     */
+    interface IOConsumer<T> {
+        /**
+         * Runs the action.
+         *
+         * @param item item to process.
+         *
+         * @throws IOException if the action fails.
+         */
+        void accept(T item) throws IOException;
+    }
+}
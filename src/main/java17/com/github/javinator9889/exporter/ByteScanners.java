@@ -0,0 +1,25 @@
+package com.github.javinator9889.exporter;
+
+/**
+ * Selects the {@link ByteScanner} implementation for the running JVM. This is the Java 17+
+ * version, which uses the Vector API when the {@code jdk.incubator.vector} module is enabled
+ * ({@code --add-modules jdk.incubator.vector}), and the portable one otherwise.
+ */
+final class ByteScanners {
+    /**
+     * Do not let anyone instantiate this class.
+     */
+    private ByteScanners() {
+    }
+
+    /**
+     * Creates the scanner for the running JVM.
+     *
+     * @return the {@code ByteScanner}.
+     */
+    static ByteScanner create() {
+        if (ModuleLayer.boot().findModule("jdk.incubator.vector").isPresent())
+            return new VectorByteScanner();
+        return new ByteScanner();
+    }
+}
@@ -0,0 +1,46 @@
+package com.github.javinator9889.exporter;
+
+import jdk.incubator.vector.ByteVector;
+import jdk.incubator.vector.VectorMask;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * {@link ByteScanner} that compares as many bytes at once as the widest SIMD registers of the CPU
+ * hold, by using the Vector API. The tail of the data, shorter than a vector, is scanned by the
+ * portable implementation.
+ */
+final class VectorByteScanner extends ByteScanner {
+    private static final VectorSpecies<Byte> SPECIES = ByteVector.SPECIES_PREFERRED;
+
+    @Override
+    int indexOf(byte[] data, int from, int to, byte value) {
+        int i = from;
+        for (int bound = from + SPECIES.loopBound(to - from); i < bound; i += SPECIES.length()) {
+            VectorMask<Byte> found = ByteVector.fromArray(SPECIES, data, i).eq(value);
+            if (found.anyTrue())
+                return i + found.firstTrue();
+        }
+        return super.indexOf(data, i, to, value);
+    }
+
+    @Override
+    int indexOfLineEnd(byte[] data, int from, int to) {
+        int i = from;
+        for (int bound = from + SPECIES.loopBound(to - from); i < bound; i += SPECIES.length()) {
+            ByteVector vector = ByteVector.fromArray(SPECIES, data, i);
+            VectorMask<Byte> found = vector.eq((byte) '\n').or(vector.eq((byte) '\r'));
+            if (found.anyTrue())
+                return i + found.firstTrue();
+        }
+        return super.indexOfLineEnd(data, i, to);
+    }
+
+    @Override
+    int count(byte[] data, int from, int to, byte value) {
+        int count = 0;
+        int i = from;
+        for (int bound = from + SPECIES.loopBound(to - from); i < bound; i += SPECIES.length())
+            count += ByteVector.fromArray(SPECIES, data, i).eq(value).trueCount();
+        return count + super.count(data, i, to, value);
+    }
+}
@@ -0,0 +1,123 @@
+import com.github.javinator9889.error.FileError;
+import com.github.javinator9889.exporter.DiscoveryOptions;
+import com.github.javinator9889.exporter.FileToBytesExporter;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.attribute.PosixFilePermission;
+import java.util.EnumSet;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.junit.Assume.assumeFalse;
+import static org.junit.Assume.assumeNoException;
+
+public class BoundedDiscovery {
+    private static final String NAME = "file.txt";
+    @Rule
+    public TemporaryFolder mFolder = new TemporaryFolder();
+    private FileToBytesExporter mToBytesExporter;
+
+    @Before
+    public void setup() throws IOException {
+        File root = mFolder.getRoot();
+        write(new File(root, NAME), "root");
+        write(new File(root, "a/" + NAME), "a");
+        write(new File(root, "a/b/" + NAME), "b");
+        write(new File(root, "excluded/" + NAME), "excluded");
+        mToBytesExporter = new FileToBytesExporter(NAME, root.toString());
+    }
+
+    @Test
+    public void maxDepth() throws IOException {
+        DiscoveryOptions options = new DiscoveryOptions();
+        options.setMaxDepth(2);
+        options.setExcludes("excluded");
+        mToBytesExporter.setDiscoveryOptions(options);
+        mToBytesExporter.readSource(true, "|");
+        String data = mToBytesExporter.getReadData();
+        assertTrue(data.contains("root\n"));
+        assertTrue(data.contains("a\n"));
+        assertFalse(data.contains("b\n"));
+        assertFalse(data.contains("excluded\n"));
+    }
+
+    @Test
+    public void maxFiles() throws IOException {
+        DiscoveryOptions options = new DiscoveryOptions();
+        options.setMaxFiles(2);
+        mToBytesExporter.setDiscoveryOptions(options);
+        mToBytesExporter.readSource(true, "|");
+        assertEquals(2, mToBytesExporter.getReadData().split("\\|").length);
+    }
+
+    @Test
+    public void unreadableDirectory() throws IOException {
+        File locked = new File(mFolder.getRoot(), "locked");
+        write(new File(locked, NAME), "locked");
+        Files.setPosixFilePermissions(locked.toPath(), EnumSet.noneOf(PosixFilePermission.class));
+        try {
+            // Permissions are not enforced for root
+            assumeFalse(locked.canRead());
+            DiscoveryOptions options = new DiscoveryOptions();
+            options.setErrorPolicy(DiscoveryOptions.ErrorPolicy.SKIP);
+            mToBytesExporter.setDiscoveryOptions(options);
+            mToBytesExporter.readSource(true, "|");
+            String data = mToBytesExporter.getReadData();
+            assertEquals(4, data.split("\\|").length);
+            assertFalse(data.contains("locked\n"));
+
+            options.setErrorPolicy(DiscoveryOptions.ErrorPolicy.FAIL);
+            mToBytesExporter.setDiscoveryOptions(options);
+            try {
+                mToBytesExporter.readSource(true, "|");
+                fail("The unreadable directory must fail the search");
+            } catch (FileError expected) {
+                assertTrue(expected.getMessage().contains("locked"));
+            }
+        } finally {
+            Files.setPosixFilePermissions(locked.toPath(),
+                    EnumSet.of(PosixFilePermission.OWNER_READ, PosixFilePermission.OWNER_WRITE,
+                            PosixFilePermission.OWNER_EXECUTE));
+        }
+    }
+
+    @Test
+    public void symbolicLinkCycle() throws IOException {
+        File root = mFolder.getRoot();
+        try {
+            Files.createSymbolicLink(new File(root, "a/b/loop").toPath(), root.toPath());
+        } catch (UnsupportedOperationException e) {
+            assumeNoException(e);
+        }
+        DiscoveryOptions options = new DiscoveryOptions();
+        options.setFollowLinks(true);
+        mToBytesExporter.setDiscoveryOptions(options);
+        mToBytesExporter.readSource(true, "|");
+        // Every file is found once: the looping directory is not walked again
+        assertEquals(4, mToBytesExporter.getReadData().split("\\|").length);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void emptyExclude() {
+        new DiscoveryOptions().setExcludes("build", "");
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void nullExclude() {
+        new DiscoveryOptions().setExcludes("build", null);
+    }
+
+    private static void write(File file, String contents) throws IOException {
+        file.getParentFile().mkdirs();
+        Files.write(file.toPath(), contents.getBytes(StandardCharsets.UTF_8));
+    }
+}
@@ -0,0 +1,154 @@
+import com.github.javinator9889.exporter.ChunkPublisher;
+import com.github.javinator9889.exporter.ContainerReader;
+import com.github.javinator9889.exporter.EntryChunk;
+import com.github.javinator9889.exporter.FileToBytesExporter;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class ChunkPublishing {
+    private static final int NUMBER_OF_FILES = 6;
+    @Rule
+    public TemporaryFolder mFolder = new TemporaryFolder();
+    private File mSources;
+    private FileToBytesExporter mToBytesExporter;
+    private ExecutorService mExecutor;
+
+    @Before
+    public void setup() throws IOException {
+        mSources = mFolder.newFolder("sources");
+        for (int i = 0; i < NUMBER_OF_FILES; ++i) {
+            byte[] contents = new byte[i * 50000];
+            for (int j = 0; j < contents.length; ++j)
+                contents[j] = (byte) (i + j);
+            Files.write(new File(mSources, "f" + i + ".bin").toPath(), contents);
+        }
+        mToBytesExporter = new FileToBytesExporter("*.bin", mSources.toString());
+        mExecutor = Executors.newSingleThreadExecutor();
+    }
+
+    @After
+    public void tearDown() {
+        mExecutor.shutdownNow();
+    }
+
+    @Test
+    public void sourcesHonorDemand() throws Exception {
+        Collector collector = new Collector(1);
+        mToBytesExporter.publishSources(true, mExecutor).subscribe(collector);
+        assertTrue(collector.mCompleted.await(10, TimeUnit.SECONDS));
+        assertNull(collector.mError);
+        assertEquals(NUMBER_OF_FILES, collector.mEntries.size());
+        // Entries are named relative to the inspected directory
+        List<String> names = new ArrayList<>(collector.mNames);
+        Collections.sort(names);
+        assertEquals(Arrays.asList("f0.bin", "f1.bin", "f2.bin", "f3.bin", "f4.bin", "f5.bin"),
+                names);
+        for (int i = 0; i < NUMBER_OF_FILES; ++i)
+            assertArrayEquals(Files.readAllBytes(new File(mSources, collector.mNames.get(i))
+                    .toPath()), collector.mEntries.get(i).toByteArray());
+        assertEquals(0, collector.mExceeded.get());
+    }
+
+    @Test
+    public void containerEntries() throws Exception {
+        File container = new File(mFolder.getRoot(), "export.ftbx");
+        mToBytesExporter.exportContainer(container, true);
+        Collector collector = new Collector(3);
+        try (ContainerReader reader = new ContainerReader(container)) {
+            reader.publish(reader.getEntries(), mExecutor).subscribe(collector);
+            assertTrue(collector.mCompleted.await(10, TimeUnit.SECONDS));
+            assertNull(collector.mError);
+            for (int i = 0; i < NUMBER_OF_FILES; ++i)
+                assertArrayEquals(reader.read(reader.getEntries().get(i)),
+                        collector.mEntries.get(i).toByteArray());
+        }
+        assertEquals(0, collector.mExceeded.get());
+    }
+
+    @Test
+    public void invalidRequest() throws Exception {
+        Collector collector = new Collector(1) {
+            @Override
+            public void onSubscribe(ChunkPublisher.Subscription subscription) {
+                subscription.request(0);
+            }
+        };
+        mToBytesExporter.publishSources(true, mExecutor).subscribe(collector);
+        assertTrue(collector.mCompleted.await(10, TimeUnit.SECONDS));
+        assertTrue(collector.mError instanceof IllegalArgumentException);
+    }
+
+    /**
+     * Subscriber that requests a fixed number of chunks every time it has received all the
+     * previously requested ones, and checks that no more chunks than requested are received.
+     */
+    private static class Collector implements ChunkPublisher.Subscriber {
+        private final int mBatch;
+        private final List<String> mNames = new ArrayList<>();
+        private final List<ByteArrayOutputStream> mEntries = new ArrayList<>();
+        private final CountDownLatch mCompleted = new CountDownLatch(1);
+        private final AtomicInteger mExceeded = new AtomicInteger();
+        private ChunkPublisher.Subscription mSubscription;
+        private volatile Throwable mError;
+        private int mOutstanding;
+
+        Collector(int batch) {
+            mBatch = batch;
+        }
+
+        @Override
+        public void onSubscribe(ChunkPublisher.Subscription subscription) {
+            mSubscription = subscription;
+            mOutstanding = mBatch;
+            subscription.request(mBatch);
+        }
+
+        @Override
+        public void onNext(EntryChunk chunk) {
+            if (--mOutstanding < 0)
+                mExceeded.incrementAndGet();
+            if (chunk.getOffset() == 0) {
+                mNames.add(chunk.getEntryName());
+                mEntries.add(new ByteArrayOutputStream());
+            }
+            mEntries.get(chunk.getEntryIndex()).write(chunk.getData(), 0, chunk.getLength());
+            if (mOutstanding == 0) {
+                mOutstanding = mBatch;
+                mSubscription.request(mBatch);
+            }
+        }
+
+        @Override
+        public void onError(Throwable throwable) {
+            mError = throwable;
+            mCompleted.countDown();
+        }
+
+        @Override
+        public void onComplete() {
+            mCompleted.countDown();
+        }
+    }
+}
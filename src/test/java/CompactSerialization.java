@@ -0,0 +1,65 @@
+import com.github.javinator9889.exporter.FileToBytesExporter;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.util.Arrays;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+public class CompactSerialization {
+    @Test
+    public void sameBytesAsObjectOutputStream() throws Exception {
+        StringBuilder large = new StringBuilder();
+        while (large.length() < 100000)
+            large.append("line \u00e9\u20ac\u0000 ").append(large.length()).append('\n');
+        for (String source : Arrays.asList("", "plain text\n", large.toString())) {
+            ByteArrayOutputStream written = new ByteArrayOutputStream();
+            FileToBytesExporter.writeObject(source, written);
+            // Deserializing and serializing again keeps the shared instances, if any
+            String[] read;
+            try (ObjectInputStream input = new ObjectInputStream(
+                    new ByteArrayInputStream(written.toByteArray()))) {
+                read = (String[]) input.readObject();
+            }
+            assertEquals(source, read[2]);
+            assertArrayEquals(serialize(read), written.toByteArray());
+        }
+    }
+
+    @Test
+    public void nullSeparator() throws IOException {
+        FileToBytesExporter exporter = new FileToBytesExporter();
+        ByteArrayOutputStream written = new ByteArrayOutputStream();
+        exporter.readObject(new ByteArrayInputStream(serialize(new String[]{null,
+                hash("data\n"), "data\n"})));
+        exporter.writeObject(written);
+        FileToBytesExporter read = new FileToBytesExporter();
+        read.readObject(new ByteArrayInputStream(written.toByteArray()));
+        assertEquals("data\n", read.getReadData());
+        assertEquals(null, read.getFileSeparator());
+    }
+
+    private static String hash(String data) throws IOException {
+        ByteArrayOutputStream written = new ByteArrayOutputStream();
+        FileToBytesExporter.writeObject(data, written);
+        try (ObjectInputStream input = new ObjectInputStream(
+                new ByteArrayInputStream(written.toByteArray()))) {
+            return ((String[]) input.readObject())[1];
+        } catch (ClassNotFoundException e) {
+            throw new IOException(e);
+        }
+    }
+
+    private static byte[] serialize(String[] strings) throws IOException {
+        ByteArrayOutputStream expected = new ByteArrayOutputStream();
+        try (ObjectOutputStream output = new ObjectOutputStream(expected)) {
+            output.writeObject(strings);
+        }
+        return expected.toByteArray();
+    }
+}
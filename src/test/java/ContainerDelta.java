@@ -0,0 +1,111 @@
+import com.github.javinator9889.error.InvalidContainerException;
+import com.github.javinator9889.exporter.ContainerDiff;
+import com.github.javinator9889.exporter.ContainerEntry;
+import com.github.javinator9889.exporter.ContainerOptions;
+import com.github.javinator9889.exporter.ContainerReader;
+import com.github.javinator9889.exporter.FileToBytesExporter;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Collections;
+import java.util.Random;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class ContainerDelta {
+    private static final int NUMBER_OF_FILES = 5;
+    @Rule
+    public TemporaryFolder mFolder = new TemporaryFolder();
+    private File mSources;
+    private FileToBytesExporter mToBytesExporter;
+    private File mOld;
+    private File mNew;
+
+    @Before
+    public void setup() throws IOException {
+        mSources = mFolder.newFolder("sources");
+        Random random = new Random(0);
+        for (int i = 0; i < NUMBER_OF_FILES; ++i) {
+            StringBuilder contents = new StringBuilder();
+            // A file bigger than a block and small ones
+            int lines = i == 0 ? 20000 : 10 * i;
+            for (int line = 0; line < lines; ++line)
+                contents.append("line ").append(random.nextInt()).append('\n');
+            write("f" + i + ".txt", contents.toString());
+        }
+        mToBytesExporter = new FileToBytesExporter("*.txt", mSources.toString());
+        ContainerOptions options = new ContainerOptions();
+        options.setCompression(true);
+        mToBytesExporter.setContainerOptions(options);
+        mOld = new File(mFolder.getRoot(), "old.ftbx");
+        mToBytesExporter.exportContainer(mOld, true);
+        write("f1.txt", "changed\n");
+        Files.delete(new File(mSources, "f2.txt").toPath());
+        write("f5.txt", "added\n");
+        mNew = new File(mFolder.getRoot(), "new.ftbx");
+        mToBytesExporter.exportContainer(mNew, true);
+    }
+
+    @Test
+    public void comparesByDigest() throws IOException {
+        ContainerDiff diff = ContainerDiff.compare(mOld, mNew);
+        assertEquals(1, diff.getAdded().size());
+        assertEquals("f5.txt", diff.getAdded().get(0).getName());
+        assertEquals(1, diff.getRemoved().size());
+        assertEquals("f2.txt", diff.getRemoved().get(0).getName());
+        assertEquals(1, diff.getChanged().size());
+        assertEquals("f1.txt", diff.getChanged().get(0).getName());
+        assertEquals(NUMBER_OF_FILES - 2, diff.getUnchanged());
+        assertTrue(ContainerDiff.compare(mNew, mNew).isEmpty());
+        // Contents are compared, not how they are stored
+        mToBytesExporter.setContainerOptions(new ContainerOptions());
+        File uncompressed = new File(mFolder.getRoot(), "uncompressed.ftbx");
+        mToBytesExporter.exportContainer(uncompressed, true);
+        assertTrue(ContainerDiff.compare(mNew, uncompressed).isEmpty());
+    }
+
+    @Test
+    public void appliesDelta() throws IOException {
+        File delta = new File(mFolder.getRoot(), "delta.ftbx");
+        ContainerDiff.compare(mOld, mNew).writeDelta(delta);
+        assertTrue(delta.length() < mNew.length());
+        try (ContainerReader reader = new ContainerReader(delta)) {
+            assertEquals(Collections.singletonList("f2.txt"), reader.getRemovedNames());
+            assertEquals(2, reader.getEntries().size());
+            assertEquals("changed\n", new String(reader.read(reader.getEntry("f1.txt")),
+                    StandardCharsets.UTF_8));
+        }
+        File applied = new File(mFolder.getRoot(), "applied.ftbx");
+        ContainerDiff.apply(mOld, delta, applied);
+        assertTrue(ContainerDiff.compare(applied, mNew).isEmpty());
+        try (ContainerReader expected = new ContainerReader(mNew);
+             ContainerReader reader = new ContainerReader(applied)) {
+            assertTrue(reader.getRemovedNames().isEmpty());
+            for (ContainerEntry entry : expected.getEntries())
+                assertArrayEquals(expected.read(entry),
+                        reader.read(reader.getEntry(entry.getName())));
+        }
+    }
+
+    @Test(expected = InvalidContainerException.class)
+    public void differentEncoding() throws IOException {
+        File delta = new File(mFolder.getRoot(), "delta.ftbx");
+        ContainerDiff.compare(mOld, mNew).writeDelta(delta);
+        mToBytesExporter.setContainerOptions(new ContainerOptions());
+        File uncompressed = new File(mFolder.getRoot(), "uncompressed.ftbx");
+        mToBytesExporter.exportContainer(uncompressed, true);
+        ContainerDiff.apply(uncompressed, delta, new File(mFolder.getRoot(), "applied.ftbx"));
+    }
+
+    private void write(String name, String contents) throws IOException {
+        Files.write(new File(mSources, name).toPath(), contents.getBytes(StandardCharsets.UTF_8));
+    }
+}
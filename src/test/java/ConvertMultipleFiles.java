@@ -61,7 +61,7 @@ public class ConvertMultipleFiles {
             String childDir = "d" + i;
             File newDir = new File(dirs, childDir);
             newDir.mkdir();
-            File destinationFile = new File(newDir.toString() + "\\" + input.toString());
+            File destinationFile = new File(newDir, input.getName());
             try {
                 Files.copy(input.toPath(), destinationFile.toPath());
                 createdDirs[i] = newDir.toString();
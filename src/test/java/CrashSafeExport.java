@@ -0,0 +1,159 @@
+import com.github.javinator9889.exporter.ContainerEntry;
+import com.github.javinator9889.exporter.ContainerOptions;
+import com.github.javinator9889.exporter.ContainerReader;
+import com.github.javinator9889.exporter.DiscoveryOptions;
+import com.github.javinator9889.exporter.FileToBytesExporter;
+import com.github.javinator9889.exporter.SyncPolicy;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.fail;
+
+public class CrashSafeExport {
+    private static final int NUMBER_OF_FILES = 12;
+    @Rule
+    public TemporaryFolder mFolder = new TemporaryFolder();
+    private FileToBytesExporter mToBytesExporter;
+    private File mSources;
+
+    @Before
+    public void setup() throws IOException {
+        mSources = mFolder.newFolder("sources");
+        for (int i = 0; i < NUMBER_OF_FILES; ++i)
+            write(new File(mSources, "f" + i + ".txt"), "file " + i);
+        mToBytesExporter = new FileToBytesExporter("*.txt", mSources.toString());
+        DiscoveryOptions discovery = new DiscoveryOptions();
+        discovery.setSorted(true);
+        mToBytesExporter.setDiscoveryOptions(discovery);
+        ContainerOptions options = new ContainerOptions();
+        options.setCheckpointInterval(2);
+        mToBytesExporter.setContainerOptions(options);
+        mToBytesExporter.setSyncPolicy(SyncPolicy.ON_CHECKPOINT);
+    }
+
+    @Test
+    public void resume() throws IOException {
+        File destination = new File(mFolder.getRoot(), "export.ftbx");
+        crash(destination);
+        File partial = new File(mFolder.getRoot(), "export.ftbx.partial");
+        File checkpoint = new File(mFolder.getRoot(), "export.ftbx.checkpoint");
+        // Same length and modification time: a reused entry keeps the old contents
+        replaceKeepingState(new File(mSources, "f0.txt"), "FILE 0");
+        replaceKeepingState(new File(mSources, "f8.txt"), "FILE 8");
+        File modified = new File(mSources, "f7.txt");
+        write(modified, "modified contents");
+        modified.setLastModified(modified.lastModified() + 2000);
+
+        List<ContainerEntry> resumed = mToBytesExporter.exportContainer(destination, true);
+        assertFalse(partial.exists());
+        assertFalse(checkpoint.exists());
+        assertEquals(NUMBER_OF_FILES, resumed.size());
+        // Sorted: f0, f1, f10, f11, f2 ... f6 come before the modified f7 and are reused
+        assertEquals("file 0", readEntry(destination, "f0.txt"));
+        assertEquals("file 6", readEntry(destination, "f6.txt"));
+        assertEquals("modified contents", readEntry(destination, "f7.txt"));
+        assertEquals("FILE 8", readEntry(destination, "f8.txt"));
+    }
+
+    @Test
+    public void resumeVerifiesPartialFile() throws IOException {
+        File destination = new File(mFolder.getRoot(), "export.ftbx");
+        crash(destination);
+        File partial = new File(mFolder.getRoot(), "export.ftbx.partial");
+        // The first entry is damaged after being checkpointed, so nothing can be reused
+        byte[] data = Files.readAllBytes(partial.toPath());
+        int offset = indexOf(data, "file 0".getBytes(StandardCharsets.UTF_8));
+        data[offset] ^= 1;
+        Files.write(partial.toPath(), data);
+        replaceKeepingState(new File(mSources, "f0.txt"), "FILE 0");
+        replaceKeepingState(new File(mSources, "f1.txt"), "FILE 1");
+
+        mToBytesExporter.exportContainer(destination, true);
+        assertEquals("FILE 0", readEntry(destination, "f0.txt"));
+        assertEquals("FILE 1", readEntry(destination, "f1.txt"));
+        try (ContainerReader reader = new ContainerReader(destination)) {
+            assertEquals(NUMBER_OF_FILES, reader.getEntries().size());
+            for (ContainerEntry entry : reader.getEntries())
+                reader.read(entry);
+        }
+    }
+
+    @Test
+    public void atomicWriteObject() throws IOException {
+        File destination = new File(mFolder.getRoot(), "out/object.bin");
+        mToBytesExporter.readSource(true, "\n");
+        mToBytesExporter.writeObject(destination);
+        FileToBytesExporter read = new FileToBytesExporter();
+        read.readObject(destination);
+        assertEquals(mToBytesExporter.getReadData(), read.getReadData());
+        assertFalse(new File(destination.getParentFile(), "object.bin.partial").exists());
+    }
+
+    /**
+     * Makes the export fail once all the entries were written, and simulates a crash: a torn
+     * checkpoint record and garbage after the last entry.
+     */
+    private void crash(File destination) throws IOException {
+        // A non-empty directory cannot be replaced, so the export fails when publishing it
+        write(new File(destination, "blocker"), "");
+        try {
+            mToBytesExporter.exportContainer(destination, true);
+            fail("The export must fail when publishing the container");
+        } catch (IOException ignored) {
+        }
+        File partial = new File(mFolder.getRoot(), destination.getName() + ".partial");
+        File checkpoint = new File(mFolder.getRoot(), destination.getName() + ".checkpoint");
+        try (RandomAccessFile log = new RandomAccessFile(checkpoint, "rw")) {
+            log.setLength(log.length() - 3);
+        }
+        try (RandomAccessFile container = new RandomAccessFile(partial, "rw")) {
+            container.seek(container.length());
+            container.write(new byte[]{1, 2, 3});
+        }
+        Files.delete(new File(destination, "blocker").toPath());
+        Files.delete(destination.toPath());
+    }
+
+    private String readEntry(File container, String name) throws IOException {
+        try (ContainerReader reader = new ContainerReader(container)) {
+            for (ContainerEntry entry : reader.getEntries()) {
+                if (new File(entry.getName()).getName().equals(name))
+                    return new String(reader.read(entry), StandardCharsets.UTF_8);
+            }
+        }
+        throw new AssertionError(String.format("No entry \"%s\"", name));
+    }
+
+    private static void replaceKeepingState(File file, String contents) throws IOException {
+        long lastModified = file.lastModified();
+        write(file, contents);
+        file.setLastModified(lastModified);
+    }
+
+    private static int indexOf(byte[] data, byte[] pattern) {
+        for (int i = 0; i <= data.length - pattern.length; ++i) {
+            int j = 0;
+            while (j < pattern.length && data[i + j] == pattern[j])
+                ++j;
+            if (j == pattern.length)
+                return i;
+        }
+        throw new AssertionError("Pattern not found");
+    }
+
+    private static void write(File file, String contents) throws IOException {
+        file.getParentFile().mkdirs();
+        Files.write(file.toPath(), contents.getBytes(StandardCharsets.UTF_8));
+    }
+}
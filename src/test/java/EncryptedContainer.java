@@ -0,0 +1,119 @@
+import com.github.javinator9889.error.FileError;
+import com.github.javinator9889.error.InvalidContainerException;
+import com.github.javinator9889.exporter.ContainerEntry;
+import com.github.javinator9889.exporter.ContainerExtractor;
+import com.github.javinator9889.exporter.ContainerOptions;
+import com.github.javinator9889.exporter.ContainerReader;
+import com.github.javinator9889.exporter.FileToBytesExporter;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import javax.crypto.SecretKey;
+import javax.crypto.spec.SecretKeySpec;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+public class EncryptedContainer {
+    private static final int NUMBER_OF_FILES = 6;
+    private static final String MARKER = "plain-text-marker";
+    @Rule
+    public TemporaryFolder mFolder = new TemporaryFolder();
+    private File mSources;
+    private FileToBytesExporter mToBytesExporter;
+    private SecretKey mKey;
+    private File mDestination;
+
+    @Before
+    public void setup() throws IOException {
+        mSources = mFolder.newFolder("sources");
+        Random random = new Random(0);
+        for (int i = 0; i < NUMBER_OF_FILES; ++i) {
+            StringBuilder contents = new StringBuilder();
+            // Files bigger than a block, an empty one and small ones
+            int lines = i == 0 ? 0 : i == 1 ? 20000 : 10 * i;
+            for (int line = 0; line < lines; ++line)
+                contents.append(MARKER).append(' ').append(random.nextInt()).append('\n');
+            Files.write(new File(mSources, "f" + i + ".txt").toPath(),
+                    contents.toString().getBytes(StandardCharsets.UTF_8));
+        }
+        mToBytesExporter = new FileToBytesExporter("*.txt", mSources.toString());
+        mKey = new SecretKeySpec(Arrays.copyOf("0123456789abcdef".getBytes(
+                StandardCharsets.US_ASCII), 16), "AES");
+        ContainerOptions options = new ContainerOptions();
+        options.setCompression(true);
+        options.setTrainDictionary(true);
+        options.setEncryptionKey(mKey);
+        mToBytesExporter.setContainerOptions(options);
+        mDestination = new File(mFolder.getRoot(), "export.ftbx");
+        mToBytesExporter.exportContainer(mDestination, true);
+    }
+
+    @Test
+    public void roundTrip() throws IOException {
+        String container = new String(Files.readAllBytes(mDestination.toPath()),
+                StandardCharsets.ISO_8859_1);
+        assertFalse(container.contains(MARKER));
+        try (ContainerReader reader = new ContainerReader(mDestination, mKey)) {
+            assertEquals(NUMBER_OF_FILES, reader.getEntries().size());
+            for (int i = 0; i < NUMBER_OF_FILES; ++i)
+                assertArrayEquals(Files.readAllBytes(new File(mSources, "f" + i + ".txt")
+                        .toPath()), reader.read(reader.getEntry("f" + i + ".txt")));
+        }
+        List<File> files = ContainerExtractor.extract(mDestination,
+                new File(mFolder.getRoot(), "parallel"), mKey);
+        List<File> streamed;
+        try (InputStream input = new FileInputStream(mDestination)) {
+            streamed = ContainerExtractor.extract(input, new File(mFolder.getRoot(), "stream"),
+                    mKey);
+        }
+        assertEquals(NUMBER_OF_FILES, streamed.size());
+        for (int i = 0; i < files.size(); ++i)
+            assertArrayEquals(Files.readAllBytes(files.get(i).toPath()),
+                    Files.readAllBytes(streamed.get(i).toPath()));
+    }
+
+    @Test(expected = InvalidContainerException.class)
+    public void missingKey() throws IOException {
+        new ContainerReader(mDestination).close();
+    }
+
+    @Test(expected = InvalidContainerException.class)
+    public void wrongKey() throws IOException {
+        SecretKey key = new SecretKeySpec(new byte[16], "AES");
+        try (InputStream input = new FileInputStream(mDestination)) {
+            ContainerExtractor.extract(input, new File(mFolder.getRoot(), "wrong"), key);
+        }
+    }
+
+    @Test(expected = FileError.class)
+    public void tamperedBlock() throws IOException {
+        ContainerEntry entry;
+        try (ContainerReader reader = new ContainerReader(mDestination, mKey)) {
+            entry = reader.getEntries().get(1);
+        }
+        try (RandomAccessFile container = new RandomAccessFile(mDestination, "rw")) {
+            long position = entry.getOffset() + entry.getStoredLength() / 2;
+            container.seek(position);
+            int value = container.read();
+            container.seek(position);
+            container.write(value ^ 1);
+        }
+        try (ContainerReader reader = new ContainerReader(mDestination, mKey)) {
+            reader.read(reader.getEntries().get(1));
+        }
+    }
+}
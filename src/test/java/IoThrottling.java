@@ -0,0 +1,87 @@
+import com.github.javinator9889.exporter.ContainerReader;
+import com.github.javinator9889.exporter.FileToBytesExporter;
+import com.github.javinator9889.exporter.IoThrottle;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Random;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class IoThrottling {
+    private static final int NUMBER_OF_FILES = 8;
+    private static final int FILE_SIZE = 64 * 1024;
+    @Rule
+    public TemporaryFolder mFolder = new TemporaryFolder();
+    private File mSources;
+    private FileToBytesExporter mToBytesExporter;
+
+    @Before
+    public void setup() throws IOException {
+        mSources = mFolder.newFolder("sources");
+        Random random = new Random(0);
+        for (int i = 0; i < NUMBER_OF_FILES; ++i) {
+            byte[] data = new byte[FILE_SIZE];
+            random.nextBytes(data);
+            Files.write(new File(mSources, "f" + i + ".bin").toPath(), data);
+        }
+        mToBytesExporter = new FileToBytesExporter("*.bin", mSources.toString());
+    }
+
+    @Test
+    public void limitsBytesPerSecond() throws IOException {
+        // Every byte is both read and written: 1 MiB at 1 MiB/s
+        IoThrottle throttle = new IoThrottle(1024 * 1024, 2);
+        mToBytesExporter.setThrottle(throttle);
+        File destination = new File(mFolder.getRoot(), "export.ftbx");
+        long start = System.nanoTime();
+        mToBytesExporter.exportContainer(destination, true);
+        long elapsed = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+        assertTrue("Export was not throttled: " + elapsed + " ms", elapsed >= 750);
+        assertEquals(0, throttle.getOpenFiles());
+        try (ContainerReader reader = new ContainerReader(destination)) {
+            assertEquals(NUMBER_OF_FILES, reader.getEntries().size());
+            for (int i = 0; i < NUMBER_OF_FILES; ++i)
+                assertArrayEquals(Files.readAllBytes(new File(mSources, "f" + i + ".bin")
+                        .toPath()), reader.read(reader.getEntry("f" + i + ".bin")));
+        }
+    }
+
+    @Test(timeout = 10000)
+    public void adjustableAtRuntime() throws Exception {
+        // At 1 KiB/s the export would take more than 15 minutes
+        IoThrottle throttle = new IoThrottle(1024, 1);
+        mToBytesExporter.setThrottle(throttle);
+        CompletableFuture<Void> export = CompletableFuture.runAsync(() -> {
+            try {
+                mToBytesExporter.readSource(true);
+            } catch (IOException e) {
+                throw new RuntimeException(e);
+            }
+        });
+        Thread.sleep(200);
+        assertTrue(!export.isDone());
+        throttle.setBytesPerSecond(Long.MAX_VALUE);
+        throttle.setMaxOpenFiles(Integer.MAX_VALUE);
+        export.get();
+        FileToBytesExporter unthrottled = new FileToBytesExporter("*.bin",
+                mSources.toString());
+        unthrottled.readSource(true);
+        assertEquals(unthrottled.getReadData(), mToBytesExporter.getReadData());
+        assertEquals(0, throttle.getOpenFiles());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void invalidLimit() {
+        new IoThrottle().setMaxOpenFiles(0);
+    }
+}
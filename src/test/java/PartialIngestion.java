@@ -0,0 +1,83 @@
+import com.github.javinator9889.error.IngestionException;
+import com.github.javinator9889.exporter.DiscoveryOptions;
+import com.github.javinator9889.exporter.FileToBytesExporter;
+import com.github.javinator9889.exporter.IngestionOptions;
+import com.github.javinator9889.exporter.IngestionReport;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class PartialIngestion {
+    private static final int NUMBER_OF_FILES = 6;
+    @Rule
+    public TemporaryFolder mFolder = new TemporaryFolder();
+    private FileToBytesExporter mToBytesExporter;
+    private File mBroken;
+
+    @Before
+    public void setup() throws IOException {
+        File sources = mFolder.newFolder("sources");
+        for (int i = 0; i < NUMBER_OF_FILES; ++i)
+            Files.write(new File(sources, "f" + i + ".txt").toPath(),
+                    ("file " + i + "\n").getBytes(StandardCharsets.UTF_8));
+        // A dangling link is found while looking for the sources, but it cannot be read
+        mBroken = new File(sources, "f3-broken.txt");
+        Files.createSymbolicLink(mBroken.toPath(), new File(sources, "missing").toPath());
+        mToBytesExporter = new FileToBytesExporter("*.txt", sources.toString());
+        IngestionOptions options = new IngestionOptions();
+        options.setMaxRetries(3);
+        mToBytesExporter.setIngestionOptions(options);
+    }
+
+    @Test
+    public void skipsUnreadableFiles() throws IOException {
+        mToBytesExporter.getIngestionOptions().setErrorPolicy(DiscoveryOptions.ErrorPolicy.SKIP);
+        mToBytesExporter.readSource(true);
+        IngestionReport report = mToBytesExporter.getIngestionReport();
+        assertFalse(report.isComplete());
+        assertEquals(NUMBER_OF_FILES, report.getReadFiles());
+        assertTrue(report.getFailed().isEmpty());
+        assertEquals(1, report.getSkipped().size());
+        IngestionReport.Failure skipped = report.getSkipped().get(0);
+        assertEquals(mBroken, skipped.getFile());
+        // Missing files are never retried
+        assertEquals(1, skipped.getAttempts());
+        assertTrue(isMissing(skipped.getCause()));
+        String data = mToBytesExporter.getReadData();
+        for (int i = 0; i < NUMBER_OF_FILES; ++i)
+            assertTrue(data.contains("file " + i + "\n"));
+        assertFalse(data.contains("\n\n\n\n"));
+    }
+
+    @Test
+    public void failsOnceEveryFileWasRead() throws IOException {
+        try {
+            mToBytesExporter.readSource(true);
+            fail("The read must fail with the default error policy");
+        } catch (IngestionException e) {
+            IngestionReport report = e.getReport();
+            assertEquals(report, mToBytesExporter.getIngestionReport());
+            assertEquals(NUMBER_OF_FILES, report.getReadFiles());
+            assertEquals(1, report.getFailed().size());
+            assertEquals(mBroken, report.getFailed().get(0).getFile());
+            assertTrue(isMissing(e.getCause()));
+        }
+    }
+
+    private static boolean isMissing(Throwable cause) {
+        return cause instanceof FileNotFoundException || cause instanceof NoSuchFileException;
+    }
+}
@@ -0,0 +1,105 @@
+import com.github.javinator9889.exporter.ContainerEntry;
+import com.github.javinator9889.exporter.ContainerOptions;
+import com.github.javinator9889.exporter.ContainerReader;
+import com.github.javinator9889.exporter.DiscoveryOptions;
+import com.github.javinator9889.exporter.FileToBytesExporter;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+public class ReproducibleExport {
+    private static final List<String> FILES = Arrays.asList("b.txt", "a/z.txt", "a.txt",
+            "a/b/c.txt", "A.txt", "c/a.txt", "a-b.txt");
+    @Rule
+    public TemporaryFolder mFolder = new TemporaryFolder();
+    private File mRoot;
+    private File mSources;
+    private FileToBytesExporter mToBytesExporter;
+
+    @Before
+    public void setup() throws IOException {
+        mRoot = mFolder.getRoot();
+        mSources = new File(mRoot, "sources");
+        mToBytesExporter = new FileToBytesExporter("*.txt", mSources.toString());
+        DiscoveryOptions options = new DiscoveryOptions();
+        options.setSorted(true);
+        mToBytesExporter.setDiscoveryOptions(options);
+        ContainerOptions containerOptions = new ContainerOptions();
+        containerOptions.setTrainDictionary(true);
+        mToBytesExporter.setContainerOptions(containerOptions);
+    }
+
+    @Test
+    public void sortedByPath() throws IOException {
+        create(FILES);
+        mToBytesExporter.readSource(true, "|");
+        // Paths are compared name by name, so the contents of "a" go before "a-b.txt"
+        assertEquals("A.txt|a/b/c.txt|a/z.txt|a-b.txt|a.txt|b.txt|c/a.txt",
+                mToBytesExporter.getReadData().replace("\n", ""));
+        mToBytesExporter.getDiscoveryOptions().setMaxFiles(3);
+        mToBytesExporter.readSource(true, "|");
+        assertEquals("A.txt|a/b/c.txt|a/z.txt", mToBytesExporter.getReadData().replace("\n", ""));
+    }
+
+    @Test
+    public void sameBytesRegardlessOfCreationOrder() throws IOException {
+        create(FILES);
+        byte[][] first = export("first");
+        try (ContainerReader reader = new ContainerReader(new File(mRoot, "first.ftbx"))) {
+            List<String> names = new ArrayList<>();
+            for (ContainerEntry entry : reader.getEntries())
+                names.add(entry.getName());
+            assertEquals(Arrays.asList("A.txt", "a/b/c.txt", "a/z.txt", "a-b.txt", "a.txt",
+                    "b.txt", "c/a.txt"), names);
+        }
+        delete(mSources);
+        ArrayList<String> reversed = new ArrayList<>(FILES);
+        Collections.reverse(reversed);
+        create(reversed);
+        byte[][] second = export("second");
+        assertArrayEquals(first[0], second[0]);
+        assertArrayEquals(first[1], second[1]);
+    }
+
+    private byte[][] export(String name) throws IOException {
+        File bytes = new File(mRoot, name + ".bin");
+        File container = new File(mRoot, name + ".ftbx");
+        mToBytesExporter.readSource(true);
+        mToBytesExporter.writeObject(bytes);
+        mToBytesExporter.exportContainer(container, true);
+        return new byte[][]{Files.readAllBytes(bytes.toPath()),
+                Files.readAllBytes(container.toPath())};
+    }
+
+    private void create(List<String> names) throws IOException {
+        for (String name : names) {
+            File file = new File(mSources, name);
+            file.getParentFile().mkdirs();
+            Files.write(file.toPath(), (name + "\n").getBytes(StandardCharsets.UTF_8));
+        }
+    }
+
+    private static void delete(File root) throws IOException {
+        try (Stream<java.nio.file.Path> paths = Files.walk(root.toPath())) {
+            for (java.nio.file.Path path : paths.sorted(Comparator.reverseOrder())
+                    .collect(Collectors.toList()))
+                Files.delete(path);
+        }
+    }
+}
@@ -0,0 +1,195 @@
+import com.github.javinator9889.exporter.ContainerEntry;
+import com.github.javinator9889.exporter.ContainerExtractor;
+import com.github.javinator9889.exporter.ContainerOptions;
+import com.github.javinator9889.exporter.ContainerReader;
+import com.github.javinator9889.exporter.ContainerWriter;
+import com.github.javinator9889.exporter.FileToBytesExporter;
+import com.github.javinator9889.exporter.LineMatch;
+import com.github.javinator9889.exporter.ShardManifest;
+import com.github.javinator9889.exporter.ShardedContainerReader;
+import com.github.javinator9889.exporter.ShardingStrategy;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class ShardedExport {
+    private static final int NUMBER_OF_FILES = 20;
+    @Rule
+    public TemporaryFolder mFolder = new TemporaryFolder();
+    private FileToBytesExporter mToBytesExporter;
+    private File mSources;
+
+    @Before
+    public void setup() throws IOException {
+        mSources = mFolder.newFolder("sources");
+        for (int i = 0; i < NUMBER_OF_FILES; ++i) {
+            File directory = new File(mSources, "d" + (i % 4));
+            directory.mkdirs();
+            StringBuilder contents = new StringBuilder();
+            for (int line = 0; line < i * 1000; ++line)
+                contents.append("file ").append(i).append(", line ").append(line).append("\r\n");
+            Files.write(new File(directory, "f" + i + ".txt").toPath(),
+                    contents.toString().getBytes(StandardCharsets.UTF_8));
+        }
+        mToBytesExporter = new FileToBytesExporter("*.txt", mSources.toString());
+    }
+
+    @Test
+    public void singleContainer() throws IOException {
+        File destination = new File(mFolder.getRoot(), "export.ftbx");
+        List<ContainerEntry> written = mToBytesExporter.exportContainer(destination, true);
+        try (ContainerReader reader = new ContainerReader(destination)) {
+            assertEquals(written, reader.getEntries());
+            assertNames(reader.getEntries());
+            for (ContainerEntry entry : reader.getEntries())
+                assertArrayEquals(Files.readAllBytes(new File(mSources, entry.getName()).toPath()),
+                        reader.read(entry));
+        }
+    }
+
+    @Test
+    public void extract() throws IOException {
+        File destination = new File(mFolder.getRoot(), "export.ftbx");
+        mToBytesExporter.exportContainer(destination, true);
+        List<File> extracted = ContainerExtractor.extract(destination, mFolder.newFolder("a"));
+        List<File> streamed;
+        try (InputStream input = new FileInputStream(destination)) {
+            streamed = ContainerExtractor.extract(input, mFolder.newFolder("b"));
+        }
+        assertEquals(NUMBER_OF_FILES, extracted.size());
+        assertEquals(NUMBER_OF_FILES, streamed.size());
+        try (ContainerReader reader = new ContainerReader(destination)) {
+            for (int i = 0; i < NUMBER_OF_FILES; ++i) {
+                byte[] original = Files.readAllBytes(
+                        new File(mSources, reader.getEntries().get(i).getName()).toPath());
+                assertArrayEquals(original, Files.readAllBytes(extracted.get(i).toPath()));
+                assertArrayEquals(original, Files.readAllBytes(streamed.get(i).toPath()));
+            }
+        }
+    }
+
+    @Test
+    public void namesRelativeToRoots() throws IOException {
+        File one = mFolder.newFolder("roots", "one");
+        File two = mFolder.newFolder("roots", "two");
+        Files.write(new File(one, "f.txt").toPath(), "one".getBytes(StandardCharsets.UTF_8));
+        Files.write(new File(two, "f.txt").toPath(), "two".getBytes(StandardCharsets.UTF_8));
+        // However the roots are written, the same file gets the same name
+        FileToBytesExporter exporter = new FileToBytesExporter("*.txt", one.toString(),
+                new File(one, "../two").toString());
+        File destination = new File(mFolder.getRoot(), "roots.ftbx");
+        exporter.exportContainer(destination, true);
+        try (ContainerReader reader = new ContainerReader(destination)) {
+            assertEquals(2, reader.getEntries().size());
+            assertEquals("one", new String(reader.read(reader.getEntry("one/f.txt")),
+                    StandardCharsets.UTF_8));
+            assertEquals("two", new String(reader.read(reader.getEntry("two/f.txt")),
+                    StandardCharsets.UTF_8));
+        }
+    }
+
+    @Test
+    public void extractDuplicatedNames() throws IOException {
+        File destination = new File(mFolder.getRoot(), "duplicated.ftbx");
+        try (ContainerWriter writer = new ContainerWriter(destination)) {
+            for (int i = 0; i < 50; ++i) {
+                byte[] contents = ("version " + i).getBytes(StandardCharsets.UTF_8);
+                writer.write("same.txt", new ByteArrayInputStream(contents));
+            }
+        }
+        List<File> extracted = ContainerExtractor.extract(destination, mFolder.newFolder("dup"));
+        assertEquals(50, extracted.size());
+        assertEquals("version 49", new String(Files.readAllBytes(extracted.get(0).toPath()),
+                StandardCharsets.UTF_8));
+    }
+
+    @Test
+    public void compressedWithDictionary() throws IOException {
+        File plain = new File(mFolder.getRoot(), "plain.ftbx");
+        File compressed = new File(mFolder.getRoot(), "compressed.ftbx");
+        mToBytesExporter.exportContainer(plain, true);
+        ContainerOptions options = new ContainerOptions();
+        options.setTrainDictionary(true);
+        mToBytesExporter.setContainerOptions(options);
+        mToBytesExporter.exportContainer(compressed, true);
+        assertTrue(compressed.length() < plain.length());
+        List<File> streamed;
+        try (InputStream input = new FileInputStream(compressed)) {
+            streamed = ContainerExtractor.extract(input, mFolder.newFolder("c"));
+        }
+        try (ContainerReader reader = new ContainerReader(compressed)) {
+            for (int i = 0; i < NUMBER_OF_FILES; ++i) {
+                ContainerEntry entry = reader.getEntries().get(i);
+                byte[] original = Files.readAllBytes(new File(mSources, entry.getName()).toPath());
+                assertArrayEquals(original, reader.read(entry));
+                assertArrayEquals(original, Files.readAllBytes(streamed.get(i).toPath()));
+            }
+        }
+    }
+
+    @Test
+    public void query() throws IOException {
+        File destination = new File(mFolder.getRoot(), "export.ftbx");
+        mToBytesExporter.exportContainer(destination, true);
+        try (ContainerReader reader = new ContainerReader(destination)) {
+            List<ContainerEntry> entries = reader.find("d1/*.txt");
+            assertEquals(NUMBER_OF_FILES / 4, entries.size());
+            List<LineMatch> matches = reader.filterLines(entries,
+                    line -> line.endsWith("line 42"));
+            assertEquals(NUMBER_OF_FILES / 4, matches.size());
+            for (LineMatch match : matches)
+                assertEquals(43, match.getLineNumber());
+        }
+    }
+
+    @Test
+    public void shards() throws IOException {
+        for (ShardingStrategy strategy : ShardingStrategy.values()) {
+            File manifest = new File(mFolder.getRoot(), strategy + ".ftbm");
+            ShardManifest written = mToBytesExporter.exportShards(manifest, 3, strategy, true);
+            assertEquals(3, written.getShards().size());
+            try (ShardedContainerReader reader = new ShardedContainerReader(manifest)) {
+                assertNames(reader.getEntries());
+                byte[][] data = reader.readAll();
+                for (int i = 0; i < data.length; ++i) {
+                    ContainerEntry entry = reader.getEntries().get(i);
+                    assertArrayEquals(Files.readAllBytes(new File(mSources, entry.getName())
+                            .toPath()), data[i]);
+                }
+            }
+        }
+    }
+
+    /**
+     * Checks that the entries are named by their paths relative to the sources directory.
+     *
+     * @param entries entries of the whole export.
+     */
+    private static void assertNames(List<ContainerEntry> entries) {
+        List<String> expected = new ArrayList<>();
+        for (int i = 0; i < NUMBER_OF_FILES; ++i)
+            expected.add("d" + (i % 4) + "/f" + i + ".txt");
+        List<String> names = new ArrayList<>();
+        for (ContainerEntry entry : entries)
+            names.add(entry.getName());
+        Collections.sort(expected);
+        Collections.sort(names);
+        assertEquals(expected, names);
+    }
+}
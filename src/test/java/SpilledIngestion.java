@@ -0,0 +1,119 @@
+import com.github.javinator9889.exporter.FileToBytesExporter;
+import com.github.javinator9889.exporter.IngestionOptions;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.lang.reflect.Method;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+
+public class SpilledIngestion {
+    private static final int NUMBER_OF_FILES = 24;
+    private static final long MEMORY_BUDGET = 16 * 1024;
+    @Rule
+    public TemporaryFolder mFolder = new TemporaryFolder();
+    private FileToBytesExporter mInMemory;
+    private FileToBytesExporter mSpilled;
+    private File mSpillDirectory;
+
+    @Before
+    public void setup() throws IOException {
+        File sources = mFolder.newFolder("sources");
+        for (int i = 0; i < NUMBER_OF_FILES; ++i) {
+            StringBuilder content = new StringBuilder();
+            for (int line = 0; line < 400; ++line)
+                content.append("file ").append(i).append(" \u00f1\u20ac\u0000 line ")
+                        .append(line).append('\n');
+            Files.write(new File(sources, String.format("f%02d.txt", i)).toPath(),
+                    content.toString().getBytes(StandardCharsets.UTF_8));
+        }
+        mSpillDirectory = mFolder.newFolder("spill");
+        mInMemory = new FileToBytesExporter("*.txt", sources.toString());
+        mSpilled = new FileToBytesExporter("*.txt", sources.toString());
+        IngestionOptions options = new IngestionOptions();
+        options.setMemoryBudget(MEMORY_BUDGET);
+        options.setSpillDirectory(mSpillDirectory);
+        mSpilled.setIngestionOptions(options);
+    }
+
+    @Test
+    public void sameOutputAsInMemory() throws IOException {
+        mInMemory.readSource(true);
+        mSpilled.readSource(true);
+        assertEquals(0, mInMemory.getIngestionReport().getSpilledBytes());
+        assertTrue(mSpilled.getIngestionReport().getSpilledBytes() > MEMORY_BUDGET);
+        assertEquals(NUMBER_OF_FILES, mSpilled.getIngestionReport().getReadFiles());
+        assertTrue(mSpillDirectory.list().length > 1);
+        assertEquals(mInMemory.getReadData(), mSpilled.getReadData());
+        assertEquals(mInMemory.getFileSeparator(), mSpilled.getFileSeparator());
+        byte[] expected = write(mInMemory);
+        assertArrayEquals(expected, write(mSpilled));
+        FileToBytesExporter read = new FileToBytesExporter();
+        read.readObject(new ByteArrayInputStream(expected));
+        assertEquals(mInMemory.getReadData(), read.getReadData());
+    }
+
+    @Test
+    public void segmentsAreReleased() throws IOException {
+        mSpilled.readSource(true);
+        String data = mSpilled.getReadData();
+        FileToBytesExporter clone = clone(mSpilled);
+        // Reading again replaces the segments of the original, but the clone still holds them
+        mSpilled.readSource(true, "|");
+        assertEquals(data, clone.getReadData());
+        mSpilled.readObject(new ByteArrayInputStream(write(clone)));
+        assertEquals(data, mSpilled.getReadData());
+        clone.readObject(new ByteArrayInputStream(write(mSpilled)));
+        assertEquals(0, mSpillDirectory.list().length);
+    }
+
+    @Test
+    public void javaSerializationKeepsSpilledData() throws Exception {
+        mSpilled.readSource(true);
+        ByteArrayOutputStream serialized = new ByteArrayOutputStream();
+        try (ObjectOutputStream output = new ObjectOutputStream(serialized)) {
+            output.writeObject(mSpilled);
+        }
+        FileToBytesExporter read;
+        try (ObjectInputStream input = new ObjectInputStream(
+                new ByteArrayInputStream(serialized.toByteArray()))) {
+            read = (FileToBytesExporter) input.readObject();
+        }
+        assertEquals(mSpilled.getReadData(), read.getReadData());
+        assertArrayEquals(write(mSpilled), write(read));
+        // Both hold the same data at different segments
+        assertEquals(mSpilled, read);
+        assertEquals(mSpilled.hashCode(), read.hashCode());
+        read.readSource(true, "|");
+        assertNotEquals(mSpilled, read);
+    }
+
+    private static byte[] write(FileToBytesExporter exporter) throws IOException {
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        exporter.writeObject(output);
+        return output.toByteArray();
+    }
+
+    private static FileToBytesExporter clone(FileToBytesExporter exporter) {
+        try {
+            Method clone = FileToBytesExporter.class.getDeclaredMethod("clone");
+            clone.setAccessible(true);
+            return (FileToBytesExporter) clone.invoke(exporter);
+        } catch (ReflectiveOperationException e) {
+            throw new AssertionError(e);
+        }
+    }
+}
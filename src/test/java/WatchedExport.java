@@ -0,0 +1,254 @@
+import com.github.javinator9889.error.IngestionException;
+import com.github.javinator9889.exporter.DiscoveryOptions;
+import com.github.javinator9889.exporter.ExportWatcher;
+import com.github.javinator9889.exporter.FileToBytesExporter;
+import com.github.javinator9889.exporter.IngestionOptions;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.attribute.PosixFilePermission;
+import java.util.EnumSet;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assume.assumeFalse;
+
+public class WatchedExport {
+    private static final long TIMEOUT = 10000;
+    @Rule
+    public TemporaryFolder mFolder = new TemporaryFolder();
+    private File mSources;
+    private File mDestination;
+    private CountingExporter mToBytesExporter;
+    private ExportWatcher mWatcher;
+    private Thread mThread;
+
+    @Before
+    public void setup() throws IOException {
+        mSources = mFolder.newFolder("sources");
+        write(new File(mSources, "a.txt"), "first");
+        mDestination = new File(mFolder.getRoot(), "export.bin");
+        mToBytesExporter = new CountingExporter("*.txt", mSources.toString());
+    }
+
+    @After
+    public void tearDown() throws IOException, InterruptedException {
+        if (mWatcher != null)
+            mWatcher.close();
+        if (mThread != null)
+            mThread.join(TIMEOUT);
+    }
+
+    @Test
+    public void rewritesOnChanges() throws IOException, InterruptedException {
+        start(100, 1000);
+        awaitWrites(1);
+        assertEquals("first\n", readDestination());
+
+        write(new File(mSources, "b.txt"), "second");
+        awaitWrites(2);
+        assertEquals(2, readDestination().split("\\|").length);
+
+        write(new File(mSources, "a.txt"), "modified");
+        awaitWrites(3);
+        assertTrue(readDestination().contains("modified"));
+
+        Files.delete(new File(mSources, "b.txt").toPath());
+        awaitWrites(4);
+        assertEquals("modified\n", readDestination());
+    }
+
+    @Test
+    public void debounceMergesBursts() throws IOException, InterruptedException {
+        start(500, 10000);
+        awaitWrites(1);
+        for (int i = 0; i < 10; ++i) {
+            write(new File(mSources, "burst" + i + ".txt"), "burst " + i);
+            Thread.sleep(20);
+        }
+        awaitWrites(2);
+        Thread.sleep(1000);
+        assertEquals(2, mToBytesExporter.getWrites());
+        assertEquals(11, readDestination().split("\\|").length);
+    }
+
+    @Test
+    public void maxDelayForcesRewrites() throws IOException, InterruptedException {
+        start(300, 1000);
+        awaitWrites(1);
+        File changing = new File(mSources, "a.txt");
+        long end = System.currentTimeMillis() + 3500;
+        // Changes arrive faster than the debounce time, so only the max delay exports them
+        for (int i = 0; System.currentTimeMillis() < end; ++i) {
+            write(changing, "change " + i);
+            Thread.sleep(50);
+        }
+        assertTrue(mToBytesExporter.getWrites() >= 3);
+    }
+
+    @Test
+    public void ignoresDestinationAndExcludes() throws IOException, InterruptedException {
+        // The destination matches the glob and is inside the watched tree
+        mDestination = new File(mSources, "export.bin");
+        mToBytesExporter = new CountingExporter("*", mSources.toString());
+        DiscoveryOptions options = new DiscoveryOptions();
+        options.setExcludes("build");
+        mToBytesExporter.setDiscoveryOptions(options);
+        File build = new File(mSources, "build");
+        write(new File(build, "output.txt"), "excluded");
+        start(100, 1000);
+        awaitWrites(1);
+        assertEquals("first\n", readDestination());
+
+        write(new File(build, "output.txt"), "still excluded");
+        write(new File(build, "nested/output.txt"), "excluded");
+        Thread.sleep(1000);
+        assertEquals(1, mToBytesExporter.getWrites());
+        assertEquals("first\n", readDestination());
+    }
+
+    @Test
+    public void emptiesDestinationWithoutSources() throws IOException, InterruptedException {
+        start(100, 1000);
+        awaitWrites(1);
+        Files.delete(new File(mSources, "a.txt").toPath());
+        awaitWrites(2);
+        assertEquals("", readDestination());
+    }
+
+    @Test
+    public void failedReadsKeepWatching() throws IOException, InterruptedException {
+        File locked = new File(mSources, "b.txt");
+        write(locked, "second");
+        Files.setPosixFilePermissions(locked.toPath(), EnumSet.noneOf(PosixFilePermission.class));
+        // Permissions are not enforced for root
+        assumeFalse(locked.canRead());
+        start(100, 1000);
+        long deadline = System.currentTimeMillis() + TIMEOUT;
+        while (mWatcher.getLastError() == null && System.currentTimeMillis() < deadline)
+            Thread.sleep(10);
+        // The default error policy fails the batch, but not the watcher
+        assertTrue(mWatcher.getLastError() instanceof IngestionException);
+        assertTrue(mWatcher.isRunning());
+        assertEquals(0, mToBytesExporter.getWrites());
+        assertEquals(1, mWatcher.getIngestionReport().getFailed().size());
+
+        Files.setPosixFilePermissions(locked.toPath(),
+                EnumSet.of(PosixFilePermission.OWNER_READ, PosixFilePermission.OWNER_WRITE));
+        write(locked, "second");
+        awaitWrites(1);
+        assertNull(mWatcher.getLastError());
+        assertEquals(2, readDestination().split("\\|").length);
+    }
+
+    @Test
+    public void skippedReadsAreReported() throws IOException, InterruptedException {
+        File locked = new File(mSources, "b.txt");
+        write(locked, "second");
+        Files.setPosixFilePermissions(locked.toPath(), EnumSet.noneOf(PosixFilePermission.class));
+        assumeFalse(locked.canRead());
+        IngestionOptions options = new IngestionOptions();
+        options.setErrorPolicy(DiscoveryOptions.ErrorPolicy.SKIP);
+        mToBytesExporter.setIngestionOptions(options);
+        start(100, 1000);
+        awaitWrites(1);
+        assertEquals("first\n", readDestination());
+        assertEquals(1, mWatcher.getIngestionReport().getSkipped().size());
+        assertNull(mWatcher.getLastError());
+    }
+
+    @Test
+    public void spillsOverMemoryBudget() throws IOException, InterruptedException {
+        File spill = mFolder.newFolder("spill");
+        IngestionOptions options = new IngestionOptions();
+        options.setMemoryBudget(1);
+        options.setSpillDirectory(spill);
+        mToBytesExporter.setIngestionOptions(options);
+        start(100, 1000);
+        awaitWrites(1);
+        assertEquals("first\n", readDestination());
+        assertTrue(mWatcher.getIngestionReport().getSpilledBytes() > 0);
+
+        write(new File(mSources, "b.txt"), "second");
+        awaitWrites(2);
+        assertEquals(2, readDestination().split("\\|").length);
+        mWatcher.close();
+        mThread.join(TIMEOUT);
+        // Only the segments of the last export are kept
+        assertTrue(spill.list().length <= 2);
+    }
+
+    @Test
+    public void closeStopsWatcher() throws IOException, InterruptedException {
+        start(100, 1000);
+        awaitWrites(1);
+        assertTrue(mWatcher.isRunning());
+        mWatcher.close();
+        mThread.join(TIMEOUT);
+        assertFalse(mThread.isAlive());
+        assertFalse(mWatcher.isRunning());
+
+        write(new File(mSources, "b.txt"), "second");
+        Thread.sleep(500);
+        assertEquals(1, mToBytesExporter.getWrites());
+    }
+
+    private void start(long debounceMillis, long maxDelayMillis) throws IOException {
+        mWatcher = new ExportWatcher(mToBytesExporter, mDestination, true, "|",
+                debounceMillis, maxDelayMillis);
+        mThread = new Thread(mWatcher);
+        mThread.start();
+    }
+
+    private void awaitWrites(int writes) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + TIMEOUT;
+        while (mToBytesExporter.getWrites() < writes) {
+            if (System.currentTimeMillis() > deadline)
+                throw new AssertionError(String.format("Expected %d writes, got %d", writes,
+                        mToBytesExporter.getWrites()));
+            Thread.sleep(10);
+        }
+    }
+
+    private String readDestination() throws IOException {
+        FileToBytesExporter read = new FileToBytesExporter();
+        read.readObject(mDestination);
+        return read.getReadData();
+    }
+
+    private static void write(File file, String contents) throws IOException {
+        file.getParentFile().mkdirs();
+        Files.write(file.toPath(), contents.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Exporter that counts the times the destination is written.
+     */
+    private static final class CountingExporter extends FileToBytesExporter {
+        private final AtomicInteger mWrites = new AtomicInteger();
+
+        private CountingExporter(String filename, String... paths) {
+            super(filename, paths);
+        }
+
+        @Override
+        public void writeObject(File destination) throws IOException {
+            super.writeObject(destination);
+            mWrites.incrementAndGet();
+        }
+
+        int getWrites() {
+            return mWrites.get();
+        }
+    }
+}